@@ -0,0 +1,69 @@
+#!/bin/sh
+# Builds an application class-data-sharing (AppCDS) archive for gitlet, so
+# each command maps the classes it needs, gitlet's and the JDK's, already
+# parsed and verified from the archive instead of loading them from scratch.
+#
+# Usage: appcds.sh JAR ARCHIVE
+#
+# Runs a representative session (init, add, commit, status, log, branch,
+# checkout, merge, rm, find) in a scratch directory, recording the classes
+# each command loads, then dumps all of them into ARCHIVE.  Next to ARCHIVE
+# it writes a launcher script, gitlet, that runs JAR with the archive.  The
+# archive is only used by the JVM that built it and with JAR at the same
+# path; otherwise the JVM silently starts without it.
+set -e
+
+if [ $# -ne 2 ]; then
+    echo "Usage: appcds.sh JAR ARCHIVE" >&2
+    exit 1
+fi
+mkdir -p "$(dirname "$2")"
+jar=$(cd "$(dirname "$1")" && pwd)/$(basename "$1")
+archive=$(cd "$(dirname "$2")" && pwd)/$(basename "$2")
+java=${JAVA_HOME:+$JAVA_HOME/bin/}java
+
+work=$(mktemp -d)
+trap 'rm -rf "$work"' EXIT
+mkdir "$work/lists" "$work/repo"
+runs=0
+
+gitlet() {
+    runs=$((runs + 1))
+    (cd "$work/repo" && "$java" -XX:DumpLoadedClassList="$work/lists/$runs.lst" -jar "$jar" "$@" > /dev/null)
+}
+
+gitlet init
+echo "first" > "$work/repo/a.txt"
+gitlet add a.txt
+gitlet commit "add a"
+gitlet status
+gitlet log
+gitlet branch other
+gitlet checkout other
+echo "other" > "$work/repo/b.txt"
+gitlet add b.txt
+gitlet commit "add b"
+gitlet checkout master
+echo "second" > "$work/repo/a.txt"
+gitlet add a.txt
+gitlet commit "edit a"
+gitlet merge other
+gitlet rm b.txt
+gitlet status
+gitlet global-log
+gitlet find "add a"
+
+# the union of the lists, in first-loaded order
+cat "$work"/lists/*.lst | grep -v '^#' | awk '!seen[$0]++' > "$work/classes.lst"
+rm -f "$archive"
+"$java" -Xshare:dump -Xlog:cds=off -XX:SharedClassListFile="$work/classes.lst" \
+    -XX:SharedArchiveFile="$archive" -cp "$jar"
+
+launcher=$(dirname "$archive")/gitlet
+cat > "$launcher" <<EOF
+#!/bin/sh
+# C1 only: gitlet commands are too short for C2 to pay off.
+exec "$java" -XX:SharedArchiveFile="$archive" -XX:TieredStopAtLevel=1 -jar "$jar" "\$@"
+EOF
+chmod +x "$launcher"
+echo "Wrote $archive ($(wc -l < "$work/classes.lst") classes) and $launcher"
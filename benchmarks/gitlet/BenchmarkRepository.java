@@ -0,0 +1,107 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static gitlet.Utils.*;
+
+/** Builds throwaway gitlet repositories in the current working directory for
+ *  the benchmarks.  REPOSITORY is bound to the directory the JVM starts in, so
+ *  every benchmark fork runs inside a scratch directory (see benchmarks/pom.xml).
+ *  The scratch directory is marked with a .gitlet-bench directory, and nothing
+ *  is ever deleted from a directory that does not carry the mark.
+ *  @author Rogelio Camargo
+ */
+class BenchmarkRepository {
+
+    /** The repository in the scratch directory. */
+    static final Repository REPOSITORY = new Repository(new File(System.getProperty("user.dir")));
+
+    /** Marks a directory as safe to wipe. A directory, so checkout leaves it alone. */
+    static final File MARKER = join(REPOSITORY.cwd, ".gitlet-bench");
+
+    /** Deletes the repository and every working file in the scratch directory. */
+    static void reset() {
+        File[] entries = REPOSITORY.cwd.listFiles();
+        if (!MARKER.isDirectory()) {
+            if (entries != null && entries.length > 0) {
+                throw new IllegalStateException("refusing to benchmark in non-empty directory "
+                        + REPOSITORY.cwd);
+            }
+            MARKER.mkdir();
+        }
+        deleteRecursively(REPOSITORY.gitletDir.toPath());
+        for (String filename: plainFilenamesIn(REPOSITORY.cwd)) {
+            join(REPOSITORY.cwd, filename).delete();
+        }
+    }
+
+    /** Creates a fresh repository whose head commit tracks NUMFILES files of
+     *  FILESIZE random bytes each. */
+    static void create(int numFiles, int fileSize) {
+        reset();
+        REPOSITORY.initialize();
+        writeFiles("file", numFiles, fileSize, 61L);
+        commitWorkingDirectory("populate " + numFiles + " files");
+    }
+
+    /** Writes NUMFILES files named PREFIX-i.txt filled from a Random seeded with SEED. */
+    static void writeFiles(String prefix, int numFiles, int fileSize, long seed) {
+        Random random = new Random(seed);
+        byte[] contents = new byte[fileSize];
+        for (int i = 0; i < numFiles; i += 1) {
+            random.nextBytes(contents);
+            writeContents(join(REPOSITORY.cwd, prefix + "-" + i + ".txt"), contents);
+        }
+    }
+
+    /** Stages every file in the working directory with a single index write and
+     *  commits it.  Equivalent to one add per file followed by a commit, without
+     *  rewriting the index once per file. */
+    static void commitWorkingDirectory(String message) {
+        StagingArea stagingArea = StagingArea.deserialize(REPOSITORY.indexFile);
+        for (String filename: plainFilenamesIn(REPOSITORY.cwd)) {
+            Blob blob = new Blob(filename, readContents(join(REPOSITORY.cwd, filename)));
+            blob.serialize(REPOSITORY.objects());
+            stagingArea.stageFileForAddition(filename, blob.getId());
+        }
+        stagingArea.serialize(REPOSITORY.indexFile, REPOSITORY.durability);
+        REPOSITORY.makeNewCommit(message);
+    }
+
+    /** Returns the commit at the head of BRANCHNAME. */
+    static Commit branchHead(String branchName) {
+        ObjectId id = ObjectId.fromHex(readContentsAsString(join(REPOSITORY.branchesDir, branchName)));
+        return Commit.deserialize(REPOSITORY.objects(), id);
+    }
+
+    /** Replaces System.out with a sink and returns the previous stream. */
+    static PrintStream silence() {
+        PrintStream previous = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return previous;
+    }
+
+    static void deleteRecursively(Path root) {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            List<Path> all = paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+            for (Path path: all) {
+                Files.delete(path);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package gitlet;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/** Throughput of the SHA-1 helpers that name every blob and commit.
+ *  @author Rogelio Camargo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashBenchmark {
+
+    @Param({"64", "4096", "1048576"})
+    int size;
+
+    private byte[] contents;
+
+    @Setup
+    public void setup() {
+        contents = new byte[size];
+        new Random(61L).nextBytes(contents);
+    }
+
+    @Benchmark
+    public String sha1Hex() {
+        return Utils.sha1(contents);
+    }
+
+    @Benchmark
+    public ObjectId sha1Id() {
+        return Utils.sha1Id(contents);
+    }
+
+    @Benchmark
+    public ObjectId blobId() {
+        return Blob.getIdFromNameAndContents("wug.txt", contents);
+    }
+}
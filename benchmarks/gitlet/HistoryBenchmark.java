@@ -0,0 +1,58 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import static gitlet.BenchmarkRepository.REPOSITORY;
+import static gitlet.Utils.*;
+
+/** Merge-base search between two branches that diverged DEPTH commits ago.
+ *  @author Rogelio Camargo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int depth;
+
+    private Commit master;
+    private Commit other;
+    private PrintStream stdout;
+
+    @Setup
+    public void setup() {
+        stdout = BenchmarkRepository.silence();
+        BenchmarkRepository.create(1, 64);
+        REPOSITORY.createNewBranch("other");
+        commitSequence("master-change", depth);
+        REPOSITORY.checkoutBranch("other");
+        commitSequence("other-change", depth);
+        master = BenchmarkRepository.branchHead("master");
+        other = BenchmarkRepository.branchHead("other");
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    public Commit findSplitPoint() {
+        return REPOSITORY.findSplitPoint(master, other);
+    }
+
+    private static void commitSequence(String filename, int count) {
+        for (int i = 0; i < count; i += 1) {
+            writeContents(join(REPOSITORY.cwd, filename), "revision " + i + "\n");
+            REPOSITORY.addFileToStagingArea(filename);
+            REPOSITORY.makeNewCommit(filename + " " + i);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import static gitlet.BenchmarkRepository.REPOSITORY;
+import static gitlet.Utils.*;
+
+/** Staging one file, and loading the index, with STAGED other files already
+ *  staged, so the cost of each single-file change to a large index shows.
+ *  @author Rogelio Camargo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    int staged;
+
+    private int revision;
+    private PrintStream stdout;
+
+    @Setup
+    public void setup() {
+        stdout = BenchmarkRepository.silence();
+        BenchmarkRepository.create(1, 64);
+        BenchmarkRepository.writeFiles("staged", staged, 64, 63L);
+        StagingArea stagingArea = StagingArea.deserialize(REPOSITORY.indexFile);
+        for (String filename: plainFilenamesIn(REPOSITORY.cwd)) {
+            if (filename.startsWith("staged-")) {
+                Blob blob = new Blob(filename, readContents(join(REPOSITORY.cwd, filename)));
+                blob.serialize(REPOSITORY.objects());
+                stagingArea.stageFileForAddition(filename, blob.getId());
+            }
+        }
+        stagingArea.serialize(REPOSITORY.indexFile, REPOSITORY.durability);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    public void addOne() {
+        revision += 1;
+        writeContents(join(REPOSITORY.cwd, "edited.txt"), "revision " + revision + "\n");
+        REPOSITORY.addFileToStagingArea("edited.txt");
+    }
+
+    @Benchmark
+    public StagingArea load() {
+        return StagingArea.deserialize(REPOSITORY.indexFile);
+    }
+}
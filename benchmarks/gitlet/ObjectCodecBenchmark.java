@@ -0,0 +1,122 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import static gitlet.Utils.*;
+
+/** Encode and decode cost of the serialized Blob and Commit objects, both in
+ *  memory and through Utils.readObject on a real file.
+ *  @author Rogelio Camargo
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectCodecBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Blobs {
+        @Param({"1024", "65536", "1048576"})
+        int blobSize;
+
+        Blob blob;
+        byte[] encoded;
+        File file;
+
+        @Setup
+        public void setup() throws IOException {
+            byte[] contents = new byte[blobSize];
+            new Random(61L).nextBytes(contents);
+            blob = new Blob("wug.txt", contents);
+            encoded = serialize(blob);
+            file = File.createTempFile("blob", ".bench");
+            writeContents(file, encoded);
+        }
+
+        @TearDown
+        public void tearDown() {
+            file.delete();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Commits {
+        @Param({"10", "1000", "10000"})
+        int trackedFiles;
+
+        Commit commit;
+        byte[] encoded;
+        File file;
+
+        @Setup
+        public void setup() throws IOException {
+            HashMap<String, ObjectId> tracked = new HashMap<>();
+            for (int i = 0; i < trackedFiles; i += 1) {
+                String filename = "file-" + i + ".txt";
+                tracked.put(filename, sha1Id(filename));
+            }
+            List<ObjectId> parents = new ArrayList<>();
+            parents.add(sha1Id("parent"));
+            commit = new Commit("benchmark commit", parents, tracked, new Date(0));
+            encoded = serialize(commit);
+            file = File.createTempFile("commit", ".bench");
+            writeContents(file, encoded);
+        }
+
+        @TearDown
+        public void tearDown() {
+            file.delete();
+        }
+    }
+
+    @Benchmark
+    public byte[] encodeBlob(Blobs state) {
+        return serialize(state.blob);
+    }
+
+    @Benchmark
+    public Blob decodeBlob(Blobs state) {
+        return decode(state.encoded, Blob.class);
+    }
+
+    @Benchmark
+    public Blob readBlobFromFile(Blobs state) {
+        return readObject(state.file, Blob.class);
+    }
+
+    @Benchmark
+    public byte[] encodeCommit(Commits state) {
+        return serialize(state.commit);
+    }
+
+    @Benchmark
+    public Commit decodeCommit(Commits state) {
+        return decode(state.encoded, Commit.class);
+    }
+
+    @Benchmark
+    public Commit readCommitFromFile(Commits state) {
+        return readObject(state.file, Commit.class);
+    }
+
+    private static <T extends Serializable> T decode(byte[] encoded, Class<T> expectedClass) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(encoded))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/** Read and write cost of each ObjectDatabase backend, on objects of a few
+ *  sizes.  The disk-backed ones live in a temporary objects directory.
+ *  @author Rogelio Camargo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectDatabaseBenchmark {
+
+    private static final int OBJECTS = 256;
+
+    @Param({"loose", "packed", "heap", "offheap", "cached-loose"})
+    String backend;
+
+    @Param({"1024", "65536"})
+    int objectSize;
+
+    private File objectsDir;
+    private Durability durability;
+    private ObjectDatabase database;
+    private ObjectId[] ids;
+    private byte[] contents;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        objectsDir = Files.createTempDirectory("objects").toFile();
+        durability = new Durability(objectsDir);
+        switch (backend) {
+            case "loose":
+                database = looseDatabase();
+                break;
+            case "packed":
+                database = new PackedObjectDatabase(PackedObjectDatabase.packFile(objectsDir), durability);
+                break;
+            case "heap":
+                database = new InMemoryObjectDatabase(false);
+                break;
+            case "offheap":
+                database = new InMemoryObjectDatabase(true);
+                break;
+            default:
+                database = new CachingObjectDatabase(looseDatabase(), CachingObjectDatabase.DEFAULT_MAX_BYTES);
+        }
+        contents = new byte[objectSize];
+        Random random = new Random(61L);
+        ids = new ObjectId[OBJECTS];
+        for (int i = 0; i < OBJECTS; i += 1) {
+            random.nextBytes(contents);
+            ids[i] = Utils.sha1Id(contents);
+            database.write(Pack.BLOB, ids[i], contents);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkRepository.deleteRecursively(objectsDir.toPath());
+    }
+
+    @Benchmark
+    public byte[] read() {
+        next = (next + 1) % OBJECTS;
+        return database.read(Pack.BLOB, ids[next]);
+    }
+
+    @Benchmark
+    public boolean exists() {
+        next = (next + 1) % OBJECTS;
+        return database.exists(Pack.BLOB, ids[next]);
+    }
+
+    @Benchmark
+    public void write() {
+        next += 1;
+        database.write(Pack.BLOB, Utils.sha1Id("object " + next), contents);
+    }
+
+    private ObjectDatabase looseDatabase() {
+        Utils.join(objectsDir, "blobs").mkdirs();
+        Utils.join(objectsDir, "commits").mkdirs();
+        return new LooseObjectDatabase(objectsDir, durability);
+    }
+}
@@ -0,0 +1,135 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static gitlet.BenchmarkRepository.REPOSITORY;
+import static gitlet.Utils.*;
+
+/** Generates synthetic repositories in the current working directory through
+ *  the Repository API, for scaling experiments that the two-file test scripts
+ *  never reach.  May be invoked as follows:
+ *      java gitlet.RepositoryGenerator FILES COMMITS BRANCHES MERGE_DENSITY [SEED]
+ *  which builds a repository with FILES tracked files and COMMITS further
+ *  commits spread over BRANCHES branches, where each commit is followed by a
+ *  merge of another branch with probability MERGE_DENSITY.  Like the
+ *  benchmarks, it refuses to run outside a scratch directory.
+ *  @author Rogelio Camargo
+ */
+public class RepositoryGenerator {
+
+    /** Size in bytes of each generated file. */
+    static final int FILE_SIZE = 256;
+    /** Probability that the next commit stays on the current branch, so that
+     *  generation does not pay for a full checkout on every commit. */
+    static final double STAY_ON_BRANCH = 0.8;
+
+    private final int files;
+    private final int commits;
+    private final int branches;
+    private final double mergeDensity;
+    private final Random random;
+
+    private final List<String> branchNames = new ArrayList<>();
+    private String currentBranch;
+    private int merges;
+    private int revision;
+
+    RepositoryGenerator(int files, int commits, int branches, double mergeDensity, long seed) {
+        if (files < 1 || commits < 0 || branches < 1 || mergeDensity < 0 || mergeDensity > 1) {
+            throw new IllegalArgumentException("invalid generator parameters");
+        }
+        this.files = files;
+        this.commits = commits;
+        this.branches = branches;
+        this.mergeDensity = mergeDensity;
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 4 || args.length > 5) {
+            exit("Usage: java gitlet.RepositoryGenerator FILES COMMITS BRANCHES MERGE_DENSITY [SEED]");
+        }
+        long seed = args.length == 5 ? Long.parseLong(args[4]) : 61L;
+        RepositoryGenerator generator = new RepositoryGenerator(Integer.parseInt(args[0]),
+                Integer.parseInt(args[1]), Integer.parseInt(args[2]), Double.parseDouble(args[3]), seed);
+        PrintStream stdout = BenchmarkRepository.silence();
+        try {
+            generator.generate();
+        } finally {
+            System.setOut(stdout);
+        }
+        message("Generated %d files, %d commits and %d merges over %d branches.",
+                generator.files, generator.commits, generator.merges, generator.branches);
+    }
+
+    /** Wipes the scratch directory and builds the repository.  Leaves master
+     *  checked out. */
+    void generate() {
+        BenchmarkRepository.create(files, FILE_SIZE);
+        currentBranch = "master";
+        branchNames.add("master");
+        for (int i = 1; i < branches; i += 1) {
+            String branchName = "branch-" + i;
+            REPOSITORY.createNewBranch(branchName);
+            branchNames.add(branchName);
+        }
+
+        for (int i = 0; i < commits; i += 1) {
+            if (branches > 1 && random.nextDouble() >= STAY_ON_BRANCH) {
+                switchTo(pickOtherBranch());
+            }
+            commitRandomChange();
+            if (branches > 1 && random.nextDouble() < mergeDensity) {
+                mergeFrom(pickOtherBranch());
+            }
+        }
+        switchTo("master");
+    }
+
+    /** Number of merge commits created by the last call to generate. */
+    int merges() {
+        return merges;
+    }
+
+    private void commitRandomChange() {
+        String filename = "file-" + random.nextInt(files) + ".txt";
+        byte[] contents = new byte[FILE_SIZE];
+        random.nextBytes(contents);
+        writeContents(join(REPOSITORY.cwd, filename), contents);
+        REPOSITORY.addFileToStagingArea(filename);
+        revision += 1;
+        REPOSITORY.makeNewCommit("revision " + revision + " on " + currentBranch);
+    }
+
+    /** Merges BRANCHNAME into the current branch when the two have diverged.
+     *  Fast-forwards and already-merged branches are skipped, since Repository
+     *  reports those by exiting. */
+    private void mergeFrom(String branchName) {
+        Commit current = BenchmarkRepository.branchHead(currentBranch);
+        Commit given = BenchmarkRepository.branchHead(branchName);
+        Commit splitPoint = REPOSITORY.findSplitPoint(current, given);
+        if (splitPoint.getId().equals(current.getId()) || splitPoint.getId().equals(given.getId())) {
+            return;
+        }
+        REPOSITORY.mergeBranchWithCurrentBranch(branchName);
+        merges += 1;
+    }
+
+    private void switchTo(String branchName) {
+        if (!branchName.equals(currentBranch)) {
+            REPOSITORY.checkoutBranch(branchName);
+            currentBranch = branchName;
+        }
+    }
+
+    private String pickOtherBranch() {
+        String branchName = branchNames.get(random.nextInt(branches - 1));
+        if (branchName.equals(currentBranch)) {
+            return branchNames.get(branches - 1);
+        }
+        return branchName;
+    }
+}
@@ -0,0 +1,210 @@
+package gitlet;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static gitlet.BenchmarkRepository.REPOSITORY;
+import static gitlet.Utils.*;
+
+/** End-to-end scaling scenarios.  For each scale, generates a repository with
+ *  RepositoryGenerator and then times add, commit, log, status, checkout and
+ *  merge against it.  May be invoked as follows:
+ *      java gitlet.ScalingBenchmark [--scales FILESxCOMMITS,...] [--branches N]
+ *                                   [--merge-density P] [--reps N] [--out FILE]
+ *  The report is written as JSON if FILE ends in .json and as CSV otherwise.
+ *  Like the benchmarks, it must run inside a scratch directory, so FILE
+ *  should be outside of it (by default it goes to the parent directory).
+ *  @author Rogelio Camargo
+ */
+public class ScalingBenchmark {
+
+    /** One timed operation at one scale. */
+    static class Measurement {
+        final int files;
+        final int commits;
+        final String operation;
+        final long[] nanos;
+
+        Measurement(int files, int commits, String operation, long[] nanos) {
+            this.files = files;
+            this.commits = commits;
+            this.operation = operation;
+            this.nanos = nanos;
+        }
+
+        double meanMillis() {
+            return Arrays.stream(nanos).average().orElse(0) / 1e6;
+        }
+
+        double minMillis() {
+            return Arrays.stream(nanos).min().orElse(0) / 1e6;
+        }
+
+        double maxMillis() {
+            return Arrays.stream(nanos).max().orElse(0) / 1e6;
+        }
+    }
+
+    private String scales = "10x10,100x100,1000x300";
+    private int branches = 4;
+    private double mergeDensity = 0.1;
+    private int reps = 5;
+    private File out = join(REPOSITORY.cwd.getParentFile(), "scaling-report.csv");
+
+    private final List<Measurement> measurements = new ArrayList<>();
+    private int files;
+    private int commits;
+
+    public static void main(String[] args) {
+        ScalingBenchmark benchmark = new ScalingBenchmark();
+        benchmark.parseArgs(args);
+        benchmark.run();
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                exit("Missing value for " + args[i] + ".");
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--scales":
+                    scales = value;
+                    break;
+                case "--branches":
+                    branches = Integer.parseInt(value);
+                    break;
+                case "--merge-density":
+                    mergeDensity = Double.parseDouble(value);
+                    break;
+                case "--reps":
+                    reps = Integer.parseInt(value);
+                    break;
+                case "--out":
+                    out = new File(value).getAbsoluteFile();
+                    break;
+                default:
+                    exit("Unknown option " + args[i] + ".");
+            }
+        }
+    }
+
+    private void run() {
+        for (String scale: scales.split(",")) {
+            String[] parts = scale.trim().split("x");
+            files = Integer.parseInt(parts[0]);
+            commits = Integer.parseInt(parts[1]);
+            PrintStream stdout = BenchmarkRepository.silence();
+            try {
+                new RepositoryGenerator(files, commits, branches, mergeDensity, 61L).generate();
+                runScenarios();
+            } finally {
+                System.setOut(stdout);
+            }
+            message("%d files, %d commits: done", files, commits);
+        }
+        if (out.getName().endsWith(".json")) {
+            writeContents(out, toJson());
+        } else {
+            writeContents(out, toCsv());
+        }
+        message("Report written to %s", out);
+    }
+
+    /** Times each operation REPS times.  Setup work that is not part of the
+     *  operation, such as editing files or creating branches, is left out of
+     *  the timings.  Starts and ends on master with a clean staging area. */
+    private void runScenarios() {
+        long[] add = new long[reps];
+        long[] commit = new long[reps];
+        for (int i = 0; i < reps; i += 1) {
+            String filename = "file-" + (i % files) + ".txt";
+            writeContents(join(REPOSITORY.cwd, filename), "scenario revision " + i + "\n");
+            long start = System.nanoTime();
+            REPOSITORY.addFileToStagingArea(filename);
+            add[i] = System.nanoTime() - start;
+            start = System.nanoTime();
+            REPOSITORY.makeNewCommit("scenario commit " + i);
+            commit[i] = System.nanoTime() - start;
+        }
+        record("add", add);
+        record("commit", commit);
+
+        record("log", time(REPOSITORY::printHeadCommitHistory));
+        record("status", time(REPOSITORY::printCurrentStatus));
+
+        REPOSITORY.createNewBranch("scenario-checkout");
+        long[] checkout = new long[reps];
+        for (int i = 0; i < reps; i += 1) {
+            long start = System.nanoTime();
+            REPOSITORY.checkoutBranch(i % 2 == 0 ? "scenario-checkout" : "master");
+            checkout[i] = System.nanoTime() - start;
+        }
+        if (reps % 2 == 1) {
+            REPOSITORY.checkoutBranch("master");
+        }
+        record("checkout", checkout);
+
+        long[] merge = new long[reps];
+        for (int i = 0; i < reps; i += 1) {
+            String branchName = "scenario-merge-" + i;
+            REPOSITORY.createNewBranch(branchName);
+            commitFile("scenario-master.txt", "master side " + i);
+            REPOSITORY.checkoutBranch(branchName);
+            commitFile("scenario-branch.txt", "branch side " + i);
+            REPOSITORY.checkoutBranch("master");
+            long start = System.nanoTime();
+            REPOSITORY.mergeBranchWithCurrentBranch(branchName);
+            merge[i] = System.nanoTime() - start;
+        }
+        record("merge", merge);
+    }
+
+    private long[] time(Runnable operation) {
+        long[] nanos = new long[reps];
+        for (int i = 0; i < reps; i += 1) {
+            long start = System.nanoTime();
+            operation.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+        return nanos;
+    }
+
+    private void record(String operation, long[] nanos) {
+        measurements.add(new Measurement(files, commits, operation, nanos));
+    }
+
+    private static void commitFile(String filename, String contents) {
+        writeContents(join(REPOSITORY.cwd, filename), contents + "\n");
+        REPOSITORY.addFileToStagingArea(filename);
+        REPOSITORY.makeNewCommit("edit " + filename);
+    }
+
+    private String toCsv() {
+        StringBuilder csv = new StringBuilder(
+                "files,commits,branches,mergeDensity,operation,reps,meanMillis,minMillis,maxMillis\n");
+        for (Measurement m: measurements) {
+            csv.append(String.format(Locale.ROOT, "%d,%d,%d,%s,%s,%d,%.3f,%.3f,%.3f%n", m.files, m.commits, branches,
+                    mergeDensity, m.operation, m.nanos.length, m.meanMillis(), m.minMillis(), m.maxMillis()));
+        }
+        return csv.toString();
+    }
+
+    private String toJson() {
+        StringBuilder json = new StringBuilder("[\n");
+        for (int i = 0; i < measurements.size(); i += 1) {
+            Measurement m = measurements.get(i);
+            json.append(String.format(Locale.ROOT, "  {\"files\": %d, \"commits\": %d, \"branches\": %d, "
+                    + "\"mergeDensity\": %s, \"operation\": \"%s\", \"reps\": %d, "
+                    + "\"meanMillis\": %.3f, \"minMillis\": %.3f, \"maxMillis\": %.3f}",
+                    m.files, m.commits, branches, mergeDensity, m.operation, m.nanos.length,
+                    m.meanMillis(), m.minMillis(), m.maxMillis()));
+            json.append(i + 1 < measurements.size() ? ",\n" : "\n");
+        }
+        return json.append("]\n").toString();
+    }
+}
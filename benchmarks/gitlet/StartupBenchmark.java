@@ -0,0 +1,182 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static gitlet.BenchmarkRepository.REPOSITORY;
+import static gitlet.Utils.*;
+
+/** Times one-shot gitlet commands as the shell runs them: each in a fresh JVM
+ *  started from the packaged jar, measuring the time from starting the
+ *  process to its first byte of output and to its exit.  Every command is
+ *  run with the plain JVM, and, if an AppCDS archive is given, with the
+ *  archive and with the archive and C1 only, as the appcds launcher runs it.
+ *  May be invoked as follows:
+ *      java gitlet.StartupBenchmark --jar JAR [--archive JSA] [--files N]
+ *                                   [--reps N] [--out FILE]
+ *  JAR and JSA come from mvn -P appcds package in the parent module.  The
+ *  repository the commands run against is generated in the current
+ *  directory, which must be a scratch directory (see BenchmarkRepository).
+ *  @author Rogelio Camargo
+ */
+public class StartupBenchmark {
+
+    /** One command under one JVM configuration. */
+    static class Measurement {
+        final String configuration;
+        final String command;
+        final long[] firstOutputNanos;
+        final long[] exitNanos;
+
+        Measurement(String configuration, String command, long[] firstOutputNanos, long[] exitNanos) {
+            this.configuration = configuration;
+            this.command = command;
+            this.firstOutputNanos = firstOutputNanos;
+            this.exitNanos = exitNanos;
+        }
+    }
+
+    private File jar;
+    private File archive;
+    private int files = 10;
+    private int reps = 20;
+    private File out = join(REPOSITORY.cwd.getParentFile(), "startup-report.csv");
+
+    private final List<Measurement> measurements = new ArrayList<>();
+
+    public static void main(String[] args) {
+        StartupBenchmark benchmark = new StartupBenchmark();
+        benchmark.parseArgs(args);
+        benchmark.run();
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                exit("Missing value for " + args[i] + ".");
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--jar":
+                    jar = new File(value).getAbsoluteFile();
+                    break;
+                case "--archive":
+                    archive = new File(value).getAbsoluteFile();
+                    break;
+                case "--files":
+                    files = Integer.parseInt(value);
+                    break;
+                case "--reps":
+                    reps = Integer.parseInt(value);
+                    break;
+                case "--out":
+                    out = new File(value).getAbsoluteFile();
+                    break;
+                default:
+                    exit("Unknown option " + args[i] + ".");
+            }
+        }
+        if (jar == null || !jar.isFile()) {
+            exit("No jar; build it with mvn -P appcds package and pass --jar.");
+        }
+    }
+
+    private void run() {
+        PrintStream stdout = BenchmarkRepository.silence();
+        try {
+            BenchmarkRepository.create(files, 1024);
+        } finally {
+            System.setOut(stdout);
+        }
+        List<String[]> configurations = new ArrayList<>();
+        configurations.add(new String[] {"default"});
+        if (archive != null && archive.isFile()) {
+            configurations.add(new String[] {"appcds", "-XX:SharedArchiveFile=" + archive});
+            configurations.add(new String[] {"appcds+c1", "-XX:SharedArchiveFile=" + archive,
+                "-XX:TieredStopAtLevel=1"});
+        }
+        for (String[] configuration: configurations) {
+            for (String[] command: commands()) {
+                time(configuration, command);
+            }
+            message("%s: done", configuration[0]);
+        }
+        writeContents(out, toCsv());
+        message("Report written to %s", out);
+    }
+
+    /** Returns the commands timed, each of which prints something. */
+    private List<String[]> commands() {
+        return List.of(
+                new String[] {"status"},
+                new String[] {"log"},
+                new String[] {"find", "populate " + files + " files"},
+                new String[] {"no-such-command"}
+        );
+    }
+
+    /** Runs COMMAND REPS times, after one untimed run, in JVMs started with
+     *  the options of CONFIGURATION (its name, then its JVM flags). */
+    private void time(String[] configuration, String[] command) {
+        List<String> processArgs = new ArrayList<>();
+        processArgs.add(join(new File(System.getProperty("java.home")), "bin", "java").getPath());
+        processArgs.addAll(Arrays.asList(configuration).subList(1, configuration.length));
+        processArgs.addAll(List.of("-jar", jar.getPath()));
+        processArgs.addAll(Arrays.asList(command));
+        ProcessBuilder builder = new ProcessBuilder(processArgs)
+                .directory(REPOSITORY.cwd)
+                .redirectError(ProcessBuilder.Redirect.DISCARD);
+        long[] firstOutput = new long[reps];
+        long[] exit = new long[reps];
+        try {
+            for (int i = -1; i < reps; i += 1) {
+                long start = System.nanoTime();
+                Process process = builder.start();
+                try (InputStream output = process.getInputStream()) {
+                    if (output.read() < 0) {
+                        throw new IllegalStateException(String.join(" ", command) + " printed nothing");
+                    }
+                    long first = System.nanoTime() - start;
+                    output.transferTo(OutputStream.nullOutputStream());
+                    process.waitFor();
+                    if (i >= 0) {
+                        firstOutput[i] = first;
+                        exit[i] = System.nanoTime() - start;
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(excp);
+        }
+        measurements.add(new Measurement(configuration[0], String.join(" ", command), firstOutput, exit));
+    }
+
+    private String toCsv() {
+        StringBuilder csv = new StringBuilder("configuration,command,reps,meanFirstOutputMillis,"
+                + "minFirstOutputMillis,meanExitMillis,minExitMillis\n");
+        for (Measurement m: measurements) {
+            csv.append(String.format(Locale.ROOT, "%s,%s,%d,%.3f,%.3f,%.3f,%.3f%n", m.configuration, m.command,
+                    m.firstOutputNanos.length, mean(m.firstOutputNanos), min(m.firstOutputNanos),
+                    mean(m.exitNanos), min(m.exitNanos)));
+        }
+        return csv.toString();
+    }
+
+    private static double mean(long[] nanos) {
+        return Arrays.stream(nanos).average().orElse(0) / 1e6;
+    }
+
+    private static double min(long[] nanos) {
+        return Arrays.stream(nanos).min().orElse(0) / 1e6;
+    }
+}
@@ -0,0 +1,65 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import static gitlet.BenchmarkRepository.REPOSITORY;
+
+/** Status scans and branch checkouts over working trees of FILES files,
+ *  listing the working directory or, if WATCHED, in watch mode.
+ *  @author Rogelio Camargo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkingTreeBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int files;
+
+    @Param({"1024"})
+    int fileSize;
+
+    @Param({"false", "true"})
+    boolean watched;
+
+    private String currentBranch;
+    private PrintStream stdout;
+
+    @Setup
+    public void setup() {
+        stdout = BenchmarkRepository.silence();
+        BenchmarkRepository.create(files, fileSize);
+        REPOSITORY.createNewBranch("other");
+        REPOSITORY.checkoutBranch("other");
+        // every file differs between the two branches, so checkout rewrites all of them
+        BenchmarkRepository.writeFiles("file", files, fileSize, 62L);
+        BenchmarkRepository.commitWorkingDirectory("rewrite " + files + " files");
+        currentBranch = "other";
+        if (watched) {
+            REPOSITORY.watch();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        REPOSITORY.unwatch();
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    public void status() {
+        REPOSITORY.printCurrentStatus();
+    }
+
+    @Benchmark
+    public void checkout() {
+        currentBranch = currentBranch.equals("master") ? "other" : "master";
+        REPOSITORY.checkoutBranch(currentBranch);
+    }
+}
@@ -0,0 +1,144 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static gitlet.Utils.*;
+
+/** Read-only object directories that a repository borrows objects from.
+ *
+ *  A repository made with clone --shared stores no objects of its own at
+ *  first.  Its objects/info/alternates file lists, one per line, the objects
+ *  directories of other repositories, and an object missing from the local
+ *  store is looked up in each of them in turn (and in their own alternates,
+ *  up to MAX_DEPTH levels).  New objects are always written locally.  The
+ *  borrowing repository breaks if objects are ever deleted from an alternate.
+ *  @author Rogelio Camargo
+ */
+class Alternates {
+
+    static final int MAX_DEPTH = 5;
+
+    /** Alternates, direct and inherited, of each objects directory looked up
+     *  so far by this process.  Prefetch threads look objects up too. */
+    private static final Map<File, Entry> CACHE = new ConcurrentHashMap<>();
+
+    /** The alternates of one objects directory, and the modification time
+     *  and length of each alternates file they were read from (0 for one
+     *  that did not exist).  An entry whose files have changed since, as
+     *  when a repository is deleted and made again in the same place, is
+     *  read again. */
+    private static class Entry {
+        final List<File> alternates = new ArrayList<>();
+        final Map<File, long[]> stamps = new HashMap<>();
+
+        boolean current() {
+            for (Map.Entry<File, long[]> stamp: stamps.entrySet()) {
+                if (!Arrays.equals(stamp.getValue(), stamp(stamp.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static File alternatesFile(File objectsDir) {
+        return join(objectsDir, "info", "alternates");
+    }
+
+    /** Returns the alternate objects directories of OBJECTSDIR, nearest first. */
+    static List<File> of(File objectsDir) {
+        File dir = objectsDir.getAbsoluteFile();
+        Entry entry = CACHE.get(dir);
+        if (entry == null || !entry.current()) {
+            entry = new Entry();
+            collect(dir, 0, entry);
+            CACHE.put(dir, entry);
+        }
+        return entry.alternates;
+    }
+
+    /** Returns the file holding the object ID in the subdirectory KIND
+     *  ("blobs" or "commits") of OBJECTSDIR or one of its alternates.  If none
+     *  has it, returns the local path, where it would be written. */
+    static File locate(File objectsDir, String kind, ObjectId id) {
+        File local = join(objectsDir, kind, id.toString());
+        Trace.count(Trace.FILES_STATED, 1);
+        if (local.exists()) {
+            return local;
+        }
+        for (File alternate: of(objectsDir)) {
+            File file = join(alternate, kind, id.toString());
+            Trace.count(Trace.FILES_STATED, 1);
+            if (file.exists()) {
+                return file;
+            }
+        }
+        return local;
+    }
+
+    /** Returns the names of every object in the subdirectory KIND of
+     *  OBJECTSDIR and its alternates, sorted. */
+    static List<String> list(File objectsDir, String kind) {
+        TreeSet<String> names = new TreeSet<>();
+        List<File> directories = new ArrayList<>(of(objectsDir));
+        directories.add(0, objectsDir);
+        for (File directory: directories) {
+            List<String> directoryNames = plainFilenamesIn(join(directory, kind));
+            if (directoryNames != null) {
+                names.addAll(directoryNames);
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    /** Makes ALTERNATE, the objects directory of another repository, an
+     *  alternate of OBJECTSDIR. */
+    static void add(File objectsDir, File alternate) {
+        File file = alternatesFile(objectsDir);
+        file.getParentFile().mkdirs();
+        String existing = file.exists() ? readContentsAsString(file) : "";
+        writeContents(file, existing + alternate.getAbsolutePath() + "\n");
+        CACHE.remove(objectsDir.getAbsoluteFile());
+    }
+
+    private static void collect(File objectsDir, int depth, Entry entry) {
+        if (depth == MAX_DEPTH) {
+            return;
+        }
+        for (File alternate: direct(objectsDir, entry)) {
+            // a cycle of alternates adds nothing new
+            if (!entry.alternates.contains(alternate) && !alternate.equals(objectsDir)) {
+                entry.alternates.add(alternate);
+                collect(alternate, depth + 1, entry);
+            }
+        }
+    }
+
+    /** Returns the alternates listed by OBJECTSDIR itself, noting the state
+     *  of its alternates file in ENTRY. */
+    private static List<File> direct(File objectsDir, Entry entry) {
+        List<File> alternates = new ArrayList<>();
+        File file = alternatesFile(objectsDir);
+        entry.stamps.put(file, stamp(file));
+        if (file.isFile()) {
+            for (String line: readContentsAsString(file).split("\n")) {
+                if (!line.isBlank()) {
+                    alternates.add(new File(line.strip()).getAbsoluteFile());
+                }
+            }
+        }
+        return alternates;
+    }
+
+    private static long[] stamp(File file) {
+        Trace.count(Trace.FILES_STATED, 1);
+        return new long[] {file.lastModified(), file.length()};
+    }
+}
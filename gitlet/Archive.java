@@ -0,0 +1,185 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/** Writes files, one after the other, to a tar or zip archive on a stream.
+ *  Each file goes straight to the stream as it is added, so memory use does
+ *  not grow with the size of the archive.  Closing an archive finishes it
+ *  but leaves the underlying stream open.
+ *  @author Rogelio Camargo
+ */
+abstract class Archive implements AutoCloseable {
+
+    /** Returns an archive of format FORMAT (tar or zip) writing to OUT, whose
+     *  files are all dated TIME (ms since the epoch), or null if there is no
+     *  such format. */
+    static Archive open(String format, OutputStream out, long time) {
+        switch (format) {
+            case "tar":
+                return new Tar(out, time);
+            case "zip":
+                return new Zip(out, time);
+            default:
+                return null;
+        }
+    }
+
+    /** Adds the file NAME with the given CONTENTS. */
+    abstract void add(String name, byte[] contents) throws IOException;
+
+    /** Adds the file NAME with the contents of the file CONTENTS. */
+    abstract void add(String name, File contents) throws IOException;
+
+    @Override
+    public abstract void close() throws IOException;
+
+    /** A POSIX (ustar) tar archive.  Names over 100 bytes and sizes over 8 GiB
+     *  are recorded in a pax extended header before the file's own. */
+    private static class Tar extends Archive {
+        private static final int BLOCK = 512;
+        private static final long MAX_USTAR_SIZE = 077777777777L;
+
+        private final OutputStream out;
+        private final long seconds;
+
+        Tar(OutputStream out, long time) {
+            this.out = new BufferedOutputStream(out, 1 << 16);
+            this.seconds = time / 1000;
+        }
+
+        @Override
+        void add(String name, byte[] contents) throws IOException {
+            header(name, contents.length);
+            out.write(contents);
+            pad(contents.length);
+        }
+
+        @Override
+        void add(String name, File contents) throws IOException {
+            long size = contents.length();
+            header(name, size);
+            Files.copy(contents.toPath(), out);
+            pad(size);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.write(new byte[2 * BLOCK]);
+            out.flush();
+        }
+
+        /** Writes the header(s) of the file NAME of SIZE bytes. */
+        private void header(String name, long size) throws IOException {
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream pax = new ByteArrayOutputStream();
+            if (nameBytes.length > 100) {
+                paxRecord(pax, "path", name);
+                nameBytes = Arrays.copyOf(nameBytes, 100);
+            }
+            if (size > MAX_USTAR_SIZE) {
+                paxRecord(pax, "size", Long.toString(size));
+            }
+            if (pax.size() > 0) {
+                out.write(block(("PaxHeader/" + name).getBytes(StandardCharsets.UTF_8), pax.size(), 'x'));
+                pax.writeTo(out);
+                pad(pax.size());
+            }
+            out.write(block(nameBytes, Math.min(size, MAX_USTAR_SIZE), '0'));
+        }
+
+        /** Returns a ustar header block for the entry NAME of SIZE bytes and
+         *  type TYPEFLAG. */
+        private byte[] block(byte[] name, long size, char typeflag) {
+            byte[] header = new byte[BLOCK];
+            System.arraycopy(name, 0, header, 0, Math.min(name.length, 100));
+            octal(header, 100, 8, 0644);
+            octal(header, 108, 8, 0);
+            octal(header, 116, 8, 0);
+            octal(header, 124, 12, size);
+            octal(header, 136, 12, seconds);
+            Arrays.fill(header, 148, 156, (byte) ' ');
+            header[156] = (byte) typeflag;
+            System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+            long checksum = 0;
+            for (byte b: header) {
+                checksum += b & 0xff;
+            }
+            octal(header, 148, 7, checksum);
+            return header;
+        }
+
+        /** Writes VALUE into HEADER[OFFSET..OFFSET+LENGTH) as zero-padded
+         *  octal digits followed by a NUL. */
+        private static void octal(byte[] header, int offset, int length, long value) {
+            String digits = Long.toOctalString(value);
+            digits = "0".repeat(length - 1 - digits.length()) + digits;
+            System.arraycopy(digits.getBytes(StandardCharsets.US_ASCII), 0, header, offset, length - 1);
+            header[offset + length - 1] = 0;
+        }
+
+        /** Appends the pax record KEY=VALUE to OUT.  A record starts with its
+         *  own length in bytes, digits included. */
+        private static void paxRecord(ByteArrayOutputStream out, String key, String value) {
+            int rest = (" " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8).length;
+            int length = rest + 1;
+            while (Integer.toString(length).length() + rest != length) {
+                length = Integer.toString(length).length() + rest;
+            }
+            out.writeBytes((length + " " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        /** Pads an entry of SIZE bytes to a whole number of blocks. */
+        private void pad(long size) throws IOException {
+            int remainder = (int) (size % BLOCK);
+            if (remainder != 0) {
+                out.write(new byte[BLOCK - remainder]);
+            }
+        }
+    }
+
+    /** A zip archive, with deflated entries. */
+    private static class Zip extends Archive {
+        private final ZipOutputStream out;
+        private final long time;
+
+        Zip(OutputStream out, long time) {
+            this.out = new ZipOutputStream(new BufferedOutputStream(out, 1 << 16));
+            this.time = time;
+        }
+
+        @Override
+        void add(String name, byte[] contents) throws IOException {
+            out.putNextEntry(entry(name));
+            out.write(contents);
+            out.closeEntry();
+        }
+
+        @Override
+        void add(String name, File contents) throws IOException {
+            out.putNextEntry(entry(name));
+            Files.copy(contents.toPath(), out);
+            out.closeEntry();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.finish();
+            out.flush();
+        }
+
+        private ZipEntry entry(String name) {
+            ZipEntry entry = new ZipEntry(name);
+            entry.setTime(time);
+            return entry;
+        }
+    }
+}
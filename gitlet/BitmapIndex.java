@@ -0,0 +1,346 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/** Reachability bitmaps for selected commits, stored next to the packs.
+ *
+ *  Every object reachable from a branch when the index is written gets a
+ *  position, commits in topological order (parents first) and each blob right
+ *  after the first commit that uses it.  For a selected commit, bit i of its
+ *  bitmap is set iff object i is reachable from it.  Because old objects come
+ *  first, most of a bitmap is a run of ones that EWAH stores in a single word.
+ *  Branch heads and every SELECT_INTERVAL-th commit are selected, so finding
+ *  what a commit reaches walks back only to the nearest selected commit and
+ *  ORs in its bitmap.
+ *
+ *  File layout, all integers big-endian:
+ *  <pre>
+ *      "GBMP" | version (4 bytes) | object count (4 bytes)
+ *      | per object: type (1 byte) | id (20 bytes) | size on disk (8 bytes)
+ *      | bitmap count (4 bytes)
+ *      | per bitmap: commit position (4 bytes) | EWAH words
+ *  </pre>
+ *  Commits made after the index was written are found by walking, so a stale
+ *  index gives correct answers, just more slowly.
+ *  @author Rogelio Camargo
+ */
+class BitmapIndex {
+
+    static final int VERSION = 1;
+    static final int SELECT_INTERVAL = 100;
+
+    private static final byte[] MAGIC = {'G', 'B', 'M', 'P'};
+
+    /** The objects reachable from some commit: those the index knows, as a
+     *  bitmap, plus the stored sizes of those it does not. */
+    static class Reachable {
+        final EwahBitmap indexed;
+        final Map<ObjectId, Long> unindexed;
+
+        Reachable(EwahBitmap indexed, Map<ObjectId, Long> unindexed) {
+            this.indexed = indexed;
+            this.unindexed = unindexed;
+        }
+    }
+
+    private final File gitletDir;
+    private final ObjectDatabase objects;
+    private final byte[] types;
+    private final ObjectId[] ids;
+    private final long[] sizes;
+    private final Map<ObjectId, Integer> positions;
+    private final Map<ObjectId, EwahBitmap> bitmaps;
+
+    private BitmapIndex(File gitletDir, ObjectDatabase objects, byte[] types, ObjectId[] ids,
+                        long[] sizes, Map<ObjectId, EwahBitmap> bitmaps) {
+        this.gitletDir = gitletDir;
+        this.objects = objects;
+        this.types = types;
+        this.ids = ids;
+        this.sizes = sizes;
+        this.bitmaps = bitmaps;
+        this.positions = new HashMap<>(ids.length * 2);
+        for (int i = 0; i < ids.length; i += 1) {
+            positions.put(ids[i], i);
+        }
+    }
+
+    static File indexFile(File gitletDir) {
+        return join(gitletDir, "objects", "pack", "reachability.bitmap");
+    }
+
+    /** Reads the index of the repository GITLETDIR, whose objects are
+     *  OBJECTS, or returns an empty index if it has none, so every query falls
+     *  back to walking. */
+    static BitmapIndex load(File gitletDir, ObjectDatabase objects) {
+        long start = Trace.begin();
+        File file = indexFile(gitletDir);
+        if (!file.isFile()) {
+            return new BitmapIndex(gitletDir, objects, new byte[0], new ObjectId[0], new long[0], Map.of());
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readInt() != VERSION) {
+                throw new IllegalArgumentException("Unrecognized bitmap index: " + file);
+            }
+            int count = in.readInt();
+            byte[] types = new byte[count];
+            ObjectId[] ids = new ObjectId[count];
+            long[] sizes = new long[count];
+            byte[] raw = new byte[ObjectId.RAW_LENGTH];
+            for (int i = 0; i < count; i += 1) {
+                types[i] = in.readByte();
+                in.readFully(raw);
+                ids[i] = ObjectId.fromRaw(raw);
+                sizes[i] = in.readLong();
+            }
+            int bitmapCount = in.readInt();
+            Map<ObjectId, EwahBitmap> bitmaps = new HashMap<>(bitmapCount * 2);
+            for (int i = 0; i < bitmapCount; i += 1) {
+                ObjectId commitId = ids[in.readInt()];
+                bitmaps.put(commitId, EwahBitmap.read(in));
+            }
+            Trace.count(Trace.FILES_READ, 1);
+            Trace.count(Trace.BYTES_READ, file.length());
+            return new BitmapIndex(gitletDir, objects, types, ids, sizes, bitmaps);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            Trace.end("bitmap.load", start);
+        }
+    }
+
+    /** Returns the objects reachable from the commit COMMITID. */
+    Reachable reachable(ObjectId commitId) {
+        EwahBitmap result = EwahBitmap.EMPTY;
+        BitSet walked = new BitSet(ids.length);
+        Map<ObjectId, Long> unindexed = new LinkedHashMap<>();
+        Deque<ObjectId> fringe = new ArrayDeque<>();
+        Set<ObjectId> visited = new HashSet<>();
+        fringe.addLast(commitId);
+        visited.add(commitId);
+        while (!fringe.isEmpty()) {
+            ObjectId id = fringe.removeFirst();
+            EwahBitmap bitmap = bitmaps.get(id);
+            if (bitmap != null) {
+                result = result.or(bitmap);
+                continue;
+            }
+            Commit commit = Transport.readCommit(objects, id);
+            mark(objects, Pack.COMMIT, id, walked, unindexed);
+            for (ObjectId blobId: commit.getTrackedFiles().values()) {
+                mark(objects, Pack.BLOB, blobId, walked, unindexed);
+            }
+            for (ObjectId parentId: commit.getParents()) {
+                if (visited.add(parentId)) {
+                    fringe.addLast(parentId);
+                }
+            }
+        }
+        return new Reachable(result.or(toBitmap(walked)), unindexed);
+    }
+
+    /** Returns true iff the commit ANCESTOR is in the history of DESCENDANT,
+     *  or null if the index cannot answer without a walk. */
+    Boolean isAncestor(ObjectId ancestor, ObjectId descendant) {
+        Integer position = positions.get(ancestor);
+        EwahBitmap bitmap = bitmaps.get(descendant);
+        if (position == null || bitmap == null) {
+            return null;
+        }
+        return bitmap.get(position);
+    }
+
+    /** Returns the number of objects in REACHABLE. */
+    static int count(Reachable reachable) {
+        return reachable.indexed.cardinality() + reachable.unindexed.size();
+    }
+
+    /** Returns the bytes on disk taken by the objects in REACHABLE. */
+    long bytes(Reachable reachable) {
+        long[] total = {0};
+        reachable.indexed.forEach(i -> total[0] += sizes[i]);
+        for (long size: reachable.unindexed.values()) {
+            total[0] += size;
+        }
+        return total[0];
+    }
+
+    /** Returns the number of objects the index covers. */
+    int size() {
+        return ids.length;
+    }
+
+    /** Returns the number of commits with a stored bitmap. */
+    int bitmapCount() {
+        return bitmaps.size();
+    }
+
+    /** Writes the index for the repository GITLETDIR, whose objects are
+     *  DATABASE, selecting the commits BRANCHHEADS and every
+     *  SELECT_INTERVAL-th commit reachable from them. */
+    static BitmapIndex write(File gitletDir, ObjectDatabase database, Iterable<ObjectId> branchHeads) {
+        // order commits parents first, with an iterative depth-first walk
+        Map<ObjectId, Commit> commits = new HashMap<>();
+        List<ObjectId> order = new ArrayList<>();
+        Set<ObjectId> heads = new HashSet<>();
+        Set<ObjectId> done = new HashSet<>();
+        for (ObjectId head: branchHeads) {
+            heads.add(head);
+            Deque<ObjectId> stack = new ArrayDeque<>();
+            stack.push(head);
+            while (!stack.isEmpty()) {
+                ObjectId id = stack.peek();
+                if (done.contains(id)) {
+                    stack.pop();
+                    continue;
+                }
+                Commit commit = commits.computeIfAbsent(id, key -> Transport.readCommit(database, key));
+                boolean ready = true;
+                for (ObjectId parentId: commit.getParents()) {
+                    if (!done.contains(parentId)) {
+                        stack.push(parentId);
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    done.add(id);
+                    order.add(id);
+                }
+            }
+        }
+
+        // give each commit a position, followed by the blobs it introduces
+        List<ObjectId> objects = new ArrayList<>();
+        List<Byte> objectTypes = new ArrayList<>();
+        Map<ObjectId, Integer> positions = new HashMap<>();
+        for (ObjectId commitId: order) {
+            positions.put(commitId, objects.size());
+            objects.add(commitId);
+            objectTypes.add((byte) Pack.COMMIT);
+            // sorting by path keeps the positions stable across rewrites
+            for (ObjectId blobId: new TreeMap<>(commits.get(commitId).getTrackedFiles()).values()) {
+                if (!positions.containsKey(blobId)) {
+                    positions.put(blobId, objects.size());
+                    objects.add(blobId);
+                    objectTypes.add((byte) Pack.BLOB);
+                }
+            }
+        }
+
+        // a commit reaches itself, its blobs and whatever its parents reach
+        Map<ObjectId, EwahBitmap> all = new HashMap<>();
+        Map<ObjectId, EwahBitmap> selected = new LinkedHashMap<>();
+        for (int i = 0; i < order.size(); i += 1) {
+            ObjectId commitId = order.get(i);
+            Commit commit = commits.get(commitId);
+            BitSet own = new BitSet();
+            own.set(positions.get(commitId));
+            for (ObjectId blobId: commit.getTrackedFiles().values()) {
+                own.set(positions.get(blobId));
+            }
+            EwahBitmap bitmap = toBitmap(own);
+            for (ObjectId parentId: commit.getParents()) {
+                bitmap = bitmap.or(all.get(parentId));
+            }
+            all.put(commitId, bitmap);
+            if (heads.contains(commitId) || i % SELECT_INTERVAL == 0) {
+                selected.put(commitId, bitmap);
+            }
+        }
+
+        int count = objects.size();
+        byte[] types = new byte[count];
+        ObjectId[] ids = new ObjectId[count];
+        long[] sizes = new long[count];
+        for (int i = 0; i < count; i += 1) {
+            types[i] = objectTypes.get(i);
+            ids[i] = objects.get(i);
+            sizes[i] = database.size(types[i], ids[i]);
+        }
+        BitmapIndex index = new BitmapIndex(gitletDir, database, types, ids, sizes, selected);
+        index.save();
+        return index;
+    }
+
+    private void save() {
+        File file = indexFile(gitletDir);
+        file.getParentFile().mkdirs();
+        // named for the process, so a background run and a foreground command never share one
+        File temp = join(file.getParentFile(), file.getName() + "-" + ProcessHandle.current().pid() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ids.length);
+            byte[] raw = new byte[ObjectId.RAW_LENGTH];
+            for (int i = 0; i < ids.length; i += 1) {
+                out.writeByte(types[i]);
+                ids[i].copyRawTo(raw, 0);
+                out.write(raw);
+                out.writeLong(sizes[i]);
+            }
+            out.writeInt(bitmaps.size());
+            for (Map.Entry<ObjectId, EwahBitmap> entry: bitmaps.entrySet()) {
+                out.writeInt(positions.get(entry.getKey()));
+                entry.getValue().write(out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.count(Trace.FILES_WRITTEN, 1);
+    }
+
+    /** Sets the bit of the object ID of type TYPE in WALKED if the index
+     *  knows it, and otherwise records it in UNINDEXED with its size in
+     *  OBJECTS. */
+    private void mark(ObjectDatabase objects, int type, ObjectId id, BitSet walked,
+                      Map<ObjectId, Long> unindexed) {
+        Integer position = positions.get(id);
+        if (position != null) {
+            walked.set(position);
+        } else if (!unindexed.containsKey(id)) {
+            unindexed.put(id, objects.size(type, id));
+        }
+    }
+
+    private static EwahBitmap toBitmap(BitSet bits) {
+        EwahBitmap.Builder builder = new EwahBitmap.Builder();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            builder.set(i);
+        }
+        return builder.build();
+    }
+}
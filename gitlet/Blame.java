@@ -0,0 +1,291 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import static gitlet.Utils.*;
+
+/** Finds the commit that last changed each line of a file.
+ *
+ *  The walk starts with every line of the file pending at the blamed
+ *  commit, as ranges of the file's lines in that commit mapped to lines of
+ *  the result.  Commits with pending ranges are taken newest first.  If a
+ *  parent has the same blob, every range moves to it unchanged; commits
+ *  whose changed-path filter rules the file out do so without being read.
+ *  Otherwise each parent's version is diffed against the commit's (see
+ *  LineDiff), the ranges of common lines move to that parent, and whatever
+ *  no parent has is the commit's own.  The walk ends once every line is
+ *  attributed, however much history is left.
+ *
+ *  Each finished blame is cached in .gitlet/blame, keyed by the commit and
+ *  the path, as the commit of each of its lines.  A walk reaching a commit
+ *  with a cached blame of the file takes its ranges' attributions from it,
+ *  so blaming again after new commits only walks the new ones.  The cache
+ *  is keyed by commit rather than by blob, since the same blob may arrive
+ *  through unrelated histories; commits never change, so neither do their
+ *  entries.
+ *  @author Rogelio Camargo
+ */
+class Blame {
+
+    /** The lines of a commit's version of the file, [source, source +
+     *  length), that are lines [result, result + length) of the blamed one. */
+    private static class Range {
+        final int result;
+        final int source;
+        final int length;
+
+        Range(int result, int source, int length) {
+            this.result = result;
+            this.source = source;
+            this.length = length;
+        }
+    }
+
+    /** The ranges pending at one commit, whose version of the file is the
+     *  blob BLOBID. */
+    private static class Pending {
+        final ObjectId blobId;
+        final List<Range> ranges = new ArrayList<>();
+
+        Pending(ObjectId blobId) {
+            this.blobId = blobId;
+        }
+    }
+
+    private final ObjectDatabase objects;
+    private final CommitGraph graph;
+    private final File cacheDir;
+
+    private final Map<ObjectId, Pending> pending = new HashMap<>();
+    private final Map<ObjectId, Long> timestamps = new HashMap<>();
+    private final PriorityQueue<ObjectId> queue = new PriorityQueue<>((x, y) -> {
+        int byTime = Long.compare(timestamps.get(y), timestamps.get(x));
+        return byTime != 0 ? byTime : x.compareTo(y);
+    });
+    /** The lines of the blobs read and not yet done with. */
+    private final Map<ObjectId, List<String>> lines = new HashMap<>();
+    private ObjectId[] attribution;
+    private int unattributed;
+    private int commitsVisited;
+
+    /** A blame reading OBJECTS, stepping over commits with GRAPH, and caching
+     *  in CACHEDIR. */
+    Blame(ObjectDatabase objects, CommitGraph graph, File cacheDir) {
+        this.objects = objects;
+        this.graph = graph;
+        this.cacheDir = cacheDir;
+    }
+
+    /** Returns the commit that last changed each of the LINES of the file
+     *  PATH in the commit COMMIT, where it is the blob BLOBID. */
+    ObjectId[] run(Commit commit, String path, ObjectId blobId, List<String> lines) {
+        long start = Trace.begin();
+        attribution = new ObjectId[lines.size()];
+        unattributed = lines.size();
+        this.lines.put(blobId, lines);
+        timestamps.put(commit.getId(), commit.getTimestamp().getTime());
+        if (unattributed > 0) {
+            enqueue(commit.getId(), blobId, List.of(new Range(0, 0, unattributed)));
+        }
+        boolean cached = false;
+        while (unattributed > 0 && !queue.isEmpty()) {
+            ObjectId commitId = queue.remove();
+            Pending work = pending.remove(commitId);
+            commitsVisited += 1;
+            if (fromCache(commitId, path, work)) {
+                cached |= commitId.equals(commit.getId());
+                continue;
+            }
+            visit(commitId, path, work);
+        }
+        if (!cached) {
+            writeCache(commit.getId(), path);
+        }
+        Trace.end("blame.walk", start);
+        return attribution;
+    }
+
+    int commitsVisited() {
+        return commitsVisited;
+    }
+
+    /** Passes the ranges of WORK at the commit COMMITID to its parents, and
+     *  attributes to it those that no parent has. */
+    private void visit(ObjectId commitId, String path, Pending work) {
+        CommitGraph.Entry entry = graph.get(commitId);
+        if (entry != null && entry.firstParent() != null && !entry.mightHaveChanged(path)) {
+            Trace.count(Trace.BLOOM_SKIPS, 1);
+            enqueue(entry.firstParent(), work.blobId, work.ranges);
+            return;
+        }
+        Commit commit = Commit.deserialize(objects, commitId);
+        List<Commit> parents = new ArrayList<>();
+        for (ObjectId parentId: commit.getParents()) {
+            Commit parent = Commit.deserialize(objects, parentId);
+            timestamps.put(parentId, parent.getTimestamp().getTime());
+            if (work.blobId.equals(parent.getTrackedFiles().get(path))) {
+                enqueue(parentId, work.blobId, work.ranges);
+                return;
+            }
+            parents.add(parent);
+        }
+        List<Range> left = work.ranges;
+        left.sort((x, y) -> Integer.compare(x.source, y.source));
+        for (Commit parent: parents) {
+            ObjectId parentBlobId = parent.getTrackedFiles().get(path);
+            if (parentBlobId == null || left.isEmpty()) {
+                continue;
+            }
+            List<int[]> blocks = LineDiff.matches(lines(parentBlobId), lines(work.blobId));
+            List<Range> moved = new ArrayList<>();
+            List<Range> kept = new ArrayList<>();
+            split(left, blocks, moved, kept);
+            if (!moved.isEmpty()) {
+                enqueue(parent.getId(), parentBlobId, moved);
+            }
+            left = kept;
+        }
+        for (Range range: left) {
+            attribute(range, commitId);
+        }
+        if (!pending.containsKey(commitId)) {
+            lines.remove(work.blobId);
+        }
+    }
+
+    /** Splits RANGES, sorted by source line, by the matching BLOCKS
+     *  ({parent start, start, length}, sorted) of a parent's version and this
+     *  one: MOVED gets the parts the parent has, in its lines, and KEPT the
+     *  rest. */
+    private static void split(List<Range> ranges, List<int[]> blocks, List<Range> moved, List<Range> kept) {
+        int b = 0;
+        for (Range range: ranges) {
+            int position = range.source;
+            int end = range.source + range.length;
+            while (b < blocks.size() && blocks.get(b)[1] + blocks.get(b)[2] <= position) {
+                b += 1;
+            }
+            for (int i = b; i < blocks.size() && position < end; i += 1) {
+                int[] block = blocks.get(i);
+                int blockStart = block[1];
+                int blockEnd = block[1] + block[2];
+                if (blockStart >= end) {
+                    break;
+                }
+                if (blockStart > position) {
+                    kept.add(new Range(range.result + position - range.source, position, blockStart - position));
+                    position = blockStart;
+                }
+                int overlapEnd = Math.min(end, blockEnd);
+                moved.add(new Range(range.result + position - range.source, block[0] + position - blockStart,
+                        overlapEnd - position));
+                position = overlapEnd;
+            }
+            if (position < end) {
+                kept.add(new Range(range.result + position - range.source, position, end - position));
+            }
+        }
+    }
+
+    /** Adds RANGES, of the version BLOBID of the file, to the work pending
+     *  at COMMITID. */
+    private void enqueue(ObjectId commitId, ObjectId blobId, List<Range> ranges) {
+        Pending work = pending.get(commitId);
+        if (work == null) {
+            work = new Pending(blobId);
+            pending.put(commitId, work);
+            if (!timestamps.containsKey(commitId)) {
+                CommitGraph.Entry entry = graph.get(commitId);
+                timestamps.put(commitId, entry != null ? entry.timestamp
+                        : Commit.deserialize(objects, commitId).getTimestamp().getTime());
+            }
+            queue.add(commitId);
+        }
+        work.ranges.addAll(ranges);
+    }
+
+    private void attribute(Range range, ObjectId commitId) {
+        for (int i = range.result; i < range.result + range.length; i += 1) {
+            attribution[i] = commitId;
+        }
+        unattributed -= range.length;
+    }
+
+    private List<String> lines(ObjectId blobId) {
+        List<String> blobLines = lines.get(blobId);
+        if (blobLines == null) {
+            blobLines = LineDiff.lines(Blob.deserialize(objects, blobId).getContents());
+            lines.put(blobId, blobLines);
+        }
+        return blobLines;
+    }
+
+    private File cacheFile(ObjectId commitId, String path) {
+        return join(cacheDir, sha1(commitId.toString(), path));
+    }
+
+    /** Attributes the ranges of WORK from the cached blame of PATH at
+     *  COMMITID, returning false if there is none. */
+    private boolean fromCache(ObjectId commitId, String path, Pending work) {
+        File file = cacheFile(commitId, path);
+        if (!file.isFile()) {
+            return false;
+        }
+        String[] ids = readContentsAsString(file).split("\n");
+        List<ObjectId> cached = new ArrayList<>();
+        for (String id: ids) {
+            if (!ObjectId.isId(id)) {
+                return false;
+            }
+            cached.add(ObjectId.fromHex(id));
+        }
+        for (Range range: work.ranges) {
+            if (range.source + range.length > cached.size()) {
+                return false;
+            }
+        }
+        for (Range range: work.ranges) {
+            for (int i = 0; i < range.length; i += 1) {
+                attribution[range.result + i] = cached.get(range.source + i);
+            }
+            unattributed -= range.length;
+        }
+        Trace.count(Trace.BLAME_CACHE_HITS, 1);
+        return true;
+    }
+
+    /** Caches the finished blame of PATH at COMMITID.  A cache that cannot
+     *  be written is left alone.  Blames run under the read lock, so others
+     *  may cache the same file at once; each writes its own temporary file,
+     *  and whichever renames last wins with an equal one. */
+    private void writeCache(ObjectId commitId, String path) {
+        if (attribution.length == 0) {
+            return;
+        }
+        StringBuilder contents = new StringBuilder(attribution.length * 41);
+        for (ObjectId id: attribution) {
+            contents.append(id).append('\n');
+        }
+        cacheDir.mkdirs();
+        File file = cacheFile(commitId, path);
+        File temp = null;
+        try {
+            temp = Files.createTempFile(cacheDir.toPath(), file.getName() + "-", ".tmp").toFile();
+            writeContents(temp, contents.toString());
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | IllegalArgumentException excp) {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+}
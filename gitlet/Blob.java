@@ -1,6 +1,5 @@
 package gitlet;
 
-import java.io.File;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
 
@@ -10,9 +9,12 @@ import static gitlet.Utils.*;
  *  @author Rogelio Camargo
  */
 public class Blob implements Serializable {
+    /** The value computed before it was declared (see StagingArea). */
+    private static final long serialVersionUID = -5888167336860711363L;
+
     private String filename;
     private byte[] contents;
-    private String id;
+    private ObjectId id;
 
     public Blob(String filename, byte[] contents) {
         this.filename = filename;
@@ -20,18 +22,34 @@ public class Blob implements Serializable {
         this.id = getIdFromNameAndContents(filename, contents);
     }
 
-    public static final File BLOBS_DIR = join(".gitlet", "objects", "blobs");
-
-    public static String getIdFromNameAndContents(String filename, byte[] contents) {
-        return sha1(filename, contents);
+    public static ObjectId getIdFromNameAndContents(String filename, byte[] contents) {
+        return sha1Id(filename, contents);
     }
 
-    public static Blob deserialize(String blobId) {
-        File fileToReadFrom = join(BLOBS_DIR, blobId);
-        return readObject(fileToReadFrom, Blob.class);
+    /** Reads the blob BLOBID from OBJECTS. */
+    public static Blob deserialize(ObjectDatabase objects, ObjectId blobId) {
+        long start = Trace.begin();
+        GitletEvents.ObjectRead event = GitletEvents.enabled() ? new GitletEvents.ObjectRead() : null;
+        if (event != null) {
+            event.begin();
+        }
+        byte[] stored = objects.read(Pack.BLOB, blobId);
+        Blob blob = Utils.deserialize(stored, Blob.class);
+        Trace.count(Trace.OBJECTS_READ, 1);
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.id = blobId.toString();
+                event.type = "blob";
+                event.size = stored.length;
+                event.commit();
+            }
+        }
+        Trace.end("blob.read", start);
+        return blob;
     }
 
-    public String getId() {
+    public ObjectId getId() {
         return id;
     }
 
@@ -41,13 +59,27 @@ public class Blob implements Serializable {
 
     public String getContentsAsString() { return new String(contents, StandardCharsets.UTF_8); }
 
-    public void serialize() {
-        File fileToReadTo = join(BLOBS_DIR, id);
-        writeObject(fileToReadTo, this);
+    /** Stores this blob in OBJECTS. */
+    public void serialize(ObjectDatabase objects) {
+        GitletEvents.ObjectWrite event = GitletEvents.enabled() ? new GitletEvents.ObjectWrite() : null;
+        if (event != null) {
+            event.begin();
+        }
+        byte[] stored = Utils.serialize(this);
+        objects.write(Pack.BLOB, id, stored);
+        Trace.count(Trace.OBJECTS_WRITTEN, 1);
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.id = id.toString();
+                event.type = "blob";
+                event.size = stored.length;
+                event.commit();
+            }
+        }
     }
 
-    public void delete() {
-        File blobFile = join(BLOBS_DIR, id);
-        blobFile.delete();
+    public void delete(ObjectDatabase objects) {
+        objects.delete(Pack.BLOB, id);
     }
 }
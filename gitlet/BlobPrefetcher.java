@@ -0,0 +1,97 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Reads and decodes a known sequence of blobs ahead of the code that uses
+ *  them, so the object store's I/O overlaps with working-tree writes.
+ *
+ *  At most WINDOW blobs are read but not yet taken at any time, bounding the
+ *  memory used.  Blobs must be taken in the order of the ids given.  Reads
+ *  run on a small pool of daemon threads shared by the whole process; a
+ *  sequence of a single blob is read on the caller's thread.
+ *  @author Rogelio Camargo
+ */
+class BlobPrefetcher implements AutoCloseable {
+
+    static final int THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    static final int WINDOW = 32;
+
+    private static ExecutorService pool;
+
+    private final ObjectDatabase objects;
+    private final List<ObjectId> ids;
+    /** Reads of ids[taken], ids[taken + 1], ..., in order. */
+    private final ArrayDeque<Future<Blob>> inFlight = new ArrayDeque<>();
+    private int submitted;
+    private int taken;
+
+    /** Starts reading the blobs IDS from OBJECTS, in order. */
+    BlobPrefetcher(ObjectDatabase objects, List<ObjectId> ids) {
+        this.objects = objects;
+        this.ids = ids;
+        fill();
+    }
+
+    /** Returns the blob ID, which must be the next one in the sequence. */
+    Blob take(ObjectId id) {
+        if (taken == ids.size() || !ids.get(taken).equals(id)) {
+            throw new IllegalStateException("blob " + id + " taken out of order");
+        }
+        taken += 1;
+        if (inFlight.isEmpty()) {
+            return Blob.deserialize(objects, id);
+        }
+        Future<Blob> read = inFlight.removeFirst();
+        fill();
+        long start = Trace.begin();
+        try {
+            return read.get();
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalArgumentException(excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(excp);
+        } finally {
+            Trace.end("prefetch.wait", start);
+        }
+    }
+
+    /** Abandons the blobs not yet taken. */
+    @Override
+    public void close() {
+        for (Future<Blob> read: inFlight) {
+            read.cancel(false);
+        }
+        inFlight.clear();
+    }
+
+    private void fill() {
+        if (ids.size() < 2) {
+            return;
+        }
+        while (submitted < ids.size() && submitted - taken < WINDOW) {
+            ObjectId id = ids.get(submitted);
+            inFlight.addLast(pool().submit(() -> Blob.deserialize(objects, id)));
+            submitted += 1;
+        }
+    }
+
+    private static synchronized ExecutorService pool() {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(THREADS, task -> {
+                Thread thread = new Thread(task, "gitlet-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return pool;
+    }
+}
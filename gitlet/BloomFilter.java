@@ -0,0 +1,88 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/** A Bloom filter over file paths, used to record which paths a commit
+ *  changed.  mightContain never gives a false negative, so a walk may skip
+ *  any commit whose filter rejects a path.
+ *  @author Rogelio Camargo
+ */
+class BloomFilter {
+
+    /** Bits per path and hash functions per path, as in git's changed-path
+     *  filters: about a 1% false-positive rate. */
+    static final int BITS_PER_ENTRY = 10;
+    static final int NUM_HASHES = 7;
+    /** Commits that change more paths than this get no filter at all. */
+    static final int MAX_ENTRIES = 512;
+
+    private final byte[] bits;
+
+    /** A filter over BITS, as returned by toBytes. */
+    BloomFilter(byte[] bits) {
+        if (bits.length == 0) {
+            throw new IllegalArgumentException("empty bloom filter");
+        }
+        this.bits = bits;
+    }
+
+    /** Returns a filter containing PATHS, or null if there are more than
+     *  MAX_ENTRIES of them. */
+    static BloomFilter of(Collection<String> paths) {
+        if (paths.size() > MAX_ENTRIES) {
+            return null;
+        }
+        BloomFilter filter = new BloomFilter(new byte[Math.max(8, (paths.size() * BITS_PER_ENTRY + 7) / 8)]);
+        for (String path: paths) {
+            filter.add(path);
+        }
+        return filter;
+    }
+
+    void add(String path) {
+        long hash = hash(path);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        int numBits = bits.length * 8;
+        for (int i = 0; i < NUM_HASHES; i += 1) {
+            int bit = Integer.remainderUnsigned(h1 + i * h2, numBits);
+            bits[bit >>> 3] |= 1 << (bit & 7);
+        }
+    }
+
+    /** Returns false if PATH was definitely never added. */
+    boolean mightContain(String path) {
+        long hash = hash(path);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        int numBits = bits.length * 8;
+        for (int i = 0; i < NUM_HASHES; i += 1) {
+            int bit = Integer.remainderUnsigned(h1 + i * h2, numBits);
+            if ((bits[bit >>> 3] & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    byte[] toBytes() {
+        return bits;
+    }
+
+    /** 64-bit FNV-1a over the UTF-8 bytes of PATH, finished with the
+     *  MurmurHash3 mixer so both halves are usable as hashes. */
+    private static long hash(String path) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b: path.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,138 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** An ObjectDatabase that keeps the most recently used objects of another
+ *  one in memory, up to a total of MAXBYTES, evicting the least recently
+ *  used first.  Writes go through to the other database and are cached.
+ *  @author Rogelio Camargo
+ */
+class CachingObjectDatabase implements ObjectDatabase {
+
+    /** The cache size a repository's objects get by default. */
+    static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    private final ObjectDatabase backing;
+    private final long maxBytes;
+    /** Cached objects, by type and id, least recently used first. */
+    private final LinkedHashMap<Key, byte[]> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+    /** Objects written, by type, since last taken. */
+    private final long[] writes = new long[Math.max(Pack.BLOB, Pack.COMMIT) + 1];
+
+    CachingObjectDatabase(ObjectDatabase backing, long maxBytes) {
+        this.backing = backing;
+        this.maxBytes = maxBytes;
+    }
+
+    /** Returns the database this one caches. */
+    ObjectDatabase backing() {
+        return backing;
+    }
+
+    @Override
+    public byte[] read(int type, ObjectId id) {
+        synchronized (cache) {
+            byte[] contents = cache.get(new Key(type, id));
+            if (contents != null) {
+                Trace.count(Trace.CACHE_HITS, 1);
+                return contents;
+            }
+        }
+        byte[] contents = backing.read(type, id);
+        put(type, id, contents);
+        return contents;
+    }
+
+    @Override
+    public void write(int type, ObjectId id, byte[] contents) {
+        backing.write(type, id, contents);
+        put(type, id, contents);
+        synchronized (writes) {
+            writes[type] += 1;
+        }
+    }
+
+    /** Returns the number of objects of type TYPE written since the last
+     *  call, and starts counting again. */
+    long takeWrites(int type) {
+        synchronized (writes) {
+            long count = writes[type];
+            writes[type] = 0;
+            return count;
+        }
+    }
+
+    @Override
+    public boolean exists(int type, ObjectId id) {
+        synchronized (cache) {
+            if (cache.containsKey(new Key(type, id))) {
+                return true;
+            }
+        }
+        return backing.exists(type, id);
+    }
+
+    @Override
+    public long size(int type, ObjectId id) {
+        return backing.size(type, id);
+    }
+
+    @Override
+    public void delete(int type, ObjectId id) {
+        synchronized (cache) {
+            byte[] removed = cache.remove(new Key(type, id));
+            if (removed != null) {
+                cachedBytes -= removed.length;
+            }
+        }
+        backing.delete(type, id);
+    }
+
+    @Override
+    public List<ObjectId> ids(int type) {
+        return backing.ids(type);
+    }
+
+    /** Caches CONTENTS as the object ID of type TYPE, evicting as needed.
+     *  Objects larger than the whole cache are not cached. */
+    private void put(int type, ObjectId id, byte[] contents) {
+        if (contents.length > maxBytes) {
+            return;
+        }
+        synchronized (cache) {
+            byte[] previous = cache.put(new Key(type, id), contents);
+            cachedBytes += contents.length - (previous == null ? 0 : previous.length);
+            Iterator<Map.Entry<Key, byte[]>> eldest = cache.entrySet().iterator();
+            while (cachedBytes > maxBytes && eldest.hasNext()) {
+                cachedBytes -= eldest.next().getValue().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    /** The key of a cached object: an id names an object only together
+     *  with its type. */
+    private static final class Key {
+        private final int type;
+        private final ObjectId id;
+
+        Key(int type, ObjectId id) {
+            this.type = type;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).type == type && ((Key) other).id.equals(id);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * id.hashCode() + type;
+        }
+    }
+}
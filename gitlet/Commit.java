@@ -1,8 +1,8 @@
 package gitlet;
 
-import java.io.File;
 import java.io.Serializable;
-import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 import static gitlet.Utils.*;
@@ -11,24 +11,30 @@ import static gitlet.Utils.*;
  *  @author Rogelio Camargo
  */
 public class Commit implements Serializable {
+    /** The value computed before it was declared (see StagingArea). */
+    private static final long serialVersionUID = -3719605259821614304L;
+
     private final String message;
     private final Date timestamp;
     // a commit can have at most two parents (gitlet simplification compared to real git)
-    private final List<String> parents;
+    private final List<ObjectId> parents;
     // hash map where filename are keys and blob hash pointers are values
-    private final HashMap<String, String> trackedFiles;
-    private final String id;
-    public static final File COMMITS_DIR = join(".gitlet", "objects", "commits");
+    private final HashMap<String, ObjectId> trackedFiles;
+    private final ObjectId id;
+    // immutable and thread-safe, unlike SimpleDateFormat, so one instance serves every commit
+    private static final DateTimeFormatter DATE_FORMATTER =
+            DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss yyyy Z", Locale.ENGLISH)
+                    .withZone(ZoneId.systemDefault());
 
     public Commit() {
       this("initial commit", new ArrayList<>(), new HashMap<>(), new Date(0));
     }
 
-    public Commit(String message, List<String> parents, HashMap<String, String> trackedFiles) {
+    public Commit(String message, List<ObjectId> parents, HashMap<String, ObjectId> trackedFiles) {
         this(message, parents, trackedFiles, new Date());
     }
 
-    public Commit(String message, List<String> parents, HashMap<String, String> trackedFiles, Date timestamp) {
+    public Commit(String message, List<ObjectId> parents, HashMap<String, ObjectId> trackedFiles, Date timestamp) {
         this.message = message;
         this.parents = parents;
         this.trackedFiles = trackedFiles;
@@ -37,17 +43,34 @@ public class Commit implements Serializable {
         this.id = generateId();
     }
 
-    public static Commit deserialize(String commitId) {
-        File fileToReadFrom = join(COMMITS_DIR, commitId);
-        return readObject(fileToReadFrom, Commit.class);
+    /** Reads the commit COMMITID from OBJECTS. */
+    public static Commit deserialize(ObjectDatabase objects, ObjectId commitId) {
+        long start = Trace.begin();
+        GitletEvents.ObjectRead event = GitletEvents.enabled() ? new GitletEvents.ObjectRead() : null;
+        if (event != null) {
+            event.begin();
+        }
+        byte[] stored = objects.read(Pack.COMMIT, commitId);
+        Commit commit = Utils.deserialize(stored, Commit.class);
+        Trace.count(Trace.OBJECTS_READ, 1);
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.id = commitId.toString();
+                event.type = "commit";
+                event.size = stored.length;
+                event.commit();
+            }
+        }
+        Trace.end("commit.read", start);
+        return commit;
     }
 
-    public static boolean exists(String commitId) {
-        File commitFile = join(COMMITS_DIR, commitId);
-        return commitFile.exists();
+    public static boolean exists(ObjectDatabase objects, ObjectId commitId) {
+        return objects.exists(Pack.COMMIT, commitId);
     }
 
-    public String getId() {
+    public ObjectId getId() {
         return id;
     }
 
@@ -55,27 +78,46 @@ public class Commit implements Serializable {
         return message;
     }
 
-    public List<String> getParents() { return parents; }
+    public Date getTimestamp() {
+        return timestamp;
+    }
+
+    public List<ObjectId> getParents() { return parents; }
 
     public boolean hasParents() {
         return !parents.isEmpty();
     }
 
-    public String getParent() {
+    public ObjectId getParent() {
         return parents.get(0);
     }
 
-    public String getMergedParent() {
+    public ObjectId getMergedParent() {
         return parents.get(1);
     }
     
-    public HashMap<String, String> getTrackedFiles() {
+    public HashMap<String, ObjectId> getTrackedFiles() {
         return trackedFiles;
     }
 
-    public void serialize() {
-        File fileToReadTo = join(COMMITS_DIR, id);
-        writeObject(fileToReadTo, this);
+    /** Stores this commit in OBJECTS. */
+    public void serialize(ObjectDatabase objects) {
+        GitletEvents.ObjectWrite event = GitletEvents.enabled() ? new GitletEvents.ObjectWrite() : null;
+        if (event != null) {
+            event.begin();
+        }
+        byte[] stored = Utils.serialize(this);
+        objects.write(Pack.COMMIT, id, stored);
+        Trace.count(Trace.OBJECTS_WRITTEN, 1);
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.id = id.toString();
+                event.type = "commit";
+                event.size = stored.length;
+                event.commit();
+            }
+        }
     }
 
     public String toString() {
@@ -84,15 +126,15 @@ public class Commit implements Serializable {
         commitBuilder.append("commit " + id + "\n");
         // if merged commit
         if (parents.size() == 2) {
-            commitBuilder.append("Merge: " + getParent().substring(0, 7) + " " + getMergedParent().substring(0, 7) + "\n");
+            commitBuilder.append("Merge: " + getParent().abbreviate(7) + " " + getMergedParent().abbreviate(7) + "\n");
         }
-        SimpleDateFormat formatter = new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z", Locale.ENGLISH);
-        commitBuilder.append("Date: " + formatter.format(timestamp) + "\n");
+        commitBuilder.append("Date: " + DATE_FORMATTER.format(timestamp.toInstant()) + "\n");
         commitBuilder.append(message + "\n");
         return commitBuilder.toString();
     }
 
-    private String generateId() {
-        return sha1(message, timestamp.toString(), parents.toString(), trackedFiles.toString());
+    // ObjectId.toString is the hex id, so ids match those of String-keyed commits
+    private ObjectId generateId() {
+        return sha1Id(message, timestamp.toString(), parents.toString(), trackedFiles.toString());
     }
 }
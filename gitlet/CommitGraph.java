@@ -0,0 +1,304 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/** A side file holding, for each commit, its parents, timestamp and a Bloom
+ *  filter of the paths it changed relative to its first parent, so history
+ *  walks can step over commits without deserializing them.
+ *
+ *  The file is a sequence of records, appended as commits are made:
+ *  <pre>
+ *      id (20 bytes) | number of parents (1 byte) | parent ids (20 bytes each)
+ *      | timestamp in ms (8 bytes) | filter length (4 bytes) | filter
+ *  </pre>
+ *  A filter length of 0 means "no filter": the commit changed too many paths
+ *  and must always be examined.  Commits missing from the graph (say, made
+ *  before it existed) are read from the object store instead; the
+ *  commit-graph command rewrites the file to cover every commit.  Appends
+ *  and rewrites hold the file lock of commit-graph.lock, so no process
+ *  appends to a file that is being replaced.
+ *  @author Rogelio Camargo
+ */
+class CommitGraph {
+
+    /** What the graph knows about one commit. */
+    static class Entry {
+        final ObjectId[] parents;
+        final long timestamp;
+        /** Null if the commit has no changed-path filter. */
+        final BloomFilter changedPaths;
+
+        Entry(ObjectId[] parents, long timestamp, BloomFilter changedPaths) {
+            this.parents = parents;
+            this.timestamp = timestamp;
+            this.changedPaths = changedPaths;
+        }
+
+        /** Returns the first parent, or null for the initial commit. */
+        ObjectId firstParent() {
+            return parents.length == 0 ? null : parents[0];
+        }
+
+        /** Returns false only if this commit definitely did not change PATH. */
+        boolean mightHaveChanged(String path) {
+            return changedPaths == null || changedPaths.mightContain(path);
+        }
+    }
+
+    /** The longest filter a record holds: one of BloomFilter.MAX_ENTRIES
+     *  paths. */
+    private static final int MAX_FILTER_LENGTH =
+            (BloomFilter.MAX_ENTRIES * BloomFilter.BITS_PER_ENTRY + 7) / 8;
+
+    private final Map<ObjectId, Entry> entries;
+
+    private CommitGraph(Map<ObjectId, Entry> entries) {
+        this.entries = entries;
+    }
+
+    /** Returns the graph file of the objects directory OBJECTSDIR. */
+    static File graphFile(File objectsDir) {
+        return join(objectsDir, "info", "commit-graph");
+    }
+
+    /** Reads the graph file GRAPHFILE.  A missing file gives an empty graph,
+     *  and a record cut short by a crash during an append is ignored. */
+    static CommitGraph load(File graphFile) {
+        long start = Trace.begin();
+        Map<ObjectId, Entry> entries = new HashMap<>();
+        if (graphFile.exists()) {
+            scan(graphFile, entries);
+            Trace.count(Trace.FILES_READ, 1);
+            Trace.count(Trace.BYTES_READ, graphFile.length());
+        }
+        Trace.end("graph.load", start);
+        return new CommitGraph(entries);
+    }
+
+    /** Reads the records of GRAPHFILE into ENTRIES, or only checks them if
+     *  ENTRIES is null, stopping at the first that is cut short or
+     *  malformed.  Returns the length of the records before it. */
+    private static long scan(File graphFile, Map<ObjectId, Entry> entries) {
+        long length = graphFile.length();
+        long offset = 0;
+        byte[] raw = new byte[ObjectId.RAW_LENGTH];
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(graphFile), 1 << 16))) {
+            while (offset < length) {
+                in.readFully(raw);
+                ObjectId id = ObjectId.fromRaw(raw);
+                ObjectId[] parents = new ObjectId[in.readUnsignedByte()];
+                for (int i = 0; i < parents.length; i += 1) {
+                    in.readFully(raw);
+                    parents[i] = ObjectId.fromRaw(raw);
+                }
+                long timestamp = in.readLong();
+                int filterLength = in.readInt();
+                long recordLength = ObjectId.RAW_LENGTH * (1L + parents.length) + 13 + filterLength;
+                if (filterLength < 0 || filterLength > MAX_FILTER_LENGTH || offset + recordLength > length) {
+                    break;
+                }
+                if (entries == null) {
+                    in.skipNBytes(filterLength);
+                } else {
+                    byte[] filter = new byte[filterLength];
+                    in.readFully(filter);
+                    entries.put(id, new Entry(parents, timestamp,
+                            filter.length == 0 ? null : new BloomFilter(filter)));
+                }
+                offset += recordLength;
+            }
+        } catch (EOFException excp) {
+            // a torn final record
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return offset;
+    }
+
+    /** Returns the entry for ID, or null if the graph does not cover it. */
+    Entry get(ObjectId id) {
+        return entries.get(id);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /** Appends COMMIT, which changed CHANGEDPATHS relative to its first parent,
+     *  to the graph file GRAPHFILE. */
+    static void append(File graphFile, Commit commit, Collection<String> changedPaths) {
+        try (Appender appender = new Appender(graphFile)) {
+            appender.append(commit, changedPaths);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Appends records to a graph file through one open stream, for writers
+     *  of many commits at once.  A record left cut short by a crash is
+     *  truncated away first, so that new records follow the last whole one
+     *  rather than the garbage. */
+    static class Appender implements AutoCloseable {
+        private final FileChannel lock;
+        private final DataOutputStream out;
+
+        Appender(File graphFile) throws IOException {
+            graphFile.getParentFile().mkdirs();
+            lock = lock(graphFile);
+            try {
+                if (graphFile.exists()) {
+                    long length = scan(graphFile, null);
+                    if (length < graphFile.length()) {
+                        try (FileChannel channel = FileChannel.open(graphFile.toPath(), StandardOpenOption.WRITE)) {
+                            channel.truncate(length);
+                        }
+                    }
+                }
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(graphFile, true), 1 << 16));
+            } catch (IOException | RuntimeException excp) {
+                lock.close();
+                throw excp;
+            }
+        }
+
+        /** Appends COMMIT, which changed CHANGEDPATHS relative to its first
+         *  parent. */
+        void append(Commit commit, Collection<String> changedPaths) throws IOException {
+            writeRecord(out, commit, changedPaths);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.close();
+            } finally {
+                lock.close();
+            }
+            Trace.count(Trace.FILES_WRITTEN, 1);
+        }
+    }
+
+    /** Rewrites the graph file GRAPHFILE to cover every commit in OBJECTS,
+     *  computing each changed-path filter from scratch.  Returns the number of
+     *  commits written.
+     *
+     *  Reading the commits takes long, and other processes may append to the
+     *  graph meanwhile, so the records of commits made since are carried over
+     *  from the old file, under the graph's lock, just before the new one
+     *  replaces it. */
+    static int writeAll(ObjectDatabase objects, File graphFile) {
+        Map<ObjectId, Commit> commits = new HashMap<>();
+        for (ObjectId id: objects.ids(Pack.COMMIT)) {
+            commits.put(id, Commit.deserialize(objects, id));
+        }
+        graphFile.getParentFile().mkdirs();
+        File temp = join(graphFile.getParentFile(), "commit-graph-" + ProcessHandle.current().pid() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+                for (Commit commit: commits.values()) {
+                    Commit parent = commit.hasParents() ? commits.get(commit.getParent()) : null;
+                    writeRecord(out, commit, changedPaths(commit, parent));
+                }
+            }
+            try (FileChannel ignored = lock(graphFile)) {
+                Map<ObjectId, Entry> appended = new HashMap<>();
+                if (graphFile.exists()) {
+                    scan(graphFile, appended);
+                }
+                appended.keySet().removeAll(commits.keySet());
+                try (DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(temp, true), 1 << 16))) {
+                    for (Map.Entry<ObjectId, Entry> record: appended.entrySet()) {
+                        Entry entry = record.getValue();
+                        writeRecord(out, record.getKey(), entry.parents, entry.timestamp, entry.changedPaths);
+                    }
+                }
+                Files.move(temp.toPath(), graphFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                return commits.size() + appended.size();
+            }
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the paths whose blobs differ between COMMIT and PARENT, which
+     *  is null for the initial commit. */
+    static Set<String> changedPaths(Commit commit, Commit parent) {
+        Map<String, ObjectId> tracked = commit.getTrackedFiles();
+        Map<String, ObjectId> parentTracked = parent == null ? Map.of() : parent.getTrackedFiles();
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, ObjectId> entry: tracked.entrySet()) {
+            if (!entry.getValue().equals(parentTracked.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String path: parentTracked.keySet()) {
+            if (!tracked.containsKey(path)) {
+                changed.add(path);
+            }
+        }
+        return changed;
+    }
+
+    /** Takes the lock of the graph file GRAPHFILE, which excludes other
+     *  processes appending to or replacing it, returning the channel whose
+     *  closing releases it. */
+    private static FileChannel lock(File graphFile) throws IOException {
+        FileChannel channel = FileChannel.open(join(graphFile.getParentFile(), "commit-graph.lock").toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            channel.lock();
+        } catch (IOException | RuntimeException excp) {
+            channel.close();
+            throw excp;
+        }
+        return channel;
+    }
+
+    private static void writeRecord(DataOutputStream out, Commit commit,
+                                    Collection<String> changedPaths) throws IOException {
+        writeRecord(out, commit.getId(), commit.getParents().toArray(new ObjectId[0]),
+                commit.getTimestamp().getTime(), BloomFilter.of(changedPaths));
+    }
+
+    /** Writes the record of the commit ID, with PARENTS, made at TIMESTAMP,
+     *  whose changed-path filter is FILTER (null for none). */
+    private static void writeRecord(DataOutputStream out, ObjectId id, ObjectId[] parents, long timestamp,
+                                    BloomFilter filter) throws IOException {
+        byte[] raw = new byte[ObjectId.RAW_LENGTH];
+        id.copyRawTo(raw, 0);
+        out.write(raw);
+        out.writeByte(parents.length);
+        for (ObjectId parent: parents) {
+            parent.copyRawTo(raw, 0);
+            out.write(raw);
+        }
+        out.writeLong(timestamp);
+        byte[] bits = filter == null ? new byte[0] : filter.toBytes();
+        out.writeInt(bits.length);
+        out.write(bits);
+    }
+}
@@ -0,0 +1,338 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The differences between the files of two commits, printed as names and
+ *  statuses, as per-file line counts, or as unified diffs.
+ *
+ *  Both file maps are walked as sorted sequences of names, merged, and any
+ *  name with the same blob id on both sides is skipped without more work:
+ *  blob ids cover the filename and contents, so equal ids mean an unchanged
+ *  file.  Blobs are only read for the files that changed, and only when line
+ *  counts or contents are printed, or to find renames when asked to.
+ *  @author Rogelio Camargo
+ */
+class Diff {
+
+    /** Lines of context around each change in a unified diff. */
+    static final int CONTEXT = 3;
+    /** The widest --stat bar. */
+    static final int STAT_WIDTH = 40;
+    private static final String NO_NEWLINE = "\n\\ No newline at end of file";
+
+    /** One changed file: added (A), deleted (D), modified (M) or renamed (R,
+     *  SIMILARITY percent alike).  FROM is null for an added file, TO for a
+     *  deleted one, and so is the blob id of the missing side. */
+    static class Change {
+        final char status;
+        final String from;
+        final String to;
+        final ObjectId oldBlobId;
+        final ObjectId newBlobId;
+        final int similarity;
+
+        Change(char status, String from, String to, ObjectId oldBlobId, ObjectId newBlobId, int similarity) {
+            this.status = status;
+            this.from = from;
+            this.to = to;
+            this.oldBlobId = oldBlobId;
+            this.newBlobId = newBlobId;
+            this.similarity = similarity;
+        }
+
+        /** Returns the name this change is listed under. */
+        String name() {
+            if (status == 'R') {
+                return from + " => " + to;
+            }
+            return to != null ? to : from;
+        }
+    }
+
+    /** The lines of both sides of one change, as compared. */
+    private static class Contents {
+        final List<String> oldLines;
+        final List<String> newLines;
+        final boolean binary;
+
+        Contents(byte[] oldContents, byte[] newContents) {
+            this.binary = LargeFiles.isPointer(oldContents) || LargeFiles.isPointer(newContents);
+            this.oldLines = binary ? List.of() : lines(oldContents);
+            this.newLines = binary ? List.of() : lines(newContents);
+        }
+    }
+
+    private final ObjectDatabase objects;
+    private final List<Change> changes;
+
+    /** The differences from OLDFILES to NEWFILES, with blobs in OBJECTS.
+     *  Renames at least RENAMETHRESHOLD percent similar are found, unless it
+     *  is 0. */
+    Diff(ObjectDatabase objects, Map<String, ObjectId> oldFiles, Map<String, ObjectId> newFiles,
+         int renameThreshold) {
+        this.objects = objects;
+        long start = Trace.begin();
+        List<Change> found = changes(oldFiles, newFiles);
+        Trace.end("diff.files", start);
+        this.changes = renameThreshold > 0 ? withRenames(found, renameThreshold) : found;
+    }
+
+    /** Returns the changes from OLDFILES to NEWFILES, in order of name. */
+    private static List<Change> changes(Map<String, ObjectId> oldFiles, Map<String, ObjectId> newFiles) {
+        String[] oldNames = oldFiles.keySet().toArray(new String[0]);
+        String[] newNames = newFiles.keySet().toArray(new String[0]);
+        Arrays.sort(oldNames);
+        Arrays.sort(newNames);
+        List<Change> changes = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < oldNames.length || j < newNames.length) {
+            int order = i == oldNames.length ? 1 : j == newNames.length ? -1 : oldNames[i].compareTo(newNames[j]);
+            if (order < 0) {
+                changes.add(new Change('D', oldNames[i], null, oldFiles.get(oldNames[i]), null, 0));
+                i += 1;
+            } else if (order > 0) {
+                changes.add(new Change('A', null, newNames[j], null, newFiles.get(newNames[j]), 0));
+                j += 1;
+            } else {
+                ObjectId oldBlobId = oldFiles.get(oldNames[i]);
+                ObjectId newBlobId = newFiles.get(newNames[j]);
+                if (!oldBlobId.equals(newBlobId)) {
+                    changes.add(new Change('M', oldNames[i], newNames[j], oldBlobId, newBlobId, 0));
+                }
+                i += 1;
+                j += 1;
+            }
+        }
+        return changes;
+    }
+
+    /** Returns CHANGES with each deleted and added file that RenameDetector
+     *  pairs at THRESHOLD percent replaced by a rename, listed under its new
+     *  name. */
+    private List<Change> withRenames(List<Change> changes, int threshold) {
+        Map<String, ObjectId> deleted = new HashMap<>();
+        Map<String, ObjectId> added = new HashMap<>();
+        for (Change change: changes) {
+            if (change.status == 'D') {
+                deleted.put(change.from, change.oldBlobId);
+            } else if (change.status == 'A') {
+                added.put(change.to, change.newBlobId);
+            }
+        }
+        Map<String, RenameDetector.Rename> renames = new HashMap<>();
+        for (RenameDetector.Rename rename: new RenameDetector(objects, threshold).detect(deleted, added)) {
+            renames.put(rename.from, rename);
+            renames.put(rename.to, rename);
+        }
+        List<Change> result = new ArrayList<>();
+        for (Change change: changes) {
+            RenameDetector.Rename rename = change.status == 'A' || change.status == 'D'
+                    ? renames.get(change.name()) : null;
+            if (rename == null) {
+                result.add(change);
+            } else if (change.status == 'A') {
+                result.add(new Change('R', rename.from, rename.to, deleted.get(rename.from), change.newBlobId,
+                        rename.similarity));
+            }
+        }
+        return result;
+    }
+
+    /** Writes each change to OUT as its status and name(s), tab-separated. */
+    void writeNameStatus(Writer out) throws IOException {
+        for (Change change: changes) {
+            if (change.status == 'R') {
+                out.write(String.format("R%03d\t%s\t%s\n", change.similarity, change.from, change.to));
+            } else {
+                out.write(change.status + "\t" + change.name() + "\n");
+            }
+        }
+    }
+
+    /** Writes each change to OUT with its lines added and deleted, as a
+     *  bar of +s and -s scaled to STAT_WIDTH, then a summary line. */
+    void writeStat(Writer out) throws IOException {
+        List<int[]> counts = new ArrayList<>();
+        int nameWidth = 0;
+        int largest = 0;
+        long insertions = 0;
+        long deletions = 0;
+        try (BlobPrefetcher blobs = new BlobPrefetcher(objects, blobsToRead())) {
+            for (Change change: changes) {
+                Contents contents = read(blobs, change);
+                int matched = 0;
+                if (!contents.binary) {
+                    for (int[] block: LineDiff.matches(contents.oldLines, contents.newLines)) {
+                        matched += block[2];
+                    }
+                }
+                int[] count = {contents.newLines.size() - matched, contents.oldLines.size() - matched,
+                    contents.binary ? 1 : 0};
+                counts.add(count);
+                nameWidth = Math.max(nameWidth, change.name().length());
+                largest = Math.max(largest, count[0] + count[1]);
+                insertions += count[0];
+                deletions += count[1];
+            }
+        }
+        int countWidth = Integer.toString(largest).length();
+        for (int i = 0; i < changes.size(); i += 1) {
+            int[] count = counts.get(i);
+            String name = String.format(" %-" + nameWidth + "s | ", changes.get(i).name());
+            if (count[2] == 1) {
+                out.write(name + "Bin\n");
+                continue;
+            }
+            int plus = count[0];
+            int minus = count[1];
+            if (largest > STAT_WIDTH) {
+                plus = scale(plus, largest);
+                minus = scale(minus, largest);
+            }
+            out.write(String.format("%s%" + countWidth + "d %s%s", name, count[0] + count[1],
+                    "+".repeat(plus), "-".repeat(minus)).stripTrailing() + "\n");
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        out.write(" " + plural(changes.size(), "file") + " changed");
+        if (insertions > 0 || deletions == 0) {
+            out.write(", " + plural(insertions, "insertion") + "(+)");
+        }
+        if (deletions > 0 || insertions == 0) {
+            out.write(", " + plural(deletions, "deletion") + "(-)");
+        }
+        out.write("\n");
+    }
+
+    /** Writes each change to OUT as a unified diff with CONTEXT lines of
+     *  context. */
+    void writePatch(Writer out) throws IOException {
+        try (BlobPrefetcher blobs = new BlobPrefetcher(objects, blobsToRead())) {
+            for (Change change: changes) {
+                Contents contents = read(blobs, change);
+                String from = change.from != null ? change.from : change.to;
+                String to = change.to != null ? change.to : change.from;
+                out.write("diff --gitlet a/" + from + " b/" + to + "\n");
+                if (change.status == 'A') {
+                    out.write("new file\n");
+                } else if (change.status == 'D') {
+                    out.write("deleted file\n");
+                } else if (change.status == 'R') {
+                    out.write("similarity index " + change.similarity + "%\n");
+                    out.write("rename from " + change.from + "\n");
+                    out.write("rename to " + change.to + "\n");
+                }
+                if (contents.binary) {
+                    out.write("Binary files a/" + from + " and b/" + to + " differ\n");
+                } else if (!contents.oldLines.equals(contents.newLines)) {
+                    out.write("--- " + (change.from != null ? "a/" + change.from : "/dev/null") + "\n");
+                    out.write("+++ " + (change.to != null ? "b/" + change.to : "/dev/null") + "\n");
+                    writeHunks(out, contents.oldLines, contents.newLines);
+                }
+            }
+        }
+    }
+
+    /** Writes the hunks turning the lines A into the lines B. */
+    private static void writeHunks(Writer out, List<String> a, List<String> b) throws IOException {
+        // the changed regions between the matching blocks, as {aStart, aEnd, bStart, bEnd}
+        List<int[]> regions = new ArrayList<>();
+        List<int[]> blocks = new ArrayList<>(LineDiff.matches(a, b));
+        blocks.add(new int[] {a.size(), b.size(), 0});
+        int ai = 0;
+        int bi = 0;
+        for (int[] block: blocks) {
+            if (block[0] > ai || block[1] > bi) {
+                regions.add(new int[] {ai, block[0], bi, block[1]});
+            }
+            ai = block[0] + block[2];
+            bi = block[1] + block[2];
+        }
+        // regions whose contexts touch share a hunk
+        int first = 0;
+        while (first < regions.size()) {
+            int last = first;
+            while (last + 1 < regions.size() && regions.get(last + 1)[0] - regions.get(last)[1] <= 2 * CONTEXT) {
+                last += 1;
+            }
+            int aStart = Math.max(0, regions.get(first)[0] - CONTEXT);
+            int bStart = regions.get(first)[2] - (regions.get(first)[0] - aStart);
+            int aEnd = Math.min(a.size(), regions.get(last)[1] + CONTEXT);
+            int bEnd = regions.get(last)[3] + (aEnd - regions.get(last)[1]);
+            out.write("@@ -" + hunkRange(aStart, aEnd - aStart) + " +" + hunkRange(bStart, bEnd - bStart) + " @@\n");
+            int position = aStart;
+            for (int r = first; r <= last; r += 1) {
+                int[] region = regions.get(r);
+                writeLines(out, ' ', a, position, region[0]);
+                writeLines(out, '-', a, region[0], region[1]);
+                writeLines(out, '+', b, region[2], region[3]);
+                position = region[1];
+            }
+            writeLines(out, ' ', a, position, aEnd);
+            first = last + 1;
+        }
+    }
+
+    private static void writeLines(Writer out, char prefix, List<String> lines, int from, int to)
+            throws IOException {
+        for (int i = from; i < to; i += 1) {
+            out.write(prefix);
+            out.write(lines.get(i));
+            out.write('\n');
+        }
+    }
+
+    /** Returns the hunk header range of LENGTH lines after the first START. */
+    private static String hunkRange(int start, int length) {
+        if (length == 0) {
+            return start + ",0";
+        }
+        return length == 1 ? Integer.toString(start + 1) : (start + 1) + "," + length;
+    }
+
+    /** Returns the lines of CONTENTS, the last one carrying a marker if it
+     *  has no newline, so that it differs from the same line with one. */
+    private static List<String> lines(byte[] contents) {
+        List<String> lines = LineDiff.lines(contents);
+        if (contents.length > 0 && contents[contents.length - 1] != '\n') {
+            lines.set(lines.size() - 1, lines.get(lines.size() - 1) + NO_NEWLINE);
+        }
+        return lines;
+    }
+
+    /** Returns the blobs the changes need, in the order read takes them. */
+    private List<ObjectId> blobsToRead() {
+        List<ObjectId> ids = new ArrayList<>();
+        for (Change change: changes) {
+            if (change.oldBlobId != null) {
+                ids.add(change.oldBlobId);
+            }
+            if (change.newBlobId != null) {
+                ids.add(change.newBlobId);
+            }
+        }
+        return ids;
+    }
+
+    private static Contents read(BlobPrefetcher blobs, Change change) {
+        byte[] oldContents = change.oldBlobId == null ? new byte[0] : blobs.take(change.oldBlobId).getContents();
+        byte[] newContents = change.newBlobId == null ? new byte[0] : blobs.take(change.newBlobId).getContents();
+        return new Contents(oldContents, newContents);
+    }
+
+    private static int scale(int count, int largest) {
+        return count == 0 ? 0 : Math.max(1, (int) Math.round((double) count * STAT_WIDTH / largest));
+    }
+
+    private static String plural(long n, String noun) {
+        return n + " " + noun + (n == 1 ? "" : "s");
+    }
+}
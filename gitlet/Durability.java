@@ -0,0 +1,155 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/** Crash-safe writes of objects, the index and refs.
+ *
+ *  Each file is written in full to .gitlet/tmp and then renamed over its
+ *  destination, so a crash leaves either the old or the new file, never a
+ *  torn one.  When the data reaches the disk depends on the mode, kept in
+ *  .gitlet/info/durability:
+ *  <ul>
+ *      <li>none: never fsynced; a crash of the machine (not just the
+ *      process) may lose recent commands.</li>
+ *      <li>batched (the default): files written so far are fsynced together,
+ *      along with their directories, before any ref is updated and when the
+ *      command ends.  A ref therefore never reaches the disk before the
+ *      objects it points to.</li>
+ *      <li>strict: every file and its directory are fsynced as written.</li>
+ *  </ul>
+ *  Working-directory files and derived data that can be rebuilt (the commit
+ *  graph, the bitmap index) are written directly, as before.
+ *
+ *  Each Repository has its own instance; writes happen under the
+ *  repository's write lock, which flushes when it is released.
+ *  @author Rogelio Camargo
+ */
+class Durability {
+
+    enum Mode { NONE, BATCHED, STRICT }
+
+    /** The .gitlet directory of the repository. */
+    private final File gitletDir;
+    private final File modeFile;
+    /** The mode of the repository, or null if not yet read. */
+    private Mode mode;
+    /** Files and directories written in batched mode and not yet fsynced. */
+    private final Set<Path> pending = new LinkedHashSet<>();
+
+    /** Writes files of the repository whose .gitlet directory is GITLETDIR. */
+    Durability(File gitletDir) {
+        this.gitletDir = gitletDir;
+        this.modeFile = join(gitletDir, "info", "durability");
+    }
+
+    /** Returns the durability mode. */
+    synchronized Mode mode() {
+        if (mode == null) {
+            mode = modeFile.isFile() ? parse(readContentsAsString(modeFile).strip()) : Mode.BATCHED;
+            if (mode == null) {
+                mode = Mode.BATCHED;
+            }
+        }
+        return mode;
+    }
+
+    /** Returns the mode named NAME (none, batched or strict), or null. */
+    static Mode parse(String name) {
+        for (Mode candidate: Mode.values()) {
+            if (candidate.name().toLowerCase(Locale.ROOT).equals(name)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /** Makes NEWMODE the durability mode. */
+    synchronized void setMode(Mode newMode) {
+        modeFile.getParentFile().mkdirs();
+        writeContents(modeFile, newMode.name().toLowerCase(Locale.ROOT) + "\n");
+        flush();
+        mode = newMode;
+    }
+
+    /** Replaces FILE, in the .gitlet directory, with CONTENTS.  The
+     *  temporary file is made in .gitlet/tmp, so the final rename never
+     *  crosses file systems. */
+    synchronized void write(File file, byte[] contents) {
+        long start = Trace.begin();
+        File tempDirectory = join(gitletDir, "tmp");
+        tempDirectory.mkdir();
+        Path temp = join(tempDirectory, file.getName() + "-" + System.nanoTime()).toPath();
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(contents);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (mode() == Mode.STRICT) {
+                    channel.force(true);
+                    Trace.count(Trace.FSYNCS, 1);
+                }
+            }
+            Files.move(temp, file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            temp.toFile().delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.count(Trace.BYTES_WRITTEN, contents.length);
+        Trace.count(Trace.FILES_WRITTEN, 1);
+        Path directory = file.getAbsoluteFile().getParentFile().toPath();
+        if (mode() == Mode.STRICT) {
+            sync(directory);
+        } else if (mode() == Mode.BATCHED) {
+            pending.add(file.getAbsoluteFile().toPath());
+            pending.add(directory);
+        }
+        Trace.end("file.write", start);
+    }
+
+    /** Makes data just appended to FILE as durable as the mode asks.  FILE
+     *  is replaced by no rename, so only FILE itself is synced. */
+    synchronized void appended(File file) {
+        if (mode() == Mode.STRICT) {
+            sync(file.getAbsoluteFile().toPath());
+        } else if (mode() == Mode.BATCHED) {
+            pending.add(file.getAbsoluteFile().toPath());
+        }
+    }
+
+    /** Fsyncs every file written in batched mode since the last flush, and
+     *  the directories they were renamed into. */
+    synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long start = Trace.begin();
+        for (Path path: pending) {
+            sync(path);
+        }
+        pending.clear();
+        Trace.end("durability.flush", start);
+    }
+
+    private static void sync(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+            Trace.count(Trace.FSYNCS, 1);
+        } catch (IOException excp) {
+            // some platforms cannot open or fsync a directory; the rename is still atomic
+        }
+    }
+}
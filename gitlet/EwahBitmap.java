@@ -0,0 +1,335 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.LongBinaryOperator;
+
+/** An immutable bitmap compressed with EWAH (Enhanced Word-Aligned Hybrid)
+ *  encoding, as used by git's reachability bitmaps.  The bitmap is a sequence
+ *  of 64-bit words, each a marker word followed by literal words.  A marker
+ *  word stores a run bit (bit 0), a run length (bits 1-32) counting clean
+ *  words that are all zeros or all ones, and the number of literal words that
+ *  follow the run (bits 33-63).  Logical operations work on runs directly, so
+ *  their cost is proportional to the compressed sizes.
+ *  @author Rogelio Camargo
+ */
+final class EwahBitmap {
+
+    private static final long MAX_RUN = (1L << 32) - 1;
+    private static final long MAX_LITERALS = (1L << 31) - 1;
+
+    static final EwahBitmap EMPTY = new Builder().build();
+
+    private final long[] words;
+    private final int size;
+
+    private EwahBitmap(long[] words, int size) {
+        this.words = words;
+        this.size = size;
+    }
+
+    /** Returns a bitmap with exactly the bits in SORTEDBITS set, which must be
+     *  in increasing order. */
+    static EwahBitmap of(int... sortedBits) {
+        Builder builder = new Builder();
+        for (int bit: sortedBits) {
+            builder.set(bit);
+        }
+        return builder.build();
+    }
+
+    boolean get(int bit) {
+        int wordIndex = bit >>> 6;
+        Cursor cursor = new Cursor(this);
+        int position = 0;
+        while (cursor.load()) {
+            if (cursor.runLeft > 0) {
+                if (wordIndex < position + cursor.runLeft) {
+                    return cursor.runBit;
+                }
+                position += cursor.runLeft;
+                cursor.runLeft = 0;
+            } else {
+                if (wordIndex < position + cursor.literalsLeft) {
+                    return (words[cursor.literalPosition + wordIndex - position] & (1L << (bit & 63))) != 0;
+                }
+                position += cursor.literalsLeft;
+                cursor.literalPosition += cursor.literalsLeft;
+                cursor.literalsLeft = 0;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the number of set bits. */
+    int cardinality() {
+        long count = 0;
+        int i = 0;
+        while (i < size) {
+            long marker = words[i];
+            if ((marker & 1) != 0) {
+                count += 64 * runLength(marker);
+            }
+            int literals = literalCount(marker);
+            for (int j = 1; j <= literals; j += 1) {
+                count += Long.bitCount(words[i + j]);
+            }
+            i += 1 + literals;
+        }
+        return (int) count;
+    }
+
+    /** Calls ACTION on each set bit, in increasing order. */
+    void forEach(IntConsumer action) {
+        int base = 0;
+        int i = 0;
+        while (i < size) {
+            long marker = words[i];
+            long run = runLength(marker);
+            if ((marker & 1) != 0) {
+                for (long b = 0; b < 64 * run; b += 1) {
+                    action.accept(base + (int) b);
+                }
+            }
+            base += (int) (64 * run);
+            int literals = literalCount(marker);
+            for (int j = 1; j <= literals; j += 1) {
+                long word = words[i + j];
+                while (word != 0) {
+                    action.accept(base + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+                base += 64;
+            }
+            i += 1 + literals;
+        }
+    }
+
+    EwahBitmap or(EwahBitmap other) {
+        return combine(this, other, (a, b) -> a | b);
+    }
+
+    EwahBitmap and(EwahBitmap other) {
+        return combine(this, other, (a, b) -> a & b);
+    }
+
+    EwahBitmap andNot(EwahBitmap other) {
+        return combine(this, other, (a, b) -> a & ~b);
+    }
+
+    /** Number of 64-bit words in the compressed form. */
+    int compressedWords() {
+        return size;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i += 1) {
+            out.writeLong(words[i]);
+        }
+    }
+
+    static EwahBitmap read(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        long[] words = new long[size];
+        for (int i = 0; i < size; i += 1) {
+            words[i] = in.readLong();
+        }
+        return new EwahBitmap(words, size);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof EwahBitmap)) {
+            return false;
+        }
+        EwahBitmap other = (EwahBitmap) obj;
+        return size == other.size && Arrays.equals(words, 0, size, other.words, 0, other.size);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(Arrays.copyOf(words, size));
+    }
+
+    private static long runLength(long marker) {
+        return (marker >>> 1) & MAX_RUN;
+    }
+
+    private static int literalCount(long marker) {
+        return (int) (marker >>> 33);
+    }
+
+    /** Applies OP word by word to A and B, treating the shorter bitmap as
+     *  padded with zeros.  Pairs of runs are combined without expanding them. */
+    private static EwahBitmap combine(EwahBitmap a, EwahBitmap b, LongBinaryOperator op) {
+        Builder result = new Builder();
+        Cursor x = new Cursor(a);
+        Cursor y = new Cursor(b);
+        boolean xLive = x.load();
+        boolean yLive = y.load();
+        while (xLive || yLive) {
+            if (xLive && yLive && x.runLeft > 0 && y.runLeft > 0) {
+                long n = Math.min(x.runLeft, y.runLeft);
+                long word = op.applyAsLong(x.runBit ? -1L : 0L, y.runBit ? -1L : 0L);
+                result.addRun(word != 0, n);
+                x.runLeft -= n;
+                y.runLeft -= n;
+            } else if (xLive && !yLive && x.runLeft > 0) {
+                long word = op.applyAsLong(x.runBit ? -1L : 0L, 0L);
+                result.addRun(word != 0, x.runLeft);
+                x.runLeft = 0;
+            } else if (yLive && !xLive && y.runLeft > 0) {
+                long word = op.applyAsLong(0L, y.runBit ? -1L : 0L);
+                result.addRun(word != 0, y.runLeft);
+                y.runLeft = 0;
+            } else {
+                long xWord = xLive ? x.next() : 0L;
+                long yWord = yLive ? y.next() : 0L;
+                result.addWord(op.applyAsLong(xWord, yWord));
+            }
+            xLive = x.load();
+            yLive = y.load();
+        }
+        return result.build();
+    }
+
+    /** Walks the words of a bitmap, one run or literal at a time. */
+    private static final class Cursor {
+        private final EwahBitmap bitmap;
+        private int markerPosition = -1;
+        boolean runBit;
+        long runLeft;
+        int literalsLeft;
+        int literalPosition;
+
+        Cursor(EwahBitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+
+        /** Moves to the next marker word if the current one is used up.
+         *  Returns false at the end of the bitmap. */
+        boolean load() {
+            while (runLeft == 0 && literalsLeft == 0) {
+                int next = markerPosition < 0 ? 0 : literalPosition;
+                if (next >= bitmap.size) {
+                    return false;
+                }
+                long marker = bitmap.words[next];
+                markerPosition = next;
+                runBit = (marker & 1) != 0;
+                runLeft = runLength(marker);
+                literalsLeft = literalCount(marker);
+                literalPosition = next + 1;
+            }
+            return true;
+        }
+
+        /** Returns the next uncompressed word.  Requires a loaded cursor. */
+        long next() {
+            if (runLeft > 0) {
+                runLeft -= 1;
+                return runBit ? -1L : 0L;
+            }
+            literalsLeft -= 1;
+            return bitmap.words[literalPosition++];
+        }
+    }
+
+    /** Appends words or bits in increasing order. */
+    static final class Builder {
+        private long[] words = new long[4];
+        private int size;
+        /** Index of the current marker word. */
+        private int marker = -1;
+        /** Uncompressed word holding the bits being set, and its index. */
+        private long pendingWord;
+        private long pendingIndex = 0;
+
+        /** Sets BIT, which must be at least every bit already set. */
+        void set(int bit) {
+            long wordIndex = bit >>> 6;
+            if (wordIndex < pendingIndex) {
+                throw new IllegalArgumentException("bits must be set in increasing order");
+            }
+            if (wordIndex > pendingIndex) {
+                flushPending();
+                addRun(false, wordIndex - pendingIndex);
+                pendingIndex = wordIndex;
+            }
+            pendingWord |= 1L << (bit & 63);
+        }
+
+        /** Appends one uncompressed word. */
+        void addWord(long word) {
+            flushPending();
+            appendWord(word);
+            pendingIndex += 1;
+        }
+
+        /** Appends LENGTH words that are all ones if BIT, and all zeros otherwise. */
+        void addRun(boolean bit, long length) {
+            flushPending();
+            appendRun(bit, length);
+            pendingIndex += length;
+        }
+
+        EwahBitmap build() {
+            flushPending();
+            return new EwahBitmap(words, size);
+        }
+
+        private void flushPending() {
+            if (pendingWord != 0) {
+                appendWord(pendingWord);
+                pendingWord = 0;
+                pendingIndex += 1;
+            }
+        }
+
+        private void appendWord(long word) {
+            if (word == 0 || word == -1L) {
+                appendRun(word != 0, 1);
+                return;
+            }
+            if (marker < 0 || literalCount(words[marker]) == MAX_LITERALS) {
+                newMarker(false);
+            }
+            words[marker] += 1L << 33;
+            push(word);
+        }
+
+        private void appendRun(boolean bit, long length) {
+            while (length > 0) {
+                long current = marker < 0 ? 0 : words[marker];
+                boolean extendable = marker >= 0 && literalCount(current) == 0
+                        && (runLength(current) == 0 || ((current & 1) != 0) == bit)
+                        && runLength(current) < MAX_RUN;
+                if (!extendable) {
+                    newMarker(bit);
+                    current = words[marker];
+                }
+                long room = MAX_RUN - runLength(current);
+                long n = Math.min(room, length);
+                long run = runLength(current) + n;
+                words[marker] = (current & ~(MAX_RUN << 1) & ~1L) | (run << 1) | (bit ? 1L : 0L);
+                length -= n;
+            }
+        }
+
+        private void newMarker(boolean bit) {
+            marker = size;
+            push(bit ? 1L : 0L);
+        }
+
+        private void push(long word) {
+            if (size == words.length) {
+                words = Arrays.copyOf(words, 2 * size);
+            }
+            words[size++] = word;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/** Reads a stream of commits and writes their objects straight to a
+ *  repository's object database, for importing long histories in one
+ *  process.  The stream is a sequence of commands:
+ *  <pre>
+ *      commit [branch]
+ *      mark :[number]              (optional)
+ *      time [ms since the epoch]   (optional; the time of import otherwise)
+ *      data [length]
+ *      [message: length bytes]
+ *      from [commit]               (optional; the branch's head otherwise)
+ *      merge [commit]              (optional)
+ *      M [path]
+ *      data [length]
+ *      [contents: length bytes]
+ *      D [path]
+ *
+ *      reset [branch]
+ *      from [commit]
+ *
+ *      done                        (optional)
+ *  </pre>
+ *  with any number of M (modify) and D (delete) lines per commit.  A commit
+ *  starts from the files of its first parent; a commit on a new branch with
+ *  no from line starts from the initial commit.  [commit] is a :mark, a
+ *  commit id or a branch name.  A newline after the bytes of a data block is
+ *  optional, and blank lines between commands are ignored.
+ *
+ *  Neither the working directory nor the index is read or written, and
+ *  branches are only updated once the whole stream has been read, so a
+ *  malformed stream changes no branch.  In a packed repository every object
+ *  is appended to the one pack file; commit-graph records are written
+ *  through one open stream.
+ *  @author Rogelio Camargo
+ */
+class FastImport {
+
+    private final ObjectDatabase objects;
+    private final File gitletDir;
+    private final InputStream in;
+    private int lineNumber;
+    /** A line read but not yet consumed, or null. */
+    private String pending;
+
+    /** Commit ids by mark. */
+    private final Map<String, ObjectId> marks = new HashMap<>();
+    /** Branch heads set by the stream, in the order first set. */
+    private final Map<String, ObjectId> branches = new LinkedHashMap<>();
+    /** The commit last written, which is most often the next one's parent. */
+    private Commit previous;
+    private int commitsWritten;
+    private int blobsWritten;
+
+    /** Imports the stream IN into the repository GITLETDIR, whose objects
+     *  are OBJECTS. */
+    FastImport(ObjectDatabase objects, File gitletDir, InputStream in) {
+        this.objects = objects;
+        this.gitletDir = gitletDir;
+        this.in = new BufferedInputStream(in, 1 << 16);
+    }
+
+    /** Imports every command of the stream, appending commit-graph records to
+     *  GRAPHFILE.  Throws GitletException if the stream is malformed. */
+    void run(File graphFile) {
+        long start = Trace.begin();
+        try (CommitGraph.Appender graph = new CommitGraph.Appender(graphFile)) {
+            for (String line = nextLine(); line != null; line = nextLine()) {
+                if (line.isEmpty()) {
+                    continue;
+                } else if (line.startsWith("commit ")) {
+                    importCommit(line.substring("commit ".length()), graph);
+                } else if (line.startsWith("reset ")) {
+                    String branch = line.substring("reset ".length());
+                    String from = nextLine();
+                    if (from == null || !from.startsWith("from ")) {
+                        throw malformed("expected from");
+                    }
+                    branches.put(branch, resolve(from.substring("from ".length())));
+                } else if (line.equals("done")) {
+                    break;
+                } else {
+                    throw malformed("unknown command");
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.end("import.stream", start);
+    }
+
+    /** Returns the branch heads the stream set. */
+    Map<String, ObjectId> branches() {
+        return branches;
+    }
+
+    int commitsWritten() {
+        return commitsWritten;
+    }
+
+    int blobsWritten() {
+        return blobsWritten;
+    }
+
+    private void importCommit(String branch, CommitGraph.Appender graph) throws IOException {
+        String mark = null;
+        Date timestamp = null;
+        String message = null;
+        List<ObjectId> parents = new ArrayList<>();
+        HashMap<String, ObjectId> trackedFiles = null;
+        Set<String> changedPaths = new HashSet<>();
+        for (String line = nextLine(); line != null; line = nextLine()) {
+            if (line.startsWith("mark ")) {
+                mark = line.substring("mark ".length());
+            } else if (line.startsWith("time ")) {
+                try {
+                    timestamp = new Date(Long.parseLong(line.substring("time ".length())));
+                } catch (NumberFormatException excp) {
+                    throw malformed("bad time");
+                }
+            } else if (line.startsWith("data ") && message == null) {
+                message = new String(readData(line), StandardCharsets.UTF_8);
+            } else if (line.startsWith("from ") && parents.isEmpty()) {
+                parents.add(resolve(line.substring("from ".length())));
+            } else if (line.startsWith("merge ") && parents.size() == 1) {
+                parents.add(resolve(line.substring("merge ".length())));
+            } else if (line.startsWith("M ") || line.startsWith("D ")) {
+                if (trackedFiles == null) {
+                    trackedFiles = startingFiles(branch, parents);
+                }
+                String path = line.substring(2);
+                ObjectId blobId = null;
+                if (line.startsWith("M ")) {
+                    String data = nextLine();
+                    if (data == null || !data.startsWith("data ")) {
+                        throw malformed("expected data");
+                    }
+                    blobId = writeBlob(path, readData(data));
+                }
+                ObjectId oldBlobId = blobId == null ? trackedFiles.remove(path) : trackedFiles.put(path, blobId);
+                if (!Objects.equals(oldBlobId, blobId)) {
+                    changedPaths.add(path);
+                }
+            } else {
+                pending = line;
+                break;
+            }
+        }
+        if (message == null) {
+            throw malformed("commit without data");
+        }
+        if (trackedFiles == null) {
+            trackedFiles = startingFiles(branch, parents);
+        }
+        Commit commit = new Commit(message, parents, trackedFiles, timestamp == null ? new Date() : timestamp);
+        commit.serialize(objects);
+        graph.append(commit, changedPaths);
+        commitsWritten += 1;
+        previous = commit;
+        branches.put(branch, commit.getId());
+        if (mark != null) {
+            marks.put(mark, commit.getId());
+        }
+    }
+
+    /** Returns a copy of the files of the first of PARENTS, adding the head
+     *  of BRANCH (or the initial commit) to PARENTS if it is empty. */
+    private HashMap<String, ObjectId> startingFiles(String branch, List<ObjectId> parents) {
+        if (parents.isEmpty()) {
+            ObjectId head = branchHead(branch);
+            parents.add(head != null ? head : new Commit().getId());
+        }
+        ObjectId parentId = parents.get(0);
+        Commit parent = previous != null && previous.getId().equals(parentId) ? previous
+                : Commit.deserialize(objects, parentId);
+        return new HashMap<>(parent.getTrackedFiles());
+    }
+
+    private ObjectId writeBlob(String path, byte[] contents) {
+        Blob blob = new Blob(path, contents);
+        if (!objects.exists(Pack.BLOB, blob.getId())) {
+            blob.serialize(objects);
+            blobsWritten += 1;
+        }
+        return blob.getId();
+    }
+
+    /** Returns the commit REF names: a mark, a commit id or a branch. */
+    private ObjectId resolve(String ref) {
+        ObjectId id;
+        if (ref.startsWith(":")) {
+            id = marks.get(ref);
+        } else if (ObjectId.isId(ref) && Commit.exists(objects, ObjectId.fromHex(ref))) {
+            id = ObjectId.fromHex(ref);
+        } else {
+            id = branchHead(ref);
+        }
+        if (id == null) {
+            throw malformed("unknown commit " + ref);
+        }
+        return id;
+    }
+
+    /** Returns the head of BRANCH, as set by the stream or else as stored,
+     *  or null if there is no such branch. */
+    private ObjectId branchHead(String branch) {
+        ObjectId head = branches.get(branch);
+        if (head == null) {
+            head = Transport.readBranch(gitletDir, branch);
+        }
+        return head;
+    }
+
+    /** Reads the bytes of the data block whose header line is HEADER. */
+    private byte[] readData(String header) throws IOException {
+        int length;
+        try {
+            length = Integer.parseInt(header.substring("data ".length()));
+        } catch (NumberFormatException excp) {
+            throw malformed("bad data length");
+        }
+        if (length < 0) {
+            throw malformed("bad data length");
+        }
+        byte[] data = in.readNBytes(length);
+        if (data.length < length) {
+            throw malformed("data cut short");
+        }
+        for (int i = 0; i < data.length; i += 1) {
+            if (data[i] == '\n') {
+                lineNumber += 1;
+            }
+        }
+        in.mark(1);
+        if (in.read() != '\n') {
+            in.reset();
+        } else {
+            lineNumber += 1;
+        }
+        return data;
+    }
+
+    /** Returns the next line, without its newline, or null at the end. */
+    private String nextLine() throws IOException {
+        if (pending != null) {
+            String line = pending;
+            pending = null;
+            return line;
+        }
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int c = in.read();
+        if (c < 0) {
+            return null;
+        }
+        while (c >= 0 && c != '\n') {
+            line.write(c);
+            c = in.read();
+        }
+        lineNumber += 1;
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    private GitletException malformed(String problem) {
+        return error("Malformed import stream at line %d: %s.", lineNumber, problem);
+    }
+}
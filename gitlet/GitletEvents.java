@@ -0,0 +1,129 @@
+package gitlet;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Java Flight Recorder events for the object store and working tree.  They
+ *  cost next to nothing unless a recording is running, e.g.
+ *      java -XX:StartFlightRecording=filename=gitlet.jfr gitlet.Main merge other
+ *      jfr print --categories Gitlet gitlet.jfr
+ *
+ *  Events are only created when enabled() says so: loading the first Event
+ *  subclass sets up much of JFR, which otherwise doubles the startup time of
+ *  a short command such as status.
+ *  @author Rogelio Camargo
+ */
+class GitletEvents {
+
+    /** Returns true iff the flight recorder has been started, so events may
+     *  be recorded. */
+    static boolean enabled() {
+        return FlightRecorder.isInitialized();
+    }
+
+    @Name("gitlet.ObjectRead")
+    @Label("Object Read")
+    @Category({"Gitlet", "Object Store"})
+    @Description("A blob or commit read and deserialized from the object store")
+    @StackTrace(false)
+    static final class ObjectRead extends Event {
+        @Label("Object Id")
+        String id;
+
+        @Label("Type")
+        String type;
+
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+
+    @Name("gitlet.ObjectWrite")
+    @Label("Object Write")
+    @Category({"Gitlet", "Object Store"})
+    @Description("A blob or commit serialized into the object store")
+    @StackTrace(false)
+    static final class ObjectWrite extends Event {
+        @Label("Object Id")
+        String id;
+
+        @Label("Type")
+        String type;
+
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+
+    @Name("gitlet.RefUpdate")
+    @Label("Ref Update")
+    @Category({"Gitlet", "Refs"})
+    @Description("A branch or HEAD written")
+    static final class RefUpdate extends Event {
+        @Label("Ref")
+        String ref;
+
+        @Label("New Value")
+        String value;
+    }
+
+    @Name("gitlet.IndexLoad")
+    @Label("Index Load")
+    @Category({"Gitlet", "Index"})
+    @StackTrace(false)
+    static final class IndexLoad extends Event {
+        @Label("Staged For Addition")
+        int added;
+
+        @Label("Staged For Removal")
+        int removed;
+    }
+
+    @Name("gitlet.IndexSave")
+    @Label("Index Save")
+    @Category({"Gitlet", "Index"})
+    @StackTrace(false)
+    static final class IndexSave extends Event {
+        @Label("Staged For Addition")
+        int added;
+
+        @Label("Staged For Removal")
+        int removed;
+    }
+
+    @Name("gitlet.MergeBase")
+    @Label("Merge Base Search")
+    @Category({"Gitlet", "History"})
+    @Description("A split point search between two commits")
+    static final class MergeBase extends Event {
+        @Label("Ours")
+        String ours;
+
+        @Label("Theirs")
+        String theirs;
+
+        @Label("Merge Base")
+        String base;
+
+        @Label("Commits Visited")
+        int commitsVisited;
+    }
+
+    @Name("gitlet.WorkingTreeUpdate")
+    @Label("Working Tree Update")
+    @Category({"Gitlet", "Working Tree"})
+    @Description("Files written to the working directory by a checkout, reset or merge")
+    static final class WorkingTreeUpdate extends Event {
+        @Label("Target")
+        String target;
+
+        @Label("Files Written")
+        int filesWritten;
+    }
+}
@@ -0,0 +1,222 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** Content of large files, kept outside the blob store.
+ *
+ *  Files matching the PatternFile .gitlet/info/large-files are committed as
+ *  pointer blobs, whose contents are
+ *  <pre>
+ *      gitlet-large-file 1
+ *      id [SHA-1 of the file's contents]
+ *      size [length of the file in bytes]
+ *  </pre>
+ *  and the contents themselves are kept once per id in .gitlet/large.  They
+ *  are streamed in and out of that store, never held in memory whole.
+ *
+ *  Fetching and cloning only bring over the pointers.  Contents are fetched
+ *  when a checkout first writes them: from the store of an alternate (read in
+ *  place), or else from the store of a remote, copied into the local store so
+ *  each one is downloaded only once.  Pushing sends the contents the pushed
+ *  pointers refer to, since the remote has nowhere else to get them.
+ *  @author Rogelio Camargo
+ */
+class LargeFiles {
+
+    private static final byte[] HEADER = "gitlet-large-file 1\n".getBytes(StandardCharsets.UTF_8);
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final File gitletDir;
+    private final File workingDir;
+    private final File storeDir;
+    private final PatternFile patternFile;
+
+    /** The large files of the repository GITLETDIR, whose working directory
+     *  is WORKINGDIR. */
+    LargeFiles(File gitletDir, File workingDir) {
+        this.gitletDir = gitletDir;
+        this.workingDir = workingDir;
+        this.storeDir = join(gitletDir, "large");
+        this.patternFile = new PatternFile(join(gitletDir, "info", "large-files"));
+    }
+
+    /** Returns true iff FILENAME is to be stored as a large file. */
+    boolean isLarge(String filename) {
+        return patternFile.matches(filename);
+    }
+
+    /** Returns the large-file patterns, in file order. */
+    List<String> patterns() {
+        return patternFile.patterns();
+    }
+
+    /** Replaces the large-file patterns with PATTERNS.  Files already
+     *  committed keep the form they were committed in. */
+    void set(List<String> patterns) {
+        patternFile.set(patterns);
+    }
+
+    /** Returns true iff the blob contents CONTENTS are a pointer. */
+    static boolean isPointer(byte[] contents) {
+        if (contents.length < HEADER.length) {
+            return false;
+        }
+        for (int i = 0; i < HEADER.length; i += 1) {
+            if (contents[i] != HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the pointer to the contents of FILE, reading it once but
+     *  storing nothing. */
+    static byte[] pointerFor(File file) {
+        long start = Trace.begin();
+        MessageDigest md = sha1Digest();
+        long size = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                md.update(buffer, 0, n);
+                size += n;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.count(Trace.FILES_READ, 1);
+        Trace.count(Trace.BYTES_READ, size);
+        Trace.count(Trace.BYTES_HASHED, size);
+        Trace.end("large.hash", start);
+        String pointer = new String(HEADER, StandardCharsets.UTF_8)
+                + "id " + ObjectId.fromRaw(md.digest()) + "\nsize " + size + "\n";
+        return pointer.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Adds the contents of FILE to the store, unless identical contents are
+     *  there already, and returns the pointer to them. */
+    byte[] store(File file) {
+        byte[] pointer = pointerFor(file);
+        File stored = join(storeDir, idOf(pointer).toString());
+        Trace.count(Trace.FILES_STATED, 1);
+        if (!stored.exists()) {
+            long start = Trace.begin();
+            install(file, stored);
+            Trace.end("large.store", start);
+        }
+        return pointer;
+    }
+
+    /** Writes the contents POINTER refers to into FILE, fetching them into
+     *  the local store first if only a remote has them.  Throws
+     *  GitletException if none does. */
+    void materialize(byte[] pointer, File file) {
+        File contents = contentsOf(pointer);
+        long start = Trace.begin();
+        copy(contents, file);
+        Trace.end("large.write", start);
+    }
+
+    /** Returns the stored file holding the contents POINTER refers to,
+     *  fetching it into the local store first if only a remote has it.
+     *  Throws GitletException if none does. */
+    File contentsOf(byte[] pointer) {
+        ObjectId id = idOf(pointer);
+        File contents = find(gitletDir, id);
+        if (contents == null) {
+            contents = fetch(id);
+        }
+        if (contents == null) {
+            throw error("Large file contents %s not found.", id);
+        }
+        return contents;
+    }
+
+    /** Copies the contents with the given ID from the repository SOURCE to
+     *  the repository TARGET, both .gitlet directories, unless TARGET has
+     *  them already or SOURCE never fetched them. */
+    static void send(File source, File target, ObjectId id) {
+        File contents = find(source, id);
+        if (contents != null && find(target, id) == null) {
+            install(contents, join(target, "large", id.toString()));
+        }
+    }
+
+    /** Returns the content id in the pointer POINTER. */
+    static ObjectId idOf(byte[] pointer) {
+        String text = new String(pointer, StandardCharsets.UTF_8);
+        int start = text.indexOf("\nid ") + "\nid ".length();
+        return ObjectId.fromHex(text.substring(start, text.indexOf('\n', start)));
+    }
+
+    /** Returns the file holding the contents with the given ID in the store
+     *  of the repository GITLETDIR or of one of its alternates, or null. */
+    private static File find(File gitletDir, ObjectId id) {
+        File local = join(gitletDir, "large", id.toString());
+        Trace.count(Trace.FILES_STATED, 1);
+        if (local.exists()) {
+            return local;
+        }
+        for (File alternate: Alternates.of(join(gitletDir, "objects"))) {
+            File file = join(alternate.getParentFile(), "large", id.toString());
+            Trace.count(Trace.FILES_STATED, 1);
+            if (file.exists()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /** Copies the contents with the given ID from the first remote that has
+     *  them into the local store, returning the stored file, or null. */
+    private File fetch(ObjectId id) {
+        File remotesDir = join(gitletDir, "remotes");
+        List<String> remoteNames = plainFilenamesIn(remotesDir);
+        for (String remoteName: remoteNames == null ? List.<String>of() : remoteNames) {
+            File remoteDirectory = new File(readContentsAsString(join(remotesDir, remoteName)));
+            if (!remoteDirectory.isAbsolute()) {
+                remoteDirectory = new File(workingDir, remoteDirectory.getPath());
+            }
+            File contents = find(remoteDirectory, id);
+            if (contents != null) {
+                long start = Trace.begin();
+                File stored = join(storeDir, id.toString());
+                install(contents, stored);
+                Trace.end("large.fetch", start);
+                return stored;
+            }
+        }
+        return null;
+    }
+
+    /** Copies FROM to the store file TO through a temporary file, so that a
+     *  store file, once present, is always complete. */
+    private static void install(File from, File to) {
+        to.getParentFile().mkdirs();
+        File temp = join(to.getParentFile(), "incoming-" + System.nanoTime());
+        copy(from, temp);
+        if (!temp.renameTo(to)) {
+            temp.delete();
+        }
+    }
+
+    private static void copy(File from, File to) {
+        try {
+            Files.copy(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.count(Trace.FILES_WRITTEN, 1);
+        Trace.count(Trace.BYTES_WRITTEN, to.length());
+    }
+}
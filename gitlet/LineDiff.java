@@ -0,0 +1,151 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Finds the lines two files have in common, with Myers' O(ND) difference
+ *  algorithm in its linear-space form: each step finds the middle snake of
+ *  the shortest edit script and recurses on the halves around it.  Lines
+ *  are compared as small integers, each distinct line being numbered once,
+ *  and a common prefix and suffix are matched before any search.
+ *  @author Rogelio Camargo
+ */
+class LineDiff {
+
+    private final int[] a;
+    private final int[] b;
+    /** Matching blocks found so far, as {aStart, bStart, length}. */
+    private final List<int[]> blocks = new ArrayList<>();
+
+    private LineDiff(int[] a, int[] b) {
+        this.a = a;
+        this.b = b;
+    }
+
+    /** Returns the lines of CONTENTS, without their newlines.  A final line
+     *  without a newline counts as a line. */
+    static List<String> lines(byte[] contents) {
+        List<String> lines = new ArrayList<>();
+        int lineStart = 0;
+        for (int i = 0; i < contents.length; i += 1) {
+            if (contents[i] == '\n') {
+                lines.add(new String(contents, lineStart, i - lineStart, StandardCharsets.UTF_8));
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < contents.length) {
+            lines.add(new String(contents, lineStart, contents.length - lineStart, StandardCharsets.UTF_8));
+        }
+        return lines;
+    }
+
+    /** Returns the blocks of lines A and B have in common in a longest
+     *  common subsequence, as {start in A, start in B, length}, in order of
+     *  both starts. */
+    static List<int[]> matches(List<String> a, List<String> b) {
+        Map<String, Integer> numbers = new HashMap<>();
+        LineDiff diff = new LineDiff(number(a, numbers), number(b, numbers));
+        diff.compare(0, a.size(), 0, b.size());
+        return diff.blocks;
+    }
+
+    private static int[] number(List<String> lines, Map<String, Integer> numbers) {
+        int[] numbered = new int[lines.size()];
+        for (int i = 0; i < numbered.length; i += 1) {
+            numbered[i] = numbers.computeIfAbsent(lines.get(i), k -> numbers.size());
+        }
+        return numbered;
+    }
+
+    /** Finds the matching blocks of A[ALO..AHI) and B[BLO..BHI). */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        int prefix = 0;
+        while (aLo + prefix < aHi && bLo + prefix < bHi && a[aLo + prefix] == b[bLo + prefix]) {
+            prefix += 1;
+        }
+        match(aLo, bLo, prefix);
+        aLo += prefix;
+        bLo += prefix;
+        int suffix = 0;
+        while (aLo < aHi - suffix && bLo < bHi - suffix && a[aHi - suffix - 1] == b[bHi - suffix - 1]) {
+            suffix += 1;
+        }
+        aHi -= suffix;
+        bHi -= suffix;
+        if (aLo < aHi && bLo < bHi) {
+            int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+            compare(aLo, snake[0], bLo, snake[1]);
+            match(snake[0], snake[1], snake[2] - snake[0]);
+            compare(snake[2], aHi, snake[3], bHi);
+        }
+        match(aHi, bHi, suffix);
+    }
+
+    /** Returns the middle snake of the shortest edit script from A[ALO..AHI)
+     *  to B[BLO..BHI), as {aStart, bStart, aEnd, bEnd}.  Both ranges are
+     *  nonempty and differ in their first and last lines. */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int offset = max + 1;
+        // forward[k] and backward[k]: the furthest x reached on diagonal k from each end
+        int[] forward = new int[2 * max + 3];
+        int[] backward = new int[2 * max + 3];
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])
+                        ? forward[offset + k + 1] : forward[offset + k - 1] + 1;
+                int y = x - k;
+                int x0 = x;
+                int y0 = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[offset + k] = x;
+                int kb = delta - k;
+                if (odd && kb >= -(d - 1) && kb <= d - 1 && x + backward[offset + kb] >= n) {
+                    return new int[] {aLo + x0, bLo + y0, aLo + x, bLo + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1])
+                        ? backward[offset + k + 1] : backward[offset + k - 1] + 1;
+                int y = x - k;
+                int x0 = x;
+                int y0 = y;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[offset + k] = x;
+                int kf = delta - k;
+                if (!odd && kf >= -d && kf <= d && x + forward[offset + kf] >= n) {
+                    return new int[] {aHi - x, bHi - y, aHi - x0, bHi - y0};
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Records that A[ASTART..ASTART+LENGTH) matches B from BSTART. */
+    private void match(int aStart, int bStart, int length) {
+        if (length == 0) {
+            return;
+        }
+        if (!blocks.isEmpty()) {
+            int[] last = blocks.get(blocks.size() - 1);
+            if (last[0] + last[2] == aStart && last[1] + last[2] == bStart) {
+                last[2] += length;
+                return;
+            }
+        }
+        blocks.add(new int[] {aStart, bStart, length});
+    }
+}
@@ -0,0 +1,67 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** An ObjectDatabase keeping each object in its own file,
+ *  [objects directory]/blobs/[id] or [objects directory]/commits/[id].
+ *  Objects missing locally are looked up in the directory's Alternates.
+ *  Writes replace files atomically through Durability.
+ *  @author Rogelio Camargo
+ */
+class LooseObjectDatabase implements ObjectDatabase {
+
+    private final File objectsDir;
+    private final Durability durability;
+
+    LooseObjectDatabase(File objectsDir, Durability durability) {
+        this.objectsDir = objectsDir;
+        this.durability = durability;
+    }
+
+    /** Returns the file of the object ID of type TYPE, which may belong to
+     *  an alternate, or the local path where it would be written. */
+    File file(int type, ObjectId id) {
+        return Alternates.locate(objectsDir, ObjectDatabase.kind(type), id);
+    }
+
+    @Override
+    public byte[] read(int type, ObjectId id) {
+        return readContents(file(type, id));
+    }
+
+    @Override
+    public void write(int type, ObjectId id, byte[] contents) {
+        durability.write(join(objectsDir, ObjectDatabase.kind(type), id.toString()), contents);
+    }
+
+    @Override
+    public boolean exists(int type, ObjectId id) {
+        return file(type, id).exists();
+    }
+
+    @Override
+    public long size(int type, ObjectId id) {
+        return file(type, id).length();
+    }
+
+    @Override
+    public void delete(int type, ObjectId id) {
+        // objects borrowed from an alternate are never deleted
+        join(objectsDir, ObjectDatabase.kind(type), id.toString()).delete();
+    }
+
+    @Override
+    public List<ObjectId> ids(int type) {
+        List<ObjectId> ids = new ArrayList<>();
+        for (String name: Alternates.list(objectsDir, ObjectDatabase.kind(type))) {
+            if (ObjectId.isId(name)) {
+                ids.add(ObjectId.fromHex(name));
+            }
+        }
+        return ids;
+    }
+}
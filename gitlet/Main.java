@@ -1,5 +1,17 @@
 package gitlet;
 
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
 import static gitlet.Utils.*;
 
 /** Driver class for Gitlet, a subset of the Git version-control system.
@@ -9,107 +21,403 @@ public class Main {
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND1> <OPERAND2> ... 
+     *  ARGS may also start with --trace, which prints the command's I/O
+     *  counters and phase timings as JSON to stderr.
      */
     public static void main(String[] args) {
+        args = extractTraceFlag(args);
         if (args.length == 0) {
             exit("Please enter a command.");
         }
+        Repository repository = new Repository(new File(System.getProperty("user.dir")));
+        try {
+            run(repository, args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+    }
+
+    /** Runs the command ARGS on REPOSITORY. */
+    private static void run(Repository repository, String[] args) {
         String firstArg = args[0];
 
         switch(firstArg) {
             case "init":
-                validateNumArgs("init", args, 1);
-                Repository.initialize();
+                if (args.length == 2 && args[1].equals("--packed")) {
+                    repository.initialize(true);
+                } else {
+                    validateNumArgs("init", args, 1);
+                    repository.initialize();
+                }
                 break;
             case "add":
                 validateNumArgs("add", args, 2);
-                Repository.checkWorkingDirectory();
+                repository.checkWorkingDirectory();
                 String message = args[1];
                 if (message.isEmpty()) {
                     exit("Please enter a commit message.");
                 }
-                Repository.addFileToStagingArea(args[1]);
+                repository.addFileToStagingArea(args[1]);
                 break;
             case "commit":
                 validateNumArgs("commit", args, 2);
-                Repository.checkWorkingDirectory();
+                repository.checkWorkingDirectory();
                 if (args[1].isEmpty()) {
                     exit("Please enter a commit message.");
                 }
-                Repository.makeNewCommit(args[1]);
+                repository.makeNewCommit(args[1]);
                 break;
             case "rm":
                 validateNumArgs("rm", args, 2);
-                Repository.checkWorkingDirectory();
-                Repository.removeFileFromTracking(args[1]);
+                repository.checkWorkingDirectory();
+                repository.removeFileFromTracking(args[1]);
                 break;
             case "log":
-                validateNumArgs("log", args, 1);
-                Repository.checkWorkingDirectory();
-                Repository.printHeadCommitHistory();
+                repository.checkWorkingDirectory();
+                printLog(repository, args);
+                break;
+            case "commit-graph":
+                validateNumArgs("commit-graph", args, 1);
+                repository.checkWorkingDirectory();
+                repository.writeCommitGraph();
+                break;
+            case "bitmap-index":
+                validateNumArgs("bitmap-index", args, 1);
+                repository.checkWorkingDirectory();
+                repository.writeBitmapIndex();
+                break;
+            case "maintenance":
+                repository.checkWorkingDirectory();
+                if (args.length == 2 && args[1].equals("run")) {
+                    repository.runMaintenance(false);
+                } else if (args.length == 3 && args[1].equals("run") && args[2].equals("--auto")) {
+                    repository.runMaintenance(true);
+                } else if (args.length == 4 && args[1].equals("set")) {
+                    repository.setMaintenance(args[2], args[3]);
+                } else if (args.length == 2 && args[1].equals("status")) {
+                    repository.printMaintenanceStatus();
+                } else {
+                    exit("Incorrect operands.");
+                }
+                break;
+            case "fast-import":
+                validateNumArgs("fast-import", args, 1);
+                repository.checkWorkingDirectory();
+                repository.fastImport(System.in);
+                break;
+            case "archive":
+                repository.checkWorkingDirectory();
+                archive(repository, args);
+                break;
+            case "count-objects":
+                validateNumArgs("count-objects", args, 1);
+                repository.checkWorkingDirectory();
+                repository.printObjectCounts();
                 break;
             case "global-log":
                 validateNumArgs("global-log", args, 1);
-                Repository.checkWorkingDirectory();
-                Repository.printEntireCommitHistory();
+                repository.checkWorkingDirectory();
+                repository.printEntireCommitHistory();
+                break;
+            case "blame":
+                validateNumArgs("blame", args, 2);
+                repository.checkWorkingDirectory();
+                repository.blame(args[1]);
+                break;
+            case "diff":
+                diff(repository, args);
                 break;
             case "find":
                 validateNumArgs("find", args, 2);
-                Repository.checkWorkingDirectory();
-                Repository.printCommitsWithMessage(args[1]);
+                repository.checkWorkingDirectory();
+                repository.printCommitsWithMessage(args[1]);
                 break;
             case "status":
                 validateNumArgs("status", args, 1);
-                Repository.checkWorkingDirectory();
-                Repository.printCurrentStatus();
+                repository.checkWorkingDirectory();
+                repository.printCurrentStatus();
                 break;
             case "checkout":
-                Repository.checkWorkingDirectory();
+                repository.checkWorkingDirectory();
                 if (args.length == 2) {
-                    Repository.checkoutBranch(args[1]);
+                    repository.checkoutBranch(args[1]);
                 }
                 else if (args.length == 3) {
                     if (!args[1].equals("--")) {
                         exit("Incorrect operands.");
                     }
-                    Repository.checkoutFileFromHeadCommit(args[2]);
+                    repository.checkoutFileFromHeadCommit(args[2]);
                 }
                 else if (args.length == 4) {
                     if (!args[2].equals("--")) {
                         exit("Incorrect operands.");
                     }
-                    Repository.checkoutFileFromGivenCommit(args[1], args[3]);
+                    repository.checkoutFileFromGivenCommit(args[1], args[3]);
                 }
                 else {
                     throw new RuntimeException(
                             String.format("Invalid number of arguments for: %s.", "checkout"));
                 }
                 break;
+            case "sparse-checkout":
+                repository.checkWorkingDirectory();
+                if (args.length >= 2 && args[1].equals("set")) {
+                    repository.setSparseCheckout(Arrays.asList(args).subList(2, args.length));
+                } else if (args.length == 2 && args[1].equals("disable")) {
+                    repository.setSparseCheckout(List.of());
+                } else if (args.length == 2 && args[1].equals("list")) {
+                    repository.printSparseCheckout();
+                } else {
+                    exit("Incorrect operands.");
+                }
+                break;
+            case "large-files":
+                repository.checkWorkingDirectory();
+                if (args.length >= 2 && args[1].equals("set")) {
+                    repository.setLargeFiles(Arrays.asList(args).subList(2, args.length));
+                } else if (args.length == 2 && args[1].equals("list")) {
+                    repository.printLargeFiles();
+                } else {
+                    exit("Incorrect operands.");
+                }
+                break;
+            case "durability":
+                repository.checkWorkingDirectory();
+                if (args.length > 2) {
+                    exit("Incorrect operands.");
+                }
+                repository.setDurability(args.length == 2 ? args[1] : null);
+                break;
             case "branch":
                 validateNumArgs("branch", args, 2);
-                Repository.checkWorkingDirectory();
-                Repository.createNewBranch(args[1]);
+                repository.checkWorkingDirectory();
+                repository.createNewBranch(args[1]);
                 break;
             case "rm-branch":
                 validateNumArgs("rm-branch", args, 2);
-                Repository.checkWorkingDirectory();
-                Repository.removeBranch(args[1]);
+                repository.checkWorkingDirectory();
+                repository.removeBranch(args[1]);
                 break;
             case "reset":
                 validateNumArgs("rm-branch", args, 2);
-                Repository.checkWorkingDirectory();
-                Repository.checkoutCommit(args[1]);
+                repository.checkWorkingDirectory();
+                repository.checkoutCommit(args[1]);
                 break;
             case "merge":
-                validateNumArgs("merge", args, 2);
-                Repository.checkWorkingDirectory();
-                Repository.mergeBranchWithCurrentBranch(args[1]);
+                if (args.length == 3) {
+                    int renameThreshold = parseRenameThreshold(args[1]);
+                    repository.checkWorkingDirectory();
+                    repository.mergeBranchWithCurrentBranch(args[2], renameThreshold);
+                } else {
+                    validateNumArgs("merge", args, 2);
+                    repository.checkWorkingDirectory();
+                    repository.mergeBranchWithCurrentBranch(args[1]);
+                }
+                break;
+            case "clone":
+                if (args.length == 3 && (args[1].equals("--shared") || args[1].equals("--hardlink"))) {
+                    repository.cloneRepository(args[2], args[1]);
+                } else {
+                    validateNumArgs("clone", args, 2);
+                    repository.cloneRepository(args[1], null);
+                }
+                break;
+            case "add-remote":
+                validateNumArgs("add-remote", args, 3);
+                repository.checkWorkingDirectory();
+                repository.addRemote(args[1], args[2]);
+                break;
+            case "rm-remote":
+                validateNumArgs("rm-remote", args, 2);
+                repository.checkWorkingDirectory();
+                repository.removeRemote(args[1]);
+                break;
+            case "fetch":
+                validateNumArgs("fetch", args, 3);
+                repository.checkWorkingDirectory();
+                repository.fetch(args[1], args[2]);
+                break;
+            case "push":
+                validateNumArgs("push", args, 3);
+                repository.checkWorkingDirectory();
+                repository.push(args[1], args[2]);
+                break;
+            case "pull":
+                validateNumArgs("pull", args, 3);
+                repository.checkWorkingDirectory();
+                repository.pull(args[1], args[2]);
                 break;
             default:
                 exit("No command with that name exists.");
         }
     }
 
+    /**
+     * Runs archive COMMIT [--format=tar|zip] [--output=FILE], writing to the
+     * standard output unless FILE is given.  The format is tar by default.
+     *
+     * @param repository Repository to archive a commit of
+     * @param args Argument array from command line
+     */
+    private static void archive(Repository repository, String[] args) {
+        if (args.length < 2 || args.length > 4) {
+            exit("Incorrect operands.");
+        }
+        String format = "tar";
+        File output = null;
+        for (int i = 2; i < args.length; i += 1) {
+            if (args[i].startsWith("--format=")) {
+                format = args[i].substring("--format=".length());
+            } else if (args[i].startsWith("--output=") && args[i].length() > "--output=".length()) {
+                output = new File(args[i].substring("--output=".length()));
+            } else {
+                exit("Incorrect operands.");
+            }
+        }
+        if (!format.equals("tar") && !format.equals("zip")) {
+            exit("Incorrect operands.");
+        }
+        repository.archive(args[1], format, output);
+    }
+
+    /**
+     * Runs diff [--name-status | --stat] [--find-renames[=N] | --no-renames]
+     * COMMIT COMMIT, printing a unified diff unless a mode is given.  Renames
+     * are only looked for when asked to, at 50% similarity by default.
+     *
+     * @param repository Repository to compare two commits of
+     * @param args Argument array from command line
+     */
+    private static void diff(Repository repository, String[] args) {
+        String format = "patch";
+        int renameThreshold = 0;
+        List<String> commits = new ArrayList<>();
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].equals("--name-status") || args[i].equals("--stat")) {
+                format = args[i].substring(2);
+            } else if (args[i].equals("--find-renames")) {
+                renameThreshold = RenameDetector.DEFAULT_THRESHOLD;
+            } else if (args[i].startsWith("--")) {
+                renameThreshold = parseRenameThreshold(args[i]);
+            } else {
+                commits.add(args[i]);
+            }
+        }
+        if (commits.size() != 2) {
+            exit("Incorrect operands.");
+        }
+        repository.checkWorkingDirectory();
+        repository.diff(commits.get(0), commits.get(1), format, renameThreshold);
+    }
+
+    /**
+     * Returns the rename similarity threshold, in percent, that OPTION sets:
+     * --find-renames=N for N from 1 to 100, or --no-renames for 0.
+     *
+     * @param option Option from command line
+     */
+    private static int parseRenameThreshold(String option) {
+        if (option.equals("--no-renames")) {
+            return 0;
+        }
+        if (option.matches("--find-renames=[0-9]{1,3}")) {
+            int threshold = Integer.parseInt(option.substring("--find-renames=".length()));
+            if (threshold >= 1 && threshold <= 100) {
+                return threshold;
+            }
+        }
+        exit("Incorrect operands.");
+        return 0;
+    }
+
+    /**
+     * Runs log [-n COUNT] [--since DATE] [--until DATE] [-- PATH], where each
+     * DATE is yyyy-MM-dd, optionally followed by HH:mm or HH:mm:ss, in local
+     * time, and PATH limits the log to commits that changed that file.
+     *
+     * @param repository Repository to print the log of
+     * @param args Argument array from command line
+     */
+    private static void printLog(Repository repository, String[] args) {
+        int limit = Integer.MAX_VALUE;
+        Date since = null;
+        Date until = null;
+        String path = null;
+        int numOptionArgs = args.length;
+        if (args.length >= 3 && args[args.length - 2].equals("--")) {
+            path = args[args.length - 1];
+            numOptionArgs -= 2;
+        }
+        if (numOptionArgs % 2 == 0) {
+            exit("Incorrect operands.");
+        }
+        for (int i = 1; i < numOptionArgs; i += 2) {
+            switch (args[i]) {
+                case "-n":
+                    try {
+                        limit = Integer.parseInt(args[i + 1]);
+                    } catch (NumberFormatException excp) {
+                        exit("Incorrect operands.");
+                    }
+                    if (limit < 0) {
+                        exit("Incorrect operands.");
+                    }
+                    break;
+                case "--since":
+                    since = parseDate(args[i + 1]);
+                    break;
+                case "--until":
+                    until = parseDate(args[i + 1]);
+                    break;
+                default:
+                    exit("Incorrect operands.");
+            }
+        }
+        if (path == null) {
+            repository.printHeadCommitHistory(limit, since, until);
+        } else {
+            repository.printPathHistory(path, limit, since, until);
+        }
+    }
+
+    /** Parses a log date option, exiting if it is malformed. */
+    private static Date parseDate(String date) {
+        DateTimeFormatter format = new DateTimeFormatterBuilder()
+                .appendPattern("yyyy-MM-dd[ HH:mm[:ss]]")
+                .parseDefaulting(ChronoField.HOUR_OF_DAY, 0)
+                .parseDefaulting(ChronoField.MINUTE_OF_HOUR, 0)
+                .parseDefaulting(ChronoField.SECOND_OF_MINUTE, 0)
+                .toFormatter();
+        try {
+            LocalDateTime time = LocalDateTime.parse(date, format);
+            return Date.from(time.atZone(ZoneId.systemDefault()).toInstant());
+        } catch (DateTimeParseException excp) {
+            exit("Incorrect operands.");
+            return null;
+        }
+    }
+
+    /**
+     * Removes the --trace flags before the command name from ARGS, enabling
+     * tracing if there were any.  A --trace after the command name is an
+     * operand, such as a commit message or a filename.
+     *
+     * @param args Argument array from command line
+     * @return the remaining arguments
+     */
+    private static String[] extractTraceFlag(String[] args) {
+        int flags = 0;
+        while (flags < args.length && args[flags].equals("--trace")) {
+            flags += 1;
+        }
+        if (flags == 0) {
+            return args;
+        }
+        String[] remaining = Arrays.copyOfRange(args, flags, args.length);
+        Trace.enable(remaining.length > 0 ? remaining[0] : "");
+        return remaining;
+    }
+
     /**
      * Checks the number of arguments versus the expected number,
      * throws a RuntimeException if they do not match.
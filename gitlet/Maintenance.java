@@ -0,0 +1,208 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static gitlet.Utils.*;
+
+/** Automatic maintenance of the files that speed up history walks: the
+ *  commit graph (with its changed-path filters) and the bitmap index.
+ *
+ *  Each write command adds the objects and commits it wrote to the counts in
+ *  .gitlet/maintenance/pending.  Once either count passes its threshold, the
+ *  command starts "maintenance run --auto" in a separate, low-priority
+ *  process and returns without waiting for it.  That process holds
+ *  .gitlet/maintenance/lock while it runs; no other is started, and no
+ *  other run proceeds, while the lock exists.  Past the objects threshold
+ *  every task runs; past the commits threshold only the bitmap index, which
+ *  each new commit makes stale, is rewritten.
+ *
+ *  Settings are kept in .gitlet/info/maintenance as "key value" lines:
+ *  <ul>
+ *      <li>auto: on (the default) or off, to only count;</li>
+ *      <li>objects: the objects threshold, 1000 by default;</li>
+ *      <li>commits: the commits threshold, 100 by default.</li>
+ *  </ul>
+ *  The counts are a heuristic and are written without durability or
+ *  locking; concurrent commands may lose a few.  The files a run rewrites
+ *  are not so exposed: the commit graph carries over what was appended
+ *  during the run (see CommitGraph), and the bitmap index only ever lags.
+ *  @author Rogelio Camargo
+ */
+class Maintenance {
+
+    static final Map<String, String> DEFAULTS = Map.of("auto", "on", "objects", "1000", "commits", "100");
+    /** A lock older than this (ms) was left by a run that died. */
+    static final long STALE_LOCK_AGE = 60 * 60 * 1000;
+
+    private final File workingDir;
+    private final File configFile;
+    private final File pendingFile;
+    private final File lockFile;
+    private final File logFile;
+
+    /** Maintenance of the repository GITLETDIR, whose working directory is
+     *  WORKINGDIR. */
+    Maintenance(File gitletDir, File workingDir) {
+        this.workingDir = workingDir;
+        this.configFile = join(gitletDir, "info", "maintenance");
+        File directory = join(gitletDir, "maintenance");
+        this.pendingFile = join(directory, "pending");
+        this.lockFile = join(directory, "lock");
+        this.logFile = join(directory, "log");
+    }
+
+    /** Returns the settings, defaults included, in the order status prints
+     *  them. */
+    Map<String, String> settings() {
+        Map<String, String> settings = new LinkedHashMap<>();
+        for (String key: List.of("auto", "objects", "commits")) {
+            settings.put(key, DEFAULTS.get(key));
+        }
+        if (configFile.isFile()) {
+            for (String line: readContentsAsString(configFile).split("\n")) {
+                String[] words = line.strip().split("\\s+");
+                if (words.length == 2 && settings.containsKey(words[0])) {
+                    settings.put(words[0], words[1]);
+                }
+            }
+        }
+        return settings;
+    }
+
+    /** Sets KEY to VALUE.  Throws GitletException if either is invalid. */
+    void set(String key, String value) {
+        boolean valid;
+        if (key.equals("auto")) {
+            valid = value.equals("on") || value.equals("off");
+        } else {
+            valid = DEFAULTS.containsKey(key) && value.matches("[1-9][0-9]{0,17}");
+        }
+        if (!valid) {
+            throw error("Invalid maintenance setting: %s %s.", key, value);
+        }
+        Map<String, String> settings = settings();
+        settings.put(key, value);
+        StringBuilder contents = new StringBuilder();
+        for (Map.Entry<String, String> setting: settings.entrySet()) {
+            contents.append(setting.getKey()).append(' ').append(setting.getValue()).append('\n');
+        }
+        configFile.getParentFile().mkdirs();
+        writeContents(configFile, contents.toString());
+    }
+
+    /** Returns the objects and commits written since the last run. */
+    long[] pending() {
+        if (!pendingFile.isFile()) {
+            return new long[2];
+        }
+        String[] words = readContentsAsString(pendingFile).strip().split(" ");
+        try {
+            return new long[] {Long.parseLong(words[0]), Long.parseLong(words[1])};
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException excp) {
+            return new long[2];
+        }
+    }
+
+    /** Adds OBJECTS objects, COMMITS of them commits, to the pending counts,
+     *  and starts a background run if that makes one due.  Never fails: a
+     *  count or a process that cannot be written or started is dropped. */
+    void recordWrites(long objects, long commits) {
+        if (objects == 0) {
+            return;
+        }
+        try {
+            long[] pending = pending();
+            pending[0] += objects;
+            pending[1] += commits;
+            writePending(pending);
+            if (settings().get("auto").equals("on") && !lockFile.exists() && runDue(pending)) {
+                start();
+            }
+        } catch (IOException | IllegalArgumentException excp) {
+            // maintenance must never fail the command that triggered it
+        }
+    }
+
+    /** Returns true iff the pending counts PENDING call for a run. */
+    boolean runDue(long[] pending) {
+        return fullRunDue(pending) || pending[1] >= threshold(settings(), "commits");
+    }
+
+    /** Returns true iff the pending counts PENDING call for every task, not
+     *  just the bitmap index. */
+    boolean fullRunDue(long[] pending) {
+        return pending[0] >= threshold(settings(), "objects");
+    }
+
+    /** Subtracts the counts RAN, pending when a run started, from the
+     *  pending counts, keeping whatever was written during the run. */
+    void ran(long[] ran) {
+        long[] pending = pending();
+        writePending(new long[] {Math.max(0, pending[0] - ran[0]), Math.max(0, pending[1] - ran[1])});
+    }
+
+    /** Takes the maintenance lock, replacing one left by a run that died.
+     *  Returns false if another run holds it. */
+    boolean lock() {
+        lockFile.getParentFile().mkdirs();
+        for (int attempt = 0; attempt < 2; attempt += 1) {
+            try {
+                Files.createFile(lockFile.toPath());
+                writeContents(lockFile, ProcessHandle.current().pid() + "\n");
+                return true;
+            } catch (FileAlreadyExistsException excp) {
+                if (System.currentTimeMillis() - lockFile.lastModified() < STALE_LOCK_AGE) {
+                    return false;
+                }
+                lockFile.delete();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return false;
+    }
+
+    void unlock() {
+        lockFile.delete();
+    }
+
+    private static long threshold(Map<String, String> settings, String key) {
+        try {
+            return Long.parseLong(settings.get(key));
+        } catch (NumberFormatException excp) {
+            return Long.parseLong(DEFAULTS.get(key));
+        }
+    }
+
+    private void writePending(long[] pending) {
+        pendingFile.getParentFile().mkdirs();
+        writeContents(pendingFile, pending[0] + " " + pending[1] + "\n");
+    }
+
+    /** Starts "maintenance run --auto" in a detached process, at the lowest
+     *  scheduling priority where nice is available, logging to
+     *  .gitlet/maintenance/log. */
+    private void start() throws IOException {
+        List<String> command = new ArrayList<>();
+        File nice = new File("/usr/bin/nice");
+        if (nice.canExecute()) {
+            command.addAll(List.of(nice.getPath(), "-n", "19"));
+        }
+        command.add(join(new File(System.getProperty("java.home")), "bin", "java").getPath());
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), Main.class.getName(),
+                "maintenance", "run", "--auto"));
+        Process process = new ProcessBuilder(command)
+                .directory(workingDir)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(logFile))
+                .start();
+        process.getOutputStream().close();
+    }
+}
@@ -0,0 +1,63 @@
+package gitlet;
+
+import java.io.File;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** Storage for the blobs and commits of a repository, as the serialized
+ *  bytes of each object, keyed by type (Pack.BLOB or Pack.COMMIT) and id.
+ *
+ *  A repository on disk keeps its objects either loose, one file per object
+ *  (the default), or packed into one append-only file; the choice is made at
+ *  init and recorded in objects/info/format.  In-memory databases hold
+ *  objects for benchmarks and tests, and CachingObjectDatabase keeps the
+ *  recently used objects of any other database in memory.
+ *
+ *  Implementations are safe to use from several threads at once.
+ *  @author Rogelio Camargo
+ */
+interface ObjectDatabase {
+
+    /** Returns the bytes of the object ID of type TYPE.  Throws
+     *  IllegalArgumentException if there is no such object. */
+    byte[] read(int type, ObjectId id);
+
+    /** Stores CONTENTS as the object ID of type TYPE. */
+    void write(int type, ObjectId id, byte[] contents);
+
+    /** Returns true iff there is an object ID of type TYPE. */
+    boolean exists(int type, ObjectId id);
+
+    /** Returns the number of bytes the object ID of type TYPE takes in
+     *  storage. */
+    long size(int type, ObjectId id);
+
+    /** Removes the object ID of type TYPE, if the database can. */
+    void delete(int type, ObjectId id);
+
+    /** Returns the ids of every object of type TYPE, sorted. */
+    List<ObjectId> ids(int type);
+
+    /** Returns the file recording how the objects directory OBJECTSDIR
+     *  stores its objects. */
+    static File formatFile(File objectsDir) {
+        return join(objectsDir, "info", "format");
+    }
+
+    /** Opens the object database of the repository GITLETDIR, whose writes
+     *  go through DURABILITY. */
+    static ObjectDatabase open(File gitletDir, Durability durability) {
+        File objectsDir = join(gitletDir, "objects");
+        File formatFile = formatFile(objectsDir);
+        if (formatFile.isFile() && readContentsAsString(formatFile).strip().equals("packed")) {
+            return new PackedObjectDatabase(PackedObjectDatabase.packFile(objectsDir), durability);
+        }
+        return new LooseObjectDatabase(objectsDir, durability);
+    }
+
+    /** Returns the directory name of objects of type TYPE in a loose store. */
+    static String kind(int type) {
+        return type == Pack.COMMIT ? "commits" : "blobs";
+    }
+}
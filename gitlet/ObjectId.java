@@ -0,0 +1,192 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/** The SHA-1 name of a blob or commit, held as its 20 raw bytes packed into
+ *  three primitive fields.  Equality and hashing touch only those fields, so
+ *  ids are cheap map keys; the 40-character hex form is built on demand by a
+ *  table-driven codec and cached.
+ *  @author Rogelio Camargo
+ */
+final class ObjectId implements Serializable, Comparable<ObjectId> {
+
+    /** Kept at its computed value, as ids are inside every stored object. */
+    private static final long serialVersionUID = -3693761878267331364L;
+
+    /** Number of raw bytes in an id. */
+    static final int RAW_LENGTH = 20;
+
+    /** Two lowercase hex digits for each byte value, indexed by 2 * (b & 0xff). */
+    private static final char[] HEX_PAIRS = new char[512];
+    /** Value of each hex digit character, or -1. */
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        char[] digits = "0123456789abcdef".toCharArray();
+        for (int b = 0; b < 256; b += 1) {
+            HEX_PAIRS[2 * b] = digits[b >>> 4];
+            HEX_PAIRS[2 * b + 1] = digits[b & 0xf];
+        }
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 16; i += 1) {
+            HEX_VALUES[digits[i]] = (byte) i;
+            HEX_VALUES[Character.toUpperCase(digits[i])] = (byte) i;
+        }
+    }
+
+    /** Bytes 0-7, 8-15 and 16-19 of the id, big-endian. */
+    private final long w1;
+    private final long w2;
+    private final int w3;
+
+    /** Cached hex form. */
+    private transient String hex;
+
+    private ObjectId(long w1, long w2, int w3) {
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+    }
+
+    /** Returns the id whose raw bytes are RAW[OFFSET .. OFFSET + 20). */
+    static ObjectId fromRaw(byte[] raw, int offset) {
+        return new ObjectId(readLong(raw, offset), readLong(raw, offset + 8),
+                (int) (readLong(raw, offset + 12) & 0xffffffffL));
+    }
+
+    /** Returns the id whose raw bytes are RAW. */
+    static ObjectId fromRaw(byte[] raw) {
+        if (raw.length != RAW_LENGTH) {
+            throw new IllegalArgumentException("object ids are 20 bytes");
+        }
+        return fromRaw(raw, 0);
+    }
+
+    /** Returns the id written as the 40 hex digits HEX.  Throws
+     *  IllegalArgumentException if HEX is not a complete id. */
+    static ObjectId fromHex(String hex) {
+        if (!isId(hex)) {
+            throw new IllegalArgumentException("not an object id: " + hex);
+        }
+        return new ObjectId(parseLong(hex, 0), parseLong(hex, 16),
+                (int) parseBits(hex, 32, 8));
+    }
+
+    /** Returns true iff S is a complete id in hex, in either case. */
+    static boolean isId(String s) {
+        if (s == null || s.length() != 2 * RAW_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if (c >= 128 || HEX_VALUES[c] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Writes the 20 raw bytes of this id into DEST starting at OFFSET. */
+    void copyRawTo(byte[] dest, int offset) {
+        writeLong(dest, offset, w1);
+        writeLong(dest, offset + 8, w2);
+        for (int i = 0; i < 4; i += 1) {
+            dest[offset + 16 + i] = (byte) (w3 >>> (24 - 8 * i));
+        }
+    }
+
+    /** Returns the 20 raw bytes of this id. */
+    byte[] toRaw() {
+        byte[] raw = new byte[RAW_LENGTH];
+        copyRawTo(raw, 0);
+        return raw;
+    }
+
+    /** Returns the first LENGTH hex digits of this id. */
+    String abbreviate(int length) {
+        return toString().substring(0, length);
+    }
+
+    /** Returns the 40 lowercase hex digits of this id. */
+    @Override
+    public String toString() {
+        String result = hex;
+        if (result == null) {
+            char[] chars = new char[2 * RAW_LENGTH];
+            encode(w1, 8, chars, 0);
+            encode(w2, 8, chars, 16);
+            encode(w3, 4, chars, 32);
+            result = new String(chars);
+            hex = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return w1 == other.w1 && w2 == other.w2 && w3 == other.w3;
+    }
+
+    /** SHA-1 output is uniformly distributed, so any 32 bits of it make a
+     *  good hash code. */
+    @Override
+    public int hashCode() {
+        return (int) (w1 >>> 32);
+    }
+
+    /** Orders ids as their hex forms would be ordered. */
+    @Override
+    public int compareTo(ObjectId other) {
+        int c = Long.compareUnsigned(w1, other.w1);
+        if (c == 0) {
+            c = Long.compareUnsigned(w2, other.w2);
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(w3, other.w3);
+        }
+        return c;
+    }
+
+    /** Writes the NUMBYTES low-order bytes of WORD as hex into CHARS at OFFSET. */
+    private static void encode(long word, int numBytes, char[] chars, int offset) {
+        for (int i = numBytes - 1; i >= 0; i -= 1) {
+            int b = (int) (word >>> (8 * (numBytes - 1 - i))) & 0xff;
+            chars[offset + 2 * i] = HEX_PAIRS[2 * b];
+            chars[offset + 2 * i + 1] = HEX_PAIRS[2 * b + 1];
+        }
+    }
+
+    private static long parseLong(String hex, int offset) {
+        return parseBits(hex, offset, 16);
+    }
+
+    private static long parseBits(String hex, int offset, int numDigits) {
+        long result = 0;
+        for (int i = 0; i < numDigits; i += 1) {
+            result = (result << 4) | HEX_VALUES[hex.charAt(offset + i)];
+        }
+        return result;
+    }
+
+    private static long readLong(byte[] raw, int offset) {
+        long result = 0;
+        for (int i = 0; i < 8; i += 1) {
+            result = (result << 8) | (raw[offset + i] & 0xff);
+        }
+        return result;
+    }
+
+    private static void writeLong(byte[] dest, int offset, long word) {
+        for (int i = 0; i < 8; i += 1) {
+            dest[offset + i] = (byte) (word >>> (56 - 8 * i));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/** A pack: many objects streamed as one file, used to move objects between
+ *  repositories.  The format is
+ *  <pre>
+ *      "GPAK" | version (4 bytes) | object count (4 bytes)
+ *      then for each object:
+ *          type (1 byte) | id (20 bytes) | length (4 bytes) | stored bytes
+ *      | SHA-1 of everything above (20 bytes)
+ *  </pre>
+ *  where the stored bytes are exactly the contents of the object's loose file.
+ *  @author Rogelio Camargo
+ */
+class Pack {
+
+    static final byte[] MAGIC = {'G', 'P', 'A', 'K'};
+    static final int VERSION = 1;
+
+    /** Object types, as stored in the type byte. */
+    static final int COMMIT = 1;
+    static final int BLOB = 2;
+
+    /** Receives the objects of a pack as it is read. */
+    interface Visitor {
+        void visit(int type, ObjectId id, byte[] contents);
+    }
+
+    /** Streams a pack of a known number of objects. */
+    static class Writer implements AutoCloseable {
+        private final DataOutputStream out;
+        private final DigestOutputStream digestStream;
+        private final MessageDigest digest;
+        private final int count;
+        private int written;
+
+        Writer(OutputStream stream, int count) throws IOException {
+            this.digest = newSha1Digest();
+            this.digestStream = new DigestOutputStream(new BufferedOutputStream(stream, 1 << 16), digest);
+            this.out = new DataOutputStream(digestStream);
+            this.count = count;
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+        }
+
+        void add(int type, ObjectId id, byte[] contents) throws IOException {
+            byte[] raw = id.toRaw();
+            out.writeByte(type);
+            out.write(raw);
+            out.writeInt(contents.length);
+            out.write(contents);
+            written += 1;
+        }
+
+        /** Writes the trailer and closes the underlying stream. */
+        @Override
+        public void close() throws IOException {
+            if (written != count) {
+                throw new IOException("pack declared " + count + " objects but got " + written);
+            }
+            digestStream.on(false);
+            out.write(digest.digest());
+            out.close();
+        }
+    }
+
+    /** Reads the pack in FILE, checking its trailer before VISITOR sees any
+     *  object, so a truncated or corrupted pack installs nothing.  Returns the
+     *  number of objects. */
+    static int read(File file, Visitor visitor) throws IOException {
+        verify(file);
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            int count = readHeader(in);
+            byte[] raw = new byte[ObjectId.RAW_LENGTH];
+            for (int i = 0; i < count; i += 1) {
+                int type = in.readUnsignedByte();
+                in.readFully(raw);
+                byte[] contents = new byte[in.readInt()];
+                in.readFully(contents);
+                visitor.visit(type, ObjectId.fromRaw(raw), contents);
+            }
+            return count;
+        }
+    }
+
+    private static void verify(File file) throws IOException {
+        long length = file.length();
+        if (length < MAGIC.length + 8 + ObjectId.RAW_LENGTH) {
+            throw new IOException("pack too short");
+        }
+        MessageDigest digest = newSha1Digest();
+        byte[] trailer = new byte[ObjectId.RAW_LENGTH];
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+            DigestInputStream body = new DigestInputStream(in, digest);
+            byte[] buffer = new byte[1 << 16];
+            long remaining = length - trailer.length;
+            while (remaining > 0) {
+                int n = body.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) {
+                    throw new EOFException("pack truncated");
+                }
+                remaining -= n;
+            }
+            new DataInputStream(in).readFully(trailer);
+        }
+        if (!Arrays.equals(trailer, digest.digest())) {
+            throw new IOException("pack checksum mismatch");
+        }
+    }
+
+    private static int readHeader(DataInputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC) || in.readInt() != VERSION) {
+            throw new IOException("not a gitlet pack");
+        }
+        return in.readInt();
+    }
+
+    /** Returns a SHA-1 digest of the pack's own.  The per-thread digest of
+     *  Utils.sha1Digest would be reset by any sha1Id call made while the pack
+     *  is written or read, say by a visitor hashing what it installs. */
+    private static MessageDigest newSha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+}
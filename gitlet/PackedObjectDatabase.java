@@ -0,0 +1,296 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static gitlet.Utils.*;
+
+/** An ObjectDatabase keeping every object in one append-only file,
+ *  [objects directory]/pack/objects.pack:
+ *  <pre>
+ *      "GOBJ" | version (4 bytes)
+ *      then for each object:
+ *          type (1 byte) | id (20 bytes) | length (4 bytes) | stored bytes
+ *  </pre>
+ *  The file is scanned when first used, to index where each object starts.
+ *  Every database open on one file in this process shares that index, as
+ *  Repository objects share their lock.  Records other processes append are
+ *  indexed when an object is not found and before each write, which holds
+ *  the file's lock while it appends.  A record cut short by a crash (or
+ *  anything after a malformed record) is ignored and overwritten by the next
+ *  write.  A file replaced since it was scanned, say by a repository
+ *  re-created in its place, is scanned again from the start.  Deleted objects
+ *  are only forgotten by this process: their records stay in the file.
+ *  @author Rogelio Camargo
+ */
+class PackedObjectDatabase implements ObjectDatabase {
+
+    private static final byte[] MAGIC = {'G', 'O', 'B', 'J'};
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = MAGIC.length + 4;
+    private static final int RECORD_HEADER_LENGTH = 1 + ObjectId.RAW_LENGTH + 4;
+
+    /** What this process knows of each pack file it uses, by path. */
+    private static final Map<Path, PackIndex> INDEXES = new ConcurrentHashMap<>();
+
+    private final File packFile;
+    private final Durability durability;
+    /** Shared with every database on the same file; guards itself. */
+    private final PackIndex index;
+
+    PackedObjectDatabase(File packFile, Durability durability) {
+        this.packFile = packFile.getAbsoluteFile();
+        this.durability = durability;
+        this.index = INDEXES.computeIfAbsent(this.packFile.toPath().normalize(),
+                path -> new PackIndex(path.toFile()));
+    }
+
+    /** Returns the pack file of the objects directory OBJECTSDIR. */
+    static File packFile(File objectsDir) {
+        return join(objectsDir, "pack", "objects.pack");
+    }
+
+    @Override
+    public byte[] read(int type, ObjectId id) {
+        synchronized (index) {
+            long[] location = index.locate(type, id);
+            if (location == null) {
+                throw new IllegalArgumentException("no such object: " + id);
+            }
+            byte[] contents = new byte[(int) location[1]];
+            try {
+                RandomAccessFile in = index.file();
+                in.seek(location[0]);
+                in.readFully(contents);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            Trace.count(Trace.BYTES_READ, contents.length);
+            return contents;
+        }
+    }
+
+    @Override
+    public void write(int type, ObjectId id, byte[] contents) {
+        synchronized (index) {
+            if (index.locate(type, id) != null) {
+                return;
+            }
+            long end;
+            try {
+                RandomAccessFile out = index.file();
+                try (FileLock ignored = out.getChannel().lock()) {
+                    index.refresh();
+                    if (index.objects(type).containsKey(id)) {
+                        return;
+                    }
+                    end = index.end;
+                    out.setLength(end);
+                    out.seek(end);
+                    if (end == 0) {
+                        out.write(MAGIC);
+                        out.writeInt(VERSION);
+                        end = HEADER_LENGTH;
+                    }
+                    byte[] record = new byte[RECORD_HEADER_LENGTH];
+                    record[0] = (byte) type;
+                    id.copyRawTo(record, 1);
+                    record[RECORD_HEADER_LENGTH - 4] = (byte) (contents.length >>> 24);
+                    record[RECORD_HEADER_LENGTH - 3] = (byte) (contents.length >>> 16);
+                    record[RECORD_HEADER_LENGTH - 2] = (byte) (contents.length >>> 8);
+                    record[RECORD_HEADER_LENGTH - 1] = (byte) contents.length;
+                    out.write(record);
+                    out.write(contents);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            index.objects(type).put(id, new long[] {end + RECORD_HEADER_LENGTH, contents.length});
+            index.end = end + RECORD_HEADER_LENGTH + contents.length;
+        }
+        Trace.count(Trace.BYTES_WRITTEN, RECORD_HEADER_LENGTH + contents.length);
+        durability.appended(packFile);
+    }
+
+    @Override
+    public boolean exists(int type, ObjectId id) {
+        synchronized (index) {
+            return index.locate(type, id) != null;
+        }
+    }
+
+    @Override
+    public long size(int type, ObjectId id) {
+        synchronized (index) {
+            long[] location = index.locate(type, id);
+            return location == null ? 0 : RECORD_HEADER_LENGTH + location[1];
+        }
+    }
+
+    @Override
+    public void delete(int type, ObjectId id) {
+        synchronized (index) {
+            index.objects(type).remove(id);
+        }
+    }
+
+    @Override
+    public List<ObjectId> ids(int type) {
+        List<ObjectId> ids;
+        synchronized (index) {
+            index.refresh();
+            ids = new ArrayList<>(index.objects(type).keySet());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /** Where each object of one pack file starts, as far as this process has
+     *  read the file.  Callers synchronize on it. */
+    private static class PackIndex {
+        private final File packFile;
+        /** Type -> id -> {offset of the stored bytes, their length}; null
+         *  until the file is scanned. */
+        private Map<Integer, Map<ObjectId, long[]>> objects;
+        /** Length of the file up to the end of its last complete record. */
+        private long end;
+        /** The file-system identity of the file scanned, where the platform
+         *  has one. */
+        private Object fileKey;
+        private RandomAccessFile file;
+
+        PackIndex(File packFile) {
+            this.packFile = packFile;
+        }
+
+        /** Returns the objects of type TYPE, scanning the file first if it
+         *  has not been. */
+        Map<ObjectId, long[]> objects(int type) {
+            if (objects == null) {
+                refresh();
+            }
+            return objects.get(type);
+        }
+
+        /** Returns the {offset, length} of the object ID of type TYPE, or
+         *  null.  An id not yet indexed is looked for among the records
+         *  appended since the file was last scanned. */
+        long[] locate(int type, ObjectId id) {
+            long[] location = objects(type).get(id);
+            if (location == null && refresh()) {
+                location = objects(type).get(id);
+            }
+            return location;
+        }
+
+        RandomAccessFile file() throws IOException {
+            if (file == null) {
+                packFile.getParentFile().mkdirs();
+                file = new RandomAccessFile(packFile, "rw");
+            }
+            return file;
+        }
+
+        /** Indexes the records appended to the file since it was last
+         *  scanned, starting over if it was replaced or shortened.  Returns
+         *  true iff any were found. */
+        boolean refresh() {
+            long length;
+            Object key;
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(packFile.toPath(), BasicFileAttributes.class);
+                length = attributes.size();
+                key = attributes.fileKey();
+            } catch (NoSuchFileException excp) {
+                length = 0;
+                key = null;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            if (objects == null || length < end || (end > 0 && !Objects.equals(key, fileKey))) {
+                reset();
+            }
+            fileKey = key;
+            return length > end && scan(length);
+        }
+
+        /** Forgets everything indexed, and the open file. */
+        private void reset() {
+            objects = new HashMap<>();
+            objects.put(Pack.BLOB, new HashMap<>());
+            objects.put(Pack.COMMIT, new HashMap<>());
+            end = 0;
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException excp) {
+                    // it was only read from
+                }
+                file = null;
+            }
+        }
+
+        /** Indexes the records of the file, of length LENGTH, that follow
+         *  END, stopping at the first incomplete one.  Returns true iff it
+         *  indexed any. */
+        private boolean scan(long length) {
+            long start = Trace.begin();
+            long offset = end;
+            int found = 0;
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(packFile), 1 << 16))) {
+                if (offset == 0) {
+                    byte[] magic = new byte[MAGIC.length];
+                    in.readFully(magic);
+                    if (!Arrays.equals(magic, MAGIC) || in.readInt() != VERSION) {
+                        throw new IllegalArgumentException("Unrecognized object pack: " + packFile);
+                    }
+                    offset = HEADER_LENGTH;
+                } else {
+                    in.skipNBytes(offset);
+                }
+                byte[] raw = new byte[ObjectId.RAW_LENGTH];
+                while (offset + RECORD_HEADER_LENGTH <= length) {
+                    int type = in.readUnsignedByte();
+                    in.readFully(raw);
+                    int contentsLength = in.readInt();
+                    if (!objects.containsKey(type) || contentsLength < 0
+                            || offset + RECORD_HEADER_LENGTH + contentsLength > length) {
+                        break;
+                    }
+                    in.skipNBytes(contentsLength);
+                    objects.get(type).put(ObjectId.fromRaw(raw),
+                            new long[] {offset + RECORD_HEADER_LENGTH, contentsLength});
+                    offset += RECORD_HEADER_LENGTH + contentsLength;
+                    found += 1;
+                }
+                end = offset;
+            } catch (EOFException excp) {
+                // a header cut short leaves nothing to index
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            Trace.count(Trace.FILES_READ, 1);
+            Trace.end("pack.scan", start);
+            return found > 0;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** A file of glob patterns (as in java.nio.file.FileSystem.getPathMatcher)
+ *  selecting working-directory paths, one per line.  Blank lines and lines
+ *  starting with # are ignored.  The patterns are compiled on first use and
+ *  kept until set replaces them.
+ *  @author Rogelio Camargo
+ */
+class PatternFile {
+
+    private final File file;
+    /** Matchers for the patterns, or null if not yet loaded. */
+    private List<PathMatcher> matchers;
+
+    PatternFile(File file) {
+        this.file = file;
+    }
+
+    /** Returns true iff there are no patterns. */
+    boolean isEmpty() {
+        return load().isEmpty();
+    }
+
+    /** Returns true iff FILENAME matches one of the patterns. */
+    boolean matches(String filename) {
+        List<PathMatcher> loaded = load();
+        if (loaded.isEmpty()) {
+            return false;
+        }
+        Path path = Path.of(filename);
+        for (PathMatcher matcher: loaded) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the patterns, in file order. */
+    List<String> patterns() {
+        List<String> patterns = new ArrayList<>();
+        if (file.isFile()) {
+            for (String line: readContentsAsString(file).split("\n")) {
+                String pattern = line.strip();
+                if (!pattern.isEmpty() && !pattern.startsWith("#")) {
+                    patterns.add(pattern);
+                }
+            }
+        }
+        return patterns;
+    }
+
+    /** Replaces the patterns with PATTERNS, removing the file if there are
+     *  none.  Throws GitletException if a pattern is not a valid glob. */
+    synchronized void set(List<String> patterns) {
+        for (String pattern: patterns) {
+            try {
+                FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            } catch (IllegalArgumentException excp) {
+                throw error("Invalid pattern: %s", pattern);
+            }
+        }
+        if (patterns.isEmpty()) {
+            file.delete();
+        } else {
+            file.getParentFile().mkdirs();
+            writeContents(file, String.join("\n", patterns) + "\n");
+        }
+        matchers = null;
+    }
+
+    private synchronized List<PathMatcher> load() {
+        if (matchers == null) {
+            matchers = new ArrayList<>();
+            for (String pattern: patterns()) {
+                matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+            }
+        }
+        return matchers;
+    }
+}
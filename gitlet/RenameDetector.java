@@ -0,0 +1,235 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Pairs files removed from one tree with files added to another whose
+ *  contents are similar enough to call the change a rename.
+ *
+ *  The similarity of two files is the Jaccard similarity of their sets of
+ *  lines, estimated from MinHash sketches: each file is reduced to the
+ *  minimum, over its lines, of each of SKETCH hash functions, and the
+ *  fraction of positions at which two sketches agree estimates the
+ *  similarity.  Sketches are split into bands, and only files sharing every
+ *  value of some band are compared, so the work grows with the number of
+ *  files rather than with the number of pairs.  The band size is chosen so
+ *  that a pair at the threshold shares a band with probability at least
+ *  0.99.  Files with identical contents are paired first, without sketches.
+ *  Each file is in at most one rename, the most similar pairs winning.
+ *  @author Rogelio Camargo
+ */
+class RenameDetector {
+
+    /** The similarity threshold, in percent, used unless another is given. */
+    static final int DEFAULT_THRESHOLD = 50;
+    /** The number of hash functions in a sketch. */
+    static final int SKETCH = 64;
+
+    /** A file removed as FROM and added, SIMILARITY percent alike, as TO. */
+    static class Rename {
+        final String from;
+        final String to;
+        final int similarity;
+
+        Rename(String from, String to, int similarity) {
+            this.from = from;
+            this.to = to;
+            this.similarity = similarity;
+        }
+    }
+
+    private final ObjectDatabase objects;
+    private final int threshold;
+
+    /** A detector reading blobs from OBJECTS and reporting renames at least
+     *  THRESHOLD percent (1 to 100) similar. */
+    RenameDetector(ObjectDatabase objects, int threshold) {
+        this.objects = objects;
+        this.threshold = threshold;
+    }
+
+    /** Returns the renames from the files REMOVED to the files ADDED, both
+     *  maps from filename to blob id, ordered by new filename. */
+    List<Rename> detect(Map<String, ObjectId> removed, Map<String, ObjectId> added) {
+        List<Rename> renames = new ArrayList<>();
+        if (removed.isEmpty() || added.isEmpty()) {
+            return renames;
+        }
+        long start = Trace.begin();
+        List<String> sources = new ArrayList<>(removed.keySet());
+        List<String> targets = new ArrayList<>(added.keySet());
+        List<ObjectId> blobsToRead = new ArrayList<>();
+        for (String filename: sources) {
+            blobsToRead.add(removed.get(filename));
+        }
+        for (String filename: targets) {
+            blobsToRead.add(added.get(filename));
+        }
+
+        // blob ids cover filenames as well as contents, so identical contents are matched by their own hash
+        long[][] sourceSketches = new long[sources.size()][];
+        long[][] targetSketches = new long[targets.size()][];
+        Map<ObjectId, List<Integer>> sourcesByContents = new HashMap<>();
+        ObjectId[] targetContents = new ObjectId[targets.size()];
+        try (BlobPrefetcher blobs = new BlobPrefetcher(objects, blobsToRead)) {
+            for (int i = 0; i < sources.size(); i += 1) {
+                byte[] contents = blobs.take(removed.get(sources.get(i))).getContents();
+                sourcesByContents.computeIfAbsent(Utils.sha1Id(contents), k -> new ArrayList<>()).add(i);
+                sourceSketches[i] = sketch(contents);
+            }
+            for (int i = 0; i < targets.size(); i += 1) {
+                byte[] contents = blobs.take(added.get(targets.get(i))).getContents();
+                targetContents[i] = Utils.sha1Id(contents);
+                targetSketches[i] = sketch(contents);
+            }
+        }
+
+        boolean[] sourceUsed = new boolean[sources.size()];
+        boolean[] targetUsed = new boolean[targets.size()];
+        for (int i = 0; i < targets.size(); i += 1) {
+            List<Integer> same = sourcesByContents.get(targetContents[i]);
+            if (same != null && !same.isEmpty()) {
+                int source = same.remove(same.size() - 1);
+                sourceUsed[source] = true;
+                targetUsed[i] = true;
+                renames.add(new Rename(sources.get(source), targets.get(i), 100));
+            }
+        }
+
+        // candidate pairs: a source and a target sharing a whole band
+        int rows = rowsPerBand();
+        Map<Long, List<Integer>> buckets = new HashMap<>();
+        for (int i = 0; i < sources.size(); i += 1) {
+            if (!sourceUsed[i] && sourceSketches[i] != null) {
+                for (int band = 0; band < SKETCH / rows; band += 1) {
+                    buckets.computeIfAbsent(bandKey(sourceSketches[i], band, rows), k -> new ArrayList<>()).add(i);
+                }
+            }
+        }
+        List<long[]> candidates = new ArrayList<>();
+        for (int i = 0; i < targets.size(); i += 1) {
+            if (targetUsed[i] || targetSketches[i] == null) {
+                continue;
+            }
+            Set<Integer> compared = new HashSet<>();
+            for (int band = 0; band < SKETCH / rows; band += 1) {
+                for (int source: buckets.getOrDefault(bandKey(targetSketches[i], band, rows), List.of())) {
+                    if (compared.add(source)) {
+                        int similarity = similarity(sourceSketches[source], targetSketches[i]);
+                        if (similarity >= threshold) {
+                            candidates.add(new long[] {similarity, source, i});
+                        }
+                    }
+                }
+            }
+        }
+
+        // most similar first; ties go to the earlier source and target
+        candidates.sort((a, b) -> a[0] != b[0] ? Long.compare(b[0], a[0])
+                : a[1] != b[1] ? Long.compare(a[1], b[1]) : Long.compare(a[2], b[2]));
+        for (long[] candidate: candidates) {
+            int source = (int) candidate[1];
+            int target = (int) candidate[2];
+            if (!sourceUsed[source] && !targetUsed[target]) {
+                sourceUsed[source] = true;
+                targetUsed[target] = true;
+                renames.add(new Rename(sources.get(source), targets.get(target), (int) candidate[0]));
+            }
+        }
+        renames.sort((a, b) -> a.to.compareTo(b.to));
+        Trace.end("renames.detect", start);
+        return renames;
+    }
+
+    /** Returns the MinHash sketch of the lines of CONTENTS, or null if it
+     *  has no lines. */
+    static long[] sketch(byte[] contents) {
+        if (contents.length == 0) {
+            return null;
+        }
+        long[] sketch = new long[SKETCH];
+        Arrays.fill(sketch, Long.MAX_VALUE);
+        int lineStart = 0;
+        for (int i = 0; i <= contents.length; i += 1) {
+            if (i == contents.length || contents[i] == '\n') {
+                if (i > lineStart || i < contents.length) {
+                    long line = lineHash(contents, lineStart, i);
+                    for (int k = 0; k < SKETCH; k += 1) {
+                        long h = mix(line + SEEDS[k]);
+                        if (h < sketch[k]) {
+                            sketch[k] = h;
+                        }
+                    }
+                }
+                lineStart = i + 1;
+            }
+        }
+        return sketch;
+    }
+
+    /** Returns the estimated similarity, in percent, of the files with
+     *  sketches A and B. */
+    static int similarity(long[] a, long[] b) {
+        int same = 0;
+        for (int k = 0; k < SKETCH; k += 1) {
+            if (a[k] == b[k]) {
+                same += 1;
+            }
+        }
+        return same * 100 / SKETCH;
+    }
+
+    /** Returns the largest band size at which a pair exactly at the
+     *  threshold becomes a candidate with probability at least 0.99. */
+    private int rowsPerBand() {
+        double t = threshold / 100.0;
+        for (int rows = 8; rows > 1; rows /= 2) {
+            double missed = Math.pow(1 - Math.pow(t, rows), SKETCH / rows);
+            if (missed <= 0.01) {
+                return rows;
+            }
+        }
+        return 1;
+    }
+
+    private static long bandKey(long[] sketch, int band, int rows) {
+        long key = band;
+        for (int k = band * rows; k < (band + 1) * rows; k += 1) {
+            key = mix(key * 31 + sketch[k]);
+        }
+        return key;
+    }
+
+    /** Returns the 64-bit FNV-1a hash of CONTENTS[FROM..TO). */
+    private static long lineHash(byte[] contents, int from, int to) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = from; i < to; i += 1) {
+            hash ^= contents[i] & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /** The SplitMix64 finalizer, a fast mixing function. */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /** The offsets making the SKETCH hash functions independent. */
+    private static final long[] SEEDS = new long[SKETCH];
+
+    static {
+        long seed = 0x9e3779b97f4a7c15L;
+        for (int k = 0; k < SKETCH; k += 1) {
+            seed = mix(seed + 0x9e3779b97f4a7c15L);
+            SEEDS[k] = seed;
+        }
+    }
+}
@@ -1,451 +1,1202 @@
 package gitlet;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static gitlet.Utils.*;
 
-/** Represents a gitlet repository.
+/** Represents a gitlet repository, bound to the working directory it was
+ *  created for.
+ *
+ *  Commands report failures by throwing GitletException, whose message is the
+ *  one the command line prints; nothing here exits the process.  Many
+ *  repositories can be used from many threads at once.  Every repository
+ *  directory has one read-write lock in this process, shared by all the
+ *  Repository objects bound to it: commands that only print take it for
+ *  reading and run alongside each other, and commands that change anything
+ *  take it for writing.  Releasing the write lock makes everything the command
+ *  wrote durable (see Durability).  Other processes are not locked out.
  *  @author Rogelio Camargo
  */
 public class Repository {
-    
+
+    /** Locks of the repositories used by this process, by .gitlet directory. */
+    private static final Map<Path, ReentrantReadWriteLock> LOCKS = new ConcurrentHashMap<>();
+
     // directories
-    public static final File CWD = new File(System.getProperty("user.dir"));
-    public static final File GITLET_DIR = join(CWD, ".gitlet");
-    public static final File REFS_DIR = join(GITLET_DIR, "refs");
-    public static final File BRANCHES_DIR = join(REFS_DIR, "branches");
-    public static final File OBJECTS_DIR = join(GITLET_DIR, "objects");
+    final File cwd;
+    final File gitletDir;
+    final File refsDir;
+    final File branchesDir;
+    final File objectsDir;
+    final File remotesDir;
 
     // files
-    public static final File HEAD = join(GITLET_DIR, "HEAD");
+    final File headFile;
+    final File indexFile;
+    final File graphFile;
+
+    final Durability durability;
+    private final SparseCheckout sparseCheckout;
+    private final LargeFiles largeFiles;
+    private final Maintenance maintenance;
+    private final ReentrantReadWriteLock lock;
+    private final Path lockKey;
+    /** Where commands print, or null for whatever System.out is. */
+    private final PrintStream out;
+
+    /** Where blobs and commits are stored; opened on first use. */
+    private ObjectDatabase objects;
+    /** Keeps the working files up to date in watch mode, or null. */
+    private volatile WorkingTreeWatcher watcher;
+
+    /** The repository in the directory ROOT, printing to System.out. */
+    public Repository(File root) {
+        this(root, null);
+    }
+
+    /** The repository in the directory ROOT, printing to OUT. */
+    public Repository(File root, PrintStream out) {
+        this(root, join(root, ".gitlet"), out);
+    }
+
+    /** The repository whose .gitlet directory is GITLETDIR and whose working
+     *  directory is ROOT, printing to OUT (null for System.out). */
+    private Repository(File root, File gitletDir, PrintStream out) {
+        this.cwd = root.getAbsoluteFile();
+        this.gitletDir = gitletDir.getAbsoluteFile();
+        this.refsDir = join(this.gitletDir, "refs");
+        this.branchesDir = join(refsDir, "branches");
+        this.objectsDir = join(this.gitletDir, "objects");
+        this.remotesDir = join(this.gitletDir, "remotes");
+        this.headFile = join(this.gitletDir, "HEAD");
+        this.indexFile = join(this.gitletDir, "index");
+        this.graphFile = CommitGraph.graphFile(objectsDir);
+        this.durability = new Durability(this.gitletDir);
+        this.sparseCheckout = new SparseCheckout(this.gitletDir);
+        this.largeFiles = new LargeFiles(this.gitletDir, cwd);
+        this.maintenance = new Maintenance(this.gitletDir, cwd);
+        this.lockKey = this.gitletDir.toPath().normalize();
+        this.lock = LOCKS.computeIfAbsent(lockKey, key -> new ReentrantReadWriteLock());
+        this.out = out;
+    }
+
+    /** Returns the repository whose .gitlet directory is GITLETDIR, such as
+     *  a remote, printing where this one does. */
+    private Repository other(File gitletDir) {
+        return new Repository(gitletDir.getParentFile(), gitletDir, out);
+    }
+
+    private PrintStream out() {
+        return out != null ? out : System.out;
+    }
 
     /**
      * <pre>
      *     .gitlet
      *     ---- refs
      *     -------- heads
+     *     ---- remotes
      *     ---- objects
      *     -------- blobs
      *     -------- commits
+     *     -------- info
+     *     ------------ commit-graph
+     *     ------------ format
+     *     -------- pack
+     *     ------------ objects.pack (instead of blobs and commits, if packed)
+     *     ---- large
+     *     ---- blame (cached blames, by commit and path)
+     *     ---- maintenance
+     *     -------- pending
+     *     -------- lock
+     *     -------- log
+     *     ---- tmp
+     *     ---- info
+     *     -------- durability
+     *     -------- large-files
+     *     -------- maintenance
+     *     -------- sparse-checkout
      *     ---- index
+     *     ---- index.journal (changes since the index was written; see StagingArea)
      *     ---- HEAD
      * </pre>
      */
 
-    public static void setupPersistence() {
+    private void setupPersistence() {
         List<File> directories = List.of(
-                GITLET_DIR, REFS_DIR, BRANCHES_DIR, OBJECTS_DIR, Blob.BLOBS_DIR, Commit.COMMITS_DIR
+                gitletDir, refsDir, branchesDir, remotesDir, objectsDir, join(objectsDir, "blobs"),
+                join(objectsDir, "commits"), graphFile.getParentFile()
         );
         for (File directory: directories) {
             directory.mkdir();
         }
     }
 
-    public static void checkWorkingDirectory() {
-        if (!GITLET_DIR.exists() && !GITLET_DIR.isDirectory()) {
-            exit("Not in an initialized Gitlet directory.");
+    /** Starts watch mode, for a process that runs many commands on this
+     *  repository: from then on, status, add and the untracked-file check
+     *  learn of working files from file-system events instead of listing
+     *  and reading them (see WorkingTreeWatcher). */
+    public synchronized void watch() {
+        if (watcher == null) {
+            watcher = new WorkingTreeWatcher(cwd, gitletDir);
         }
     }
 
-    public static void initialize() {
-        if (GITLET_DIR.exists()) {
-            exit("A Gitlet version-control system already exists in the current directory.");
+    /** Ends watch mode. */
+    public synchronized void unwatch() {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
         }
+    }
 
-        // create .gitlet directory and subdirectories 
-        setupPersistence();
-        // create initial commit
-        Commit initialCommit = new Commit();
-        initialCommit.serialize();
+    /** Returns the repository's object database, with a cache in front. */
+    synchronized ObjectDatabase objects() {
+        if (objects == null) {
+            objects = new CachingObjectDatabase(ObjectDatabase.open(gitletDir, durability),
+                    CachingObjectDatabase.DEFAULT_MAX_BYTES);
+        }
+        return objects;
+    }
 
-        // create master branch file and store pointer to initial commit
-        updateBranchFile("master", initialCommit.getId());
-        // create head file and store name of the current branch
-        updateHeadFile("master");
+    /** Makes DATABASE the repository's object database, e.g. an in-memory
+     *  one for benchmarks.  Null reopens the one on disk when next used. */
+    synchronized void useObjectDatabase(ObjectDatabase database) {
+        objects = database;
+    }
+
+    /** A held repository lock, released by close. */
+    private interface Locked extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /** Takes the repository's lock for reading. */
+    private Locked readLocked() {
+        lock.readLock().lock();
+        return lock.readLock()::unlock;
+    }
 
-        // create staging area and serialize
-        StagingArea stagingArea = new StagingArea();
-        stagingArea.serialize();
+    /** Takes the repository's lock for writing.  Releasing it first makes
+     *  the files written while it was held durable, then counts the objects
+     *  written toward automatic maintenance.  The lock is reentrant, and a
+     *  command calls other commands' methods under it, so both wait for the
+     *  outermost release: a batched merge syncs once, not per file, and no
+     *  maintenance run starts before the merge commit exists. */
+    private Locked writeLocked() {
+        lock.writeLock().lock();
+        return () -> {
+            try {
+                if (lock.getWriteHoldCount() == 1) {
+                    durability.flush();
+                    scheduleMaintenance();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        };
     }
 
-    public static void addFileToStagingArea(String filename) {
-        File fileToStage = join(CWD, filename);
-        if (!fileToStage.exists()) {
-            exit("File does not exist.");
+    /** Adds the objects written since the last call to the counts automatic
+     *  maintenance watches, which may start a background run.  Objects
+     *  written to a database set by useObjectDatabase are not counted. */
+    private void scheduleMaintenance() {
+        ObjectDatabase database;
+        synchronized (this) {
+            database = objects;
+        }
+        if (database instanceof CachingObjectDatabase) {
+            CachingObjectDatabase caching = (CachingObjectDatabase) database;
+            long commits = caching.takeWrites(Pack.COMMIT);
+            maintenance.recordWrites(commits + caching.takeWrites(Pack.BLOB), commits);
         }
+    }
 
-        // deserialize staging area
-        StagingArea stagingArea = StagingArea.deserialize();
-        HashMap<String, String> stagedTrackedFiles = stagingArea.getFilesStagedForAddition();
+    private Locked locked(boolean write) {
+        return write ? writeLocked() : readLocked();
+    }
 
-        // get the tracked files from the latest commit (which should be stored in HEAD file)
-        Commit headCommit = getHeadCommit();
-        HashMap<String, String> currentTrackedFiles = headCommit.getTrackedFiles();
+    /** Takes the locks of this repository and of REMOTE, for writing if
+     *  WRITE and REMOTEWRITE respectively.  They are taken in path order, so
+     *  transfers in opposite directions between the same two repositories
+     *  cannot deadlock.  A repository that is its own remote is locked once,
+     *  and the remote's writes are made durable, and counted toward its
+     *  maintenance, when that lock is released. */
+    private Locked lockedWith(Repository remote, boolean write, boolean remoteWrite) {
+        if (remote.lock == lock) {
+            Locked held = locked(write || remoteWrite);
+            return () -> {
+                try {
+                    if (remoteWrite && lock.getWriteHoldCount() == 1) {
+                        remote.durability.flush();
+                        remote.scheduleMaintenance();
+                    }
+                } finally {
+                    held.close();
+                }
+            };
+        }
+        boolean localFirst = lockKey.compareTo(remote.lockKey) < 0;
+        Locked first = localFirst ? locked(write) : remote.locked(remoteWrite);
+        Locked second = localFirst ? remote.locked(remoteWrite) : locked(write);
+        return () -> {
+            try {
+                second.close();
+            } finally {
+                first.close();
+            }
+        };
+    }
 
-        // read contents of file to stage
-        byte[] contentsOfFileToStage = readContents(fileToStage);
+    public void checkWorkingDirectory() {
+        if (!gitletDir.exists() && !gitletDir.isDirectory()) {
+            throw error("Not in an initialized Gitlet directory.");
+        }
+    }
 
-        // create new blob (ONLY BLOB IS CREATED, NOT SERIALIZED UPON CREATION)
-        Blob newBlob = new Blob(filename, contentsOfFileToStage);
+    public void initialize() {
+        initialize(false);
+    }
 
-        // get blob ids
-        String newBlobId = newBlob.getId();
-        String currentBlobId = currentTrackedFiles.getOrDefault(filename, "");
-        String stagedBlobId = stagedTrackedFiles.getOrDefault(filename, "");
+    /** Creates a repository, keeping its objects in one pack file if PACKED
+     *  and one file per object otherwise. */
+    public void initialize(boolean packed) {
+        try (Locked ignored = writeLocked()) {
+            if (gitletDir.exists()) {
+                throw error("A Gitlet version-control system already exists in the current directory.");
+            }
 
-        // if latest commit already tracks filename with exact contents -> don't stage file
-        if (currentBlobId.equals(newBlobId)) {
-            // unstage file (from both addition and/or removal) if latest commit already
-            // links filename with exact contents
-            if (!stagedBlobId.equals(newBlobId)) {
-                stagingArea.unstageFileForAddition(filename);
-                stagingArea.unstageFileForRemoval(filename);
-                // delete blob
-                Blob blobToDelete = Blob.deserialize(stagedBlobId);
-                blobToDelete.delete();
+            // create .gitlet directory and subdirectories 
+            setupPersistence();
+            if (packed) {
+                writeContents(ObjectDatabase.formatFile(objectsDir), "packed\n");
             }
+            // create initial commit
+            Commit initialCommit = new Commit();
+            initialCommit.serialize(objects());
+            CommitGraph.append(graphFile, initialCommit, Set.of());
+
+            // create master branch file and store pointer to initial commit
+            updateBranchFile("master", initialCommit.getId());
+            // create head file and store name of the current branch
+            updateHeadFile("master");
+
+            // create staging area and serialize
+            StagingArea stagingArea = new StagingArea();
+            stagingArea.serialize(indexFile, durability);
         }
-        else {
-            // if filename has been staged already, remove the blob previously tied to because new blob
-            // will take its place
-            if (!stagedBlobId.equals("")) {
-                // delete blob
-                Blob blobToDelete = Blob.deserialize(stagedBlobId);
-                blobToDelete.delete();
+    }
+
+    public void addFileToStagingArea(String filename) {
+        try (Locked ignored = writeLocked()) {
+            File fileToStage = join(cwd, filename);
+            if (!fileToStage.exists()) {
+                throw error("File does not exist.");
             }
 
-            // serialize new blob
-            newBlob.serialize();
-            // stage file for addition im staging area with the new contents
-            stagingArea.stageFileForAddition(filename, newBlob.getId());
-        }
+            // deserialize staging area
+            StagingArea stagingArea = StagingArea.deserialize(indexFile);
+            HashMap<String, ObjectId> stagedTrackedFiles = stagingArea.getFilesStagedForAddition();
+
+            // get the tracked files from the latest commit (which should be stored in HEAD file)
+            Commit headCommit = getHeadCommit();
+            HashMap<String, ObjectId> currentTrackedFiles = headCommit.getTrackedFiles();
+
+            // in watch mode, a file unchanged since it was last hashed to what is staged, or to what
+            // HEAD has with nothing staged, needs no reading
+            WorkingTreeWatcher current = watcher;
+            ObjectId knownBlobId = current != null ? current.knownId(filename) : null;
+            if (knownBlobId != null && (knownBlobId.equals(stagedTrackedFiles.get(filename))
+                    || knownBlobId.equals(currentTrackedFiles.get(filename)) && !stagingArea.hasFileStaged(filename))) {
+                return;
+            }
+
+            // read contents of file to stage (large files are streamed into the large-file store,
+            // and what is staged is a pointer to them)
+            byte[] contentsOfFileToStage = largeFiles.isLarge(filename) ? largeFiles.store(fileToStage)
+                    : readContents(fileToStage);
 
-        // serialize staging area
-        stagingArea.serialize();
+            // create new blob (ONLY BLOB IS CREATED, NOT SERIALIZED UPON CREATION)
+            Blob newBlob = new Blob(filename, contentsOfFileToStage);
+
+            // get blob ids
+            ObjectId newBlobId = newBlob.getId();
+            if (current != null) {
+                current.record(filename, newBlobId);
+            }
+            ObjectId currentBlobId = currentTrackedFiles.get(filename);
+            ObjectId stagedBlobId = stagedTrackedFiles.get(filename);
+
+            // if latest commit already tracks filename with exact contents -> don't stage file
+            if (newBlobId.equals(currentBlobId)) {
+                // unstage file (from both addition and/or removal) if latest commit already
+                // links filename with exact contents
+                if (!newBlobId.equals(stagedBlobId)) {
+                    stagingArea.unstageFileForAddition(filename);
+                    stagingArea.unstageFileForRemoval(filename);
+                    // delete blob, if a different version had been staged
+                    if (stagedBlobId != null) {
+                        Blob blobToDelete = Blob.deserialize(objects(), stagedBlobId);
+                        blobToDelete.delete(objects());
+                    }
+                }
+            }
+            else {
+                // if filename has been staged already, remove the blob previously tied to because new blob
+                // will take its place
+                if (stagedBlobId != null) {
+                    // delete blob
+                    Blob blobToDelete = Blob.deserialize(objects(), stagedBlobId);
+                    blobToDelete.delete(objects());
+                }
+
+                // serialize new blob
+                newBlob.serialize(objects());
+                // stage file for addition im staging area with the new contents
+                stagingArea.stageFileForAddition(filename, newBlob.getId());
+            }
+
+            // serialize staging area
+            stagingArea.serialize(indexFile, durability);
+        }
     }
 
-    public static void makeNewCommit(String message) {
-        // get the latest commit (which should be stored in HEAD file)
-        Commit headCommit = getHeadCommit();
-        createNewCommit(message, List.of(headCommit.getId()));
+    public void makeNewCommit(String message) {
+        try (Locked ignored = writeLocked()) {
+            // get the latest commit (which should be stored in HEAD file)
+            Commit headCommit = getHeadCommit();
+            createNewCommit(message, List.of(headCommit.getId()));
+        }
     }
 
-    public static void removeFileFromTracking(String filename) {
-        // deserialize staging area
-        StagingArea stagingArea = StagingArea.deserialize();
-        HashMap<String, String> stagedTrackedFiles = stagingArea.getFilesStagedForAddition();
+    public void removeFileFromTracking(String filename) {
+        try (Locked ignored = writeLocked()) {
+            // deserialize staging area
+            StagingArea stagingArea = StagingArea.deserialize(indexFile);
+            HashMap<String, ObjectId> stagedTrackedFiles = stagingArea.getFilesStagedForAddition();
 
-        // get the latest tracked files from the latest commit
-        Commit headCommit = getHeadCommit();
-        HashMap<String, String> currentTrackedFiles = headCommit.getTrackedFiles();
+            // get the latest tracked files from the latest commit
+            Commit headCommit = getHeadCommit();
+            HashMap<String, ObjectId> currentTrackedFiles = headCommit.getTrackedFiles();
 
-        // get blob ids
-        String stagedBlobId = stagedTrackedFiles.getOrDefault(filename, "");
-        String currentBlobId = currentTrackedFiles.getOrDefault(filename, "");
+            // get blob ids
+            ObjectId stagedBlobId = stagedTrackedFiles.get(filename);
+            ObjectId currentBlobId = currentTrackedFiles.get(filename);
 
-        // abort if file is neither staged nor tracked by the head commit
-        if (stagedBlobId.equals("") && currentBlobId.equals("")) {
-            exit("No reason to remove the file.");
-        }
+            // abort if file is neither staged nor tracked by the head commit
+            if (stagedBlobId == null && currentBlobId == null) {
+                throw error("No reason to remove the file.");
+            }
+
+            // unstage file if it's been staged for addition
+            if (stagedBlobId != null) {
+                stagingArea.unstageFileForAddition(filename);
+            }
+            // otherwise, stage file for removal
+            else {
+                stagingArea.stageFileForRemoval(filename);
+            }
 
-        // unstage file if it's been staged for addition
-        if (!stagedBlobId.equals("")) {
-            stagingArea.unstageFileForAddition(filename);
+            File fileToDelete = join(cwd, filename);
+            if (fileToDelete.exists()) {
+                ObjectId blobId = workingFileId(filename);
+                if (blobId.equals(currentBlobId)) {
+                    fileToDelete.delete();
+                }
+            }
+
+            // serialize staging area
+            stagingArea.serialize(indexFile, durability);
         }
-        // otherwise, stage file for removal
-        else {
-            stagingArea.stageFileForRemoval(filename);
+    }
+
+    public void printHeadCommitHistory() {
+        printHeadCommitHistory(Integer.MAX_VALUE, null, null);
+    }
+
+    /**
+     * Prints at most LIMIT commits of the head's first-parent history, skipping
+     * commits made after UNTIL and stopping at the first commit made before
+     * SINCE (either may be null).  Like git, this assumes timestamps decrease
+     * along first parents.  The walk stops as soon as nothing more can be
+     * printed, including when the reader of the output goes away.
+     */
+    public void printHeadCommitHistory(int limit, Date since, Date until) {
+        try (Locked ignored = readLocked()) {
+            long start = Trace.begin();
+            Writer out = new BufferedWriter(new OutputStreamWriter(out(), StandardCharsets.UTF_8), 1 << 16);
+            try {
+                int printed = 0;
+                Iterator<Commit> commits = history(getHeadCommit());
+                while (printed < limit && commits.hasNext()) {
+                    Commit commit = commits.next();
+                    if (since != null && commit.getTimestamp().before(since)) {
+                        break;
+                    }
+                    if (until != null && commit.getTimestamp().after(until)) {
+                        continue;
+                    }
+                    // display information about each commit
+                    out.write(commit.toString());
+                    out.write('\n');
+                    printed += 1;
+                    // a PrintStream records write failures instead of throwing them
+                    if (out().checkError()) {
+                        break;
+                    }
+                }
+                out.flush();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            Trace.end("log.walk", start);
         }
+    }
 
-        File fileToDelete = join(CWD, filename);
-        if (fileToDelete.exists()) {
-            byte[] fileToDeleteContents = readContents(join(CWD, filename));
-            String blobId = Blob.getIdFromNameAndContents(filename, fileToDeleteContents);
-            if (currentBlobId.equals(blobId)) {
-                fileToDelete.delete();
+    /**
+     * Like printHeadCommitHistory, but prints only commits that changed PATH
+     * relative to their first parent.  Commits the commit graph covers are
+     * skipped without being read when their changed-path filter rules PATH
+     * out, or when they are older than SINCE.
+     */
+    public void printPathHistory(String path, int limit, Date since, Date until) {
+        try (Locked ignored = readLocked()) {
+            long start = Trace.begin();
+            CommitGraph graph = CommitGraph.load(graphFile);
+            Writer out = new BufferedWriter(new OutputStreamWriter(out(), StandardCharsets.UTF_8), 1 << 16);
+            try {
+                int printed = 0;
+                ObjectId commitId = getHeadCommitId();
+                // the commit for commitId, when the previous step already read it
+                Commit commit = null;
+                while (printed < limit && commitId != null) {
+                    CommitGraph.Entry entry = graph.get(commitId);
+                    if (entry != null) {
+                        if (since != null && entry.timestamp < since.getTime()) {
+                            break;
+                        }
+                        if (!entry.mightHaveChanged(path)) {
+                            Trace.count(Trace.BLOOM_SKIPS, 1);
+                            commitId = entry.firstParent();
+                            commit = null;
+                            continue;
+                        }
+                    }
+                    if (commit == null) {
+                        commit = Commit.deserialize(objects(), commitId);
+                    }
+                    if (since != null && commit.getTimestamp().before(since)) {
+                        break;
+                    }
+                    ObjectId parentId = commit.hasParents() ? commit.getParent() : null;
+                    Commit parent = parentId == null ? null : Commit.deserialize(objects(), parentId);
+                    ObjectId blobId = commit.getTrackedFiles().get(path);
+                    ObjectId parentBlobId = parent == null ? null : parent.getTrackedFiles().get(path);
+                    boolean changed = !Objects.equals(blobId, parentBlobId);
+                    if (changed && (until == null || !commit.getTimestamp().after(until))) {
+                        out.write(commit.toString());
+                        out.write('\n');
+                        printed += 1;
+                        if (out().checkError()) {
+                            break;
+                        }
+                    }
+                    commitId = parentId;
+                    commit = parent;
+                }
+                out.flush();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
             }
+            Trace.end("log.walk", start);
         }
+    }
 
-        // serialize staging area
-        stagingArea.serialize();
+    /** Prints each line of the file FILENAME in the head commit, preceded by
+     *  the abbreviated id of the commit that last changed it and its line
+     *  number (see Blame). */
+    public void blame(String filename) {
+        try (Locked ignored = readLocked()) {
+            Commit head = getHeadCommit();
+            ObjectId blobId = head.getTrackedFiles().get(filename);
+            if (blobId == null) {
+                throw error("File does not exist in that commit.");
+            }
+            byte[] contents = Blob.deserialize(objects(), blobId).getContents();
+            if (LargeFiles.isPointer(contents)) {
+                throw error("Cannot blame a large file.");
+            }
+            List<String> lines = LineDiff.lines(contents);
+            Blame blame = new Blame(objects(), CommitGraph.load(graphFile), join(gitletDir, "blame"));
+            ObjectId[] commits = blame.run(head, filename, blobId, lines);
+            String format = "%s %" + Integer.toString(lines.size()).length() + "d) %s\n";
+            Writer out = new BufferedWriter(new OutputStreamWriter(out(), StandardCharsets.UTF_8), 1 << 16);
+            try {
+                for (int i = 0; i < lines.size(); i += 1) {
+                    out.write(String.format(format, commits[i].toString().substring(0, 8), i + 1, lines.get(i)));
+                }
+                out.flush();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
     }
 
-    public static void printHeadCommitHistory() {
-        // get the latest commit
-        Commit headCommit = getHeadCommit();
-        Commit currentCommit = headCommit;
+    /** Rewrites the commit graph to cover every commit, backfilling the
+     *  changed-path filters of commits made before it existed. */
+    public void writeCommitGraph() {
+        try (Locked ignored = writeLocked()) {
+            long start = Trace.begin();
+            CommitGraph.writeAll(objects(), graphFile);
+            Trace.end("graph.write", start);
+        }
+    }
 
-        // terminate loop when initial commit is reached (initial commit has no parents)
-        // TODO: update this algorithm
-        while (currentCommit.hasParents()) {
-            // display information about each commit
-            System.out.println(currentCommit);
-            // get parent of commit
-            String parentCommitPointer = currentCommit.getParent();
-            // deserialize parent commit
-            currentCommit = Commit.deserialize(parentCommitPointer);
+    /** Writes the reachability bitmap index for every branch, including the
+     *  remote-tracking ones. */
+    public void writeBitmapIndex() {
+        try (Locked ignored = writeLocked()) {
+            long start = Trace.begin();
+            BitmapIndex index = BitmapIndex.write(gitletDir, objects(), getBranchHeads().values());
+            Trace.end("bitmap.write", start);
+            out().println(index.size() + " objects, " + index.bitmapCount() + " bitmaps");
         }
+    }
 
-        // initial commit is reach, display information
-        System.out.println(currentCommit);
+    /** Runs the maintenance tasks: rewrites the commit graph, then the
+     *  bitmap index.  If AUTO, only the tasks due (see Maintenance) run, and
+     *  nothing does if another run holds the maintenance lock; otherwise
+     *  every task runs, and a held lock is an error. */
+    public void runMaintenance(boolean auto) {
+        if (!maintenance.lock()) {
+            if (auto) {
+                return;
+            }
+            throw error("Maintenance is already running.");
+        }
+        try {
+            long[] pending = maintenance.pending();
+            if (auto && !maintenance.runDue(pending)) {
+                return;
+            }
+            long start = Trace.begin();
+            if (!auto || maintenance.fullRunDue(pending)) {
+                writeCommitGraph();
+            }
+            writeBitmapIndex();
+            maintenance.ran(pending);
+            Trace.end("maintenance.run", start);
+        } finally {
+            maintenance.unlock();
+        }
     }
 
-    public static void printEntireCommitHistory() {
-        // get all commit filenames
-        List<String> commitFilenames = plainFilenamesIn(Commit.COMMITS_DIR);
-        // display information about all commits ever made
-        for (String filename: commitFilenames) {
-            Commit commit = Commit.deserialize(filename);
-            System.out.println(commit);
+    /** Sets the maintenance setting KEY to VALUE. */
+    public void setMaintenance(String key, String value) {
+        try (Locked ignored = writeLocked()) {
+            maintenance.set(key, value);
         }
     }
 
-    public static void printCommitsWithMessage(String message) {
-        boolean hasAtLeastOneCommitWithMessage = false;
-        // get all commit filenames
-        List<String> commitFilenames = plainFilenamesIn(Commit.COMMITS_DIR);
-        // print out all the ids of all commits that have the given commit exit
-        for (String filename: commitFilenames) {
-            Commit commit = Commit.deserialize(filename);
-            if (commit.getMessage().equals(message)) {
-                hasAtLeastOneCommitWithMessage = true;
-                System.out.println(commit.getId());
+    /** Prints the maintenance settings and the objects and commits written
+     *  since the last run. */
+    public void printMaintenanceStatus() {
+        try (Locked ignored = readLocked()) {
+            for (Map.Entry<String, String> setting: maintenance.settings().entrySet()) {
+                out().println(setting.getKey() + ": " + setting.getValue());
             }
+            long[] pending = maintenance.pending();
+            out().println("pending: " + pending[0] + " objects, " + pending[1] + " commits");
         }
+    }
 
-        if (!hasAtLeastOneCommitWithMessage) {
-            message("Found no commit with that message.");
+    /** Imports the commits of the fast-import stream IN (see FastImport),
+     *  then points the branches it names at their new heads and prints how
+     *  many commits and blobs were written.  The working directory and the
+     *  index are left alone, even if the current branch moves. */
+    public void fastImport(InputStream in) {
+        try (Locked ignored = writeLocked()) {
+            FastImport importer = new FastImport(objects(), gitletDir, in);
+            importer.run(graphFile);
+            for (Map.Entry<String, ObjectId> branch: importer.branches().entrySet()) {
+                updateBranchFile(branch.getKey(), branch.getValue());
+            }
+            out().println(importer.commitsWritten() + " commits, " + importer.blobsWritten() + " blobs");
         }
     }
 
-    public static void printCurrentStatus() {
-        System.out.println("=== Branches ===");
-        // displays what branches currently exist
-        List<String> branchNames = plainFilenamesIn(BRANCHES_DIR);
-        String currentBranch = getCurrentBranch();
-        for (String branchName: branchNames) {
-            if (branchName.equals(currentBranch)) {
-                // marks the current branch with *
-                System.out.println("*" + branchName);
-            } else {
-                System.out.println(branchName);
+    /** Writes the files of the commit COMMITNAME, a branch name or commit
+     *  id, as a FORMAT (tar or zip) archive to the file OUTPUT, or to the
+     *  output stream if OUTPUT is null.  Files go straight from the object
+     *  store to the archive, in name order, without touching the working
+     *  directory; blobs are read ahead of the file being written. */
+    public void archive(String commitName, String format, File output) {
+        try (Locked ignored = readLocked()) {
+            Commit commit = Commit.deserialize(objects(), resolveCommitName(commitName));
+            TreeMap<String, ObjectId> files = new TreeMap<>(commit.getTrackedFiles());
+            List<ObjectId> blobIds = new ArrayList<>(files.values());
+            long start = Trace.begin();
+            try (OutputStream stream = output == null ? null : new FileOutputStream(output)) {
+                Archive archive = Archive.open(format, stream == null ? out() : stream,
+                        commit.getTimestamp().getTime());
+                if (archive == null) {
+                    throw error("Unknown archive format: %s.", format);
+                }
+                try (archive; BlobPrefetcher blobs = new BlobPrefetcher(objects(), blobIds)) {
+                    for (Map.Entry<String, ObjectId> file: files.entrySet()) {
+                        byte[] contents = blobs.take(file.getValue()).getContents();
+                        if (LargeFiles.isPointer(contents)) {
+                            archive.add(file.getKey(), largeFiles.contentsOf(contents));
+                        } else {
+                            archive.add(file.getKey(), contents);
+                        }
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            } catch (GitletException excp) {
+                if (output != null) {
+                    output.delete();
+                }
+                throw excp;
             }
+            Trace.end("archive.write", start);
         }
+    }
 
-        // get staging area
-        StagingArea stagingArea = StagingArea.deserialize();
-        List<String> filenames = plainFilenamesIn(CWD);
-
-        System.out.println("\n=== Staged Files ===");
-        // displays files that have been staged for addition
-        for (String filename: filenames) {
-            if (stagingArea.hasFileStagedForAddition(filename)) {
-                System.out.println(filename);
+    /** Prints the differences from the commit OLDNAME to the commit NEWNAME,
+     *  each a branch or a commit id, in FORMAT: "name-status", "stat" or
+     *  "patch" (see Diff).  Renames at least RENAMETHRESHOLD percent similar
+     *  are followed unless it is 0.  Nothing is printed for one commit named
+     *  twice. */
+    public void diff(String oldName, String newName, String format, int renameThreshold) {
+        try (Locked ignored = readLocked()) {
+            ObjectId oldId = resolveCommitName(oldName);
+            ObjectId newId = resolveCommitName(newName);
+            if (oldId.equals(newId)) {
+                return;
             }
+            Diff diff = new Diff(objects(), Commit.deserialize(objects(), oldId).getTrackedFiles(),
+                    Commit.deserialize(objects(), newId).getTrackedFiles(), renameThreshold);
+            long start = Trace.begin();
+            Writer out = new BufferedWriter(new OutputStreamWriter(out(), StandardCharsets.UTF_8), 1 << 16);
+            try {
+                switch (format) {
+                    case "name-status":
+                        diff.writeNameStatus(out);
+                        break;
+                    case "stat":
+                        diff.writeStat(out);
+                        break;
+                    default:
+                        diff.writePatch(out);
+                        break;
+                }
+                out.flush();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            Trace.end("diff.write", start);
         }
+    }
 
-        System.out.println("\n=== Removed Files ===");
-        // displays files that have been staged for removal
-        for (String filename: stagingArea.getFilesStagedForRemoval()) {
-            System.out.println(filename);
+    /** Prints, for each branch, the number of objects reachable from it and
+     *  the bytes they take on disk. */
+    public void printObjectCounts() {
+        try (Locked ignored = readLocked()) {
+            BitmapIndex index = BitmapIndex.load(gitletDir, objects());
+            long start = Trace.begin();
+            for (Map.Entry<String, ObjectId> branch: getBranchHeads().entrySet()) {
+                BitmapIndex.Reachable reachable = index.reachable(branch.getValue());
+                out().println(branch.getKey() + ": " + BitmapIndex.count(reachable) + " objects, "
+                        + index.bytes(reachable) + " bytes");
+            }
+            Trace.end("bitmap.count", start);
         }
+    }
 
-        // Extra Credit:
-        System.out.println("\n=== Modifications Not Staged For Commit ===\n");
-        System.out.println("=== Untracked Files ===\n");
+    /** Returns the head commit of every branch, remote-tracking branches
+     *  (which live one directory down) included, sorted by name. */
+    private TreeMap<String, ObjectId> getBranchHeads() {
+        TreeMap<String, ObjectId> heads = new TreeMap<>();
+        for (String branchName: plainFilenamesIn(branchesDir)) {
+            heads.put(branchName, ObjectId.fromHex(readContentsAsString(join(branchesDir, branchName))));
+        }
+        File[] remoteDirectories = branchesDir.listFiles(File::isDirectory);
+        for (File remoteDirectory: remoteDirectories == null ? new File[0] : remoteDirectories) {
+            for (String branchName: plainFilenamesIn(remoteDirectory)) {
+                heads.put(remoteDirectory.getName() + "/" + branchName,
+                        ObjectId.fromHex(readContentsAsString(join(remoteDirectory, branchName))));
+            }
+        }
+        return heads;
     }
 
-    public static void checkoutFileFromHeadCommit(String filename) {
-        // get tracked files from head commit
-        Commit headCommit = getHeadCommit();
-        HashMap<String, String> headCommitTrackedFiles = headCommit.getTrackedFiles();
+    /** Returns the first-parent history of START, newest first.  Each commit
+     *  is deserialized only when the iterator reaches it. */
+    Iterator<Commit> history(Commit start) {
+        return new Iterator<Commit>() {
+            private Commit current = start;
+            private ObjectId nextId = null;
 
-        // abort if the file doesn't exist in the head commit
-        if (!headCommitTrackedFiles.containsKey(filename)) {
-            exit("File does not exist in that commit.");
-        }
+            @Override
+            public boolean hasNext() {
+                return current != null || nextId != null;
+            }
 
-        // get blob of file that needs to be checked out
-        Blob fileBlob = Blob.deserialize(headCommitTrackedFiles.get(filename));
-        // create or update contents of file in the working directory
-        writeContents(join(CWD, filename), fileBlob.getContents());
+            @Override
+            public Commit next() {
+                if (current == null) {
+                    if (nextId == null) {
+                        throw new NoSuchElementException();
+                    }
+                    current = Commit.deserialize(objects(), nextId);
+                }
+                Commit result = current;
+                // terminate when initial commit is reached (initial commit has no parents)
+                nextId = result.hasParents() ? result.getParent() : null;
+                current = null;
+                return result;
+            }
+        };
     }
 
-    public static void checkoutFileFromGivenCommit(String commitId, String filename) {
-        // abort if no commit with the given id exists
-        if (!Commit.exists(commitId)) {
-            exit("No commit with that id exists.");
+    public void printEntireCommitHistory() {
+        try (Locked ignored = readLocked()) {
+            // get all commit ids
+            List<ObjectId> commitIds = objects().ids(Pack.COMMIT);
+            // display information about all commits ever made
+            for (ObjectId commitId: commitIds) {
+                Commit commit = Commit.deserialize(objects(), commitId);
+                out().println(commit);
+            }
         }
+    }
 
-        // get tracked files from given commit
-        Commit commit = Commit.deserialize(commitId);
-        HashMap<String, String> commitTrackedFiles = commit.getTrackedFiles();
+    public void printCommitsWithMessage(String message) {
+        try (Locked ignored = readLocked()) {
+            boolean hasAtLeastOneCommitWithMessage = false;
+            // get all commit ids
+            List<ObjectId> commitIds = objects().ids(Pack.COMMIT);
+            // print out all the ids of all commits that have the given commit exit
+            for (ObjectId commitId: commitIds) {
+                Commit commit = Commit.deserialize(objects(), commitId);
+                if (commit.getMessage().equals(message)) {
+                    hasAtLeastOneCommitWithMessage = true;
+                    out().println(commit.getId());
+                }
+            }
 
-        // abort if the file doesn't exist in the head commit
-        if (!commitTrackedFiles.containsKey(filename)) {
-            exit("File does not exist in that commit.");
+            if (!hasAtLeastOneCommitWithMessage) {
+                out().println("Found no commit with that message.");
+            }
         }
-
-        // get blob of file that needs to be checked out
-        Blob fileBlob = Blob.deserialize(commitTrackedFiles.get(filename));
-        // create or update contents of file in the working directory
-        writeContents(join(CWD, filename), fileBlob.getContents());
     }
 
-    public static void checkoutBranch(String branchName) {
-        File branchFile = join(BRANCHES_DIR, branchName);
-        if (!branchFile.exists()) {
-            exit("No such branch exists.");
-        }
+    public void printCurrentStatus() {
+        try (Locked ignored = readLocked()) {
+            out().println("=== Branches ===");
+            // displays what branches currently exist
+            List<String> branchNames = plainFilenamesIn(branchesDir);
+            String currentBranch = getCurrentBranch();
+            for (String branchName: branchNames) {
+                if (branchName.equals(currentBranch)) {
+                    // marks the current branch with *
+                    out().println("*" + branchName);
+                } else {
+                    out().println(branchName);
+                }
+            }
 
-        if (branchName.equals(getCurrentBranch())) {
-            exit("No need to checkout the current branch.");
-        }
+            // get staging area
+            StagingArea stagingArea = StagingArea.deserialize(indexFile);
+            long start = Trace.begin();
+            List<String> filenames = workingFilenames();
+            Trace.end("status.scan", start);
+
+            out().println("\n=== Staged Files ===");
+            // displays files that have been staged for addition
+            for (String filename: filenames) {
+                if (stagingArea.hasFileStagedForAddition(filename)) {
+                    out().println(filename);
+                }
+            }
+
+            out().println("\n=== Removed Files ===");
+            // displays files that have been staged for removal
+            for (String filename: stagingArea.getFilesStagedForRemoval()) {
+                out().println(filename);
+            }
 
-        // get head commit from current branch
-        Commit commitFromCurrentBranch = getCommitFromBranch(branchName);
-        // get head commit from given branch
-        Commit commitFromGivenBranch = getCommitFromBranch(branchName);
-        // ensure no untracked file can be overwritten
-        if (hasUntrackedFileThatCanBeOverWritten(commitFromGivenBranch)) {
-            exit("There is an untracked file in the way; delete it, or add and commit it first.");
+            // Extra Credit:
+            out().println("\n=== Modifications Not Staged For Commit ===\n");
+            out().println("=== Untracked Files ===\n");
         }
+    }
 
-        // get tracked files from branch we're checkout
-        HashMap<String, String> givenBranchTrackedFiles = commitFromGivenBranch.getTrackedFiles();
+    public void checkoutFileFromHeadCommit(String filename) {
+        try (Locked ignored = writeLocked()) {
+            // get tracked files from head commit
+            Commit headCommit = getHeadCommit();
+            HashMap<String, ObjectId> headCommitTrackedFiles = headCommit.getTrackedFiles();
 
-        // clear current working directory
-        clearWorkingDirectory();
+            // abort if the file doesn't exist in the head commit
+            if (!headCommitTrackedFiles.containsKey(filename)) {
+                throw error("File does not exist in that commit.");
+            }
 
-        // take all files in the commit at the head of the given branch, and place them in the working directory
-        for (Map.Entry<String, String> entry: givenBranchTrackedFiles.entrySet()) {
-            // get contents of file via blob
-            Blob blob = Blob.deserialize(entry.getValue());
-            writeContents(join(CWD, entry.getKey()), blob.getContents());
+            // get blob of file that needs to be checked out
+            Blob fileBlob = Blob.deserialize(objects(), headCommitTrackedFiles.get(filename));
+            // create or update contents of file in the working directory
+            writeBlob(join(cwd, filename), fileBlob);
         }
+    }
 
-        // clear the staging area
-        StagingArea stagingArea = StagingArea.deserialize();
-        stagingArea.clear();
-        stagingArea.serialize();
+    public void checkoutFileFromGivenCommit(String commitIdArg, String filename) {
+        try (Locked ignored = writeLocked()) {
+            // abort if no commit with the given id exists
+            ObjectId commitId = resolveCommitId(commitIdArg);
 
-        // the given branch is now the current branch
-        updateHeadFile(branchName);
-    }
+            // get tracked files from given commit
+            Commit commit = Commit.deserialize(objects(), commitId);
+            HashMap<String, ObjectId> commitTrackedFiles = commit.getTrackedFiles();
 
-    private static void clearWorkingDirectory() {
-        List<String> filenamesInCWD = plainFilenamesIn(CWD);
-        for (String filename: filenamesInCWD) {
-            restrictedDelete(join(CWD, filename));
+            // abort if the file doesn't exist in the head commit
+            if (!commitTrackedFiles.containsKey(filename)) {
+                throw error("File does not exist in that commit.");
+            }
+
+            // get blob of file that needs to be checked out
+            Blob fileBlob = Blob.deserialize(objects(), commitTrackedFiles.get(filename));
+            // create or update contents of file in the working directory
+            writeBlob(join(cwd, filename), fileBlob);
         }
     }
 
-    public static void createNewBranch(String branchName) {
-        // get branch file
-        File newBranchFile = join(BRANCHES_DIR, branchName);
-        // don't create a new branch if one with given name already exists
-        if (newBranchFile.exists()) {
-            exit("A branch with that name already exists.");
-        }
+    public void checkoutBranch(String branchName) {
+        try (Locked ignored = writeLocked()) {
+            File branchFile = join(branchesDir, branchName);
+            if (!branchFile.exists()) {
+                throw error("No such branch exists.");
+            }
+
+            if (branchName.equals(getCurrentBranch())) {
+                throw error("No need to checkout the current branch.");
+            }
+
+            // get head commit from current branch
+            Commit commitFromCurrentBranch = getCommitFromBranch(branchName);
+            // get head commit from given branch
+            Commit commitFromGivenBranch = getCommitFromBranch(branchName);
+            // ensure no untracked file can be overwritten
+            if (hasUntrackedFileThatCanBeOverWritten(commitFromGivenBranch)) {
+                throw error("There is an untracked file in the way; delete it, or add and commit it first.");
+            }
+
+            // get tracked files from branch we're checkout
+            HashMap<String, ObjectId> givenBranchTrackedFiles = commitFromGivenBranch.getTrackedFiles();
+
+            // clear current working directory
+            clearWorkingDirectory();
 
-        // get the head commit
-        Commit headCommit = getHeadCommit();
-        // store the head commit pointer in the new branch file
-        writeContents(newBranchFile, headCommit.getId());
+            // take all files in the commit at the head of the given branch, and place them in the working directory
+            writeTrackedFiles(branchName, givenBranchTrackedFiles);
+
+            // clear the staging area
+            StagingArea stagingArea = StagingArea.deserialize(indexFile);
+            stagingArea.clear();
+            stagingArea.serialize(indexFile, durability);
+
+            // the given branch is now the current branch
+            updateHeadFile(branchName);
+        }
     }
 
-    public static void removeBranch(String branchName) {
-        File branchFile = join(BRANCHES_DIR, branchName);
-        // aborts if a branch with the given name does not exist
-        if (!branchFile.exists()) {
-            exit("A branch with that name does not exist.");
+    /** Writes the contents of every file in TRACKEDFILES (filename -> blob id)
+     *  in the sparse-checkout set to the working directory.  TARGET names the
+     *  branch or commit. */
+    private void writeTrackedFiles(String target, HashMap<String, ObjectId> trackedFiles) {
+        long start = Trace.begin();
+        GitletEvents.WorkingTreeUpdate event = GitletEvents.enabled() ? new GitletEvents.WorkingTreeUpdate() : null;
+        if (event != null) {
+            event.begin();
+        }
+        // files outside the sparse-checkout set are never read from the object store
+        List<String> filenames = new ArrayList<>();
+        List<ObjectId> blobIds = new ArrayList<>();
+        for (Map.Entry<String, ObjectId> entry: trackedFiles.entrySet()) {
+            if (sparseCheckout.includes(entry.getKey())) {
+                filenames.add(entry.getKey());
+                blobIds.add(entry.getValue());
+            }
         }
+        // blobs are read ahead while earlier ones are being written
+        try (BlobPrefetcher blobs = new BlobPrefetcher(objects(), blobIds)) {
+            for (int i = 0; i < filenames.size(); i += 1) {
+                writeBlob(join(cwd, filenames.get(i)), blobs.take(blobIds.get(i)));
+            }
+        }
+        int filesWritten = filenames.size();
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.target = target;
+                event.filesWritten = filesWritten;
+                event.commit();
+            }
+        }
+        Trace.end("checkout.write", start);
+    }
 
-        // can't remove the branch you're currently on
-        if (branchName.equals(getCurrentBranch())) {
-            exit("Cannot remove the current branch.");
+    /** Writes the contents of BLOB to FILE, materializing them from the
+     *  large-file store if BLOB is a pointer. */
+    private void writeBlob(File file, Blob blob) {
+        if (LargeFiles.isPointer(blob.getContents())) {
+            largeFiles.materialize(blob.getContents(), file);
+        } else {
+            writeContents(file, blob.getContents());
         }
+    }
 
-        // delete branch file
-        branchFile.delete();
+    /** Returns the id of the blob that add would make of the working file
+     *  FILENAME, without storing anything. */
+    private ObjectId workingFileId(String filename) {
+        File file = join(cwd, filename);
+        byte[] contents = largeFiles.isLarge(filename) ? LargeFiles.pointerFor(file) : readContents(file);
+        return Blob.getIdFromNameAndContents(filename, contents);
     }
 
-    public static void checkoutCommit(String commitId) {
-        if (!Commit.exists(commitId)) {
-            exit("No commit with that id exists.");
+    private void clearWorkingDirectory() {
+        long start = Trace.begin();
+        List<String> filenamesInCWD = workingFilenames();
+        for (String filename: filenamesInCWD) {
+            restrictedDelete(join(cwd, filename));
         }
+        Trace.end("checkout.clear", start);
+    }
 
-        // get head commit from current branch
-        Commit currentCommit = getHeadCommit();
-        // get head commit from given branch
-        Commit destinationCommit = Commit.deserialize(commitId);
-        // ensure no untracked file can be overwritten
-        if (hasUntrackedFileThatCanBeOverWritten(destinationCommit)) {
-            exit("There is an untracked file in the way; delete it, or add and commit it first.");
+    /** Returns the names of the plain files in the working directory that
+     *  are in the sparse-checkout set. */
+    private List<String> workingFilenames() {
+        WorkingTreeWatcher current = watcher;
+        List<String> filenames = current != null ? current.filenames() : plainFilenamesIn(cwd);
+        if (sparseCheckout.isEnabled()) {
+            filenames.removeIf(filename -> !sparseCheckout.includes(filename));
         }
+        return filenames;
+    }
 
-        // clear current working directory
-        clearWorkingDirectory();
+    public void createNewBranch(String branchName) {
+        try (Locked ignored = writeLocked()) {
+            // get branch file
+            File newBranchFile = join(branchesDir, branchName);
+            // don't create a new branch if one with given name already exists
+            if (newBranchFile.exists()) {
+                throw error("A branch with that name already exists.");
+            }
 
-        // get tracked files from branch we're checkout
-        HashMap<String, String> destinationTrackedFiles = destinationCommit.getTrackedFiles();
-        // take all files in the commit at the head of the given branch, and place them in the working directory
-        for (Map.Entry<String, String> entry: destinationTrackedFiles.entrySet()) {
-            // get contents of file via blob
-            Blob blob = Blob.deserialize(entry.getValue());
-            writeContents(join(CWD, entry.getKey()), blob.getContents());
+            // get the head commit
+            Commit headCommit = getHeadCommit();
+            // store the head commit pointer in the new branch file
+            updateBranchFile(branchName, headCommit.getId());
         }
+    }
 
-        // clear the staging area
-        StagingArea stagingArea = StagingArea.deserialize();
-        stagingArea.clear();
-        stagingArea.serialize();
+    public void removeBranch(String branchName) {
+        try (Locked ignored = writeLocked()) {
+            File branchFile = join(branchesDir, branchName);
+            // aborts if a branch with the given name does not exist
+            if (!branchFile.exists()) {
+                throw error("A branch with that name does not exist.");
+            }
 
-        // update the pointer of the current branch to the currently checked out commit
-        updateBranchFile(getCurrentBranch(), commitId);
-    }
+            // can't remove the branch you're currently on
+            if (branchName.equals(getCurrentBranch())) {
+                throw error("Cannot remove the current branch.");
+            }
 
-    public static void mergeBranchWithCurrentBranch(String branchName) {
-        File branchFile = join(BRANCHES_DIR, branchName);
-        if (!branchFile.exists()) {
-            exit("A branch with that name does not exist.");
+            // delete branch file
+            branchFile.delete();
         }
-        if (getCurrentBranch().equals(branchFile)) {
-            exit("Cannot merge a branch with itself.");
+    }
+
+    public void checkoutCommit(String commitIdArg) {
+        try (Locked ignored = writeLocked()) {
+            ObjectId commitId = resolveCommitId(commitIdArg);
+
+            // get head commit from current branch
+            Commit currentCommit = getHeadCommit();
+            // get head commit from given branch
+            Commit destinationCommit = Commit.deserialize(objects(), commitId);
+            // ensure no untracked file can be overwritten
+            if (hasUntrackedFileThatCanBeOverWritten(destinationCommit)) {
+                throw error("There is an untracked file in the way; delete it, or add and commit it first.");
+            }
+
+            // clear current working directory
+            clearWorkingDirectory();
+
+            // get tracked files from branch we're checkout
+            HashMap<String, ObjectId> destinationTrackedFiles = destinationCommit.getTrackedFiles();
+            // take all files in the commit at the head of the given branch, and place them in the working directory
+            writeTrackedFiles(commitIdArg, destinationTrackedFiles);
+
+            // clear the staging area
+            StagingArea stagingArea = StagingArea.deserialize(indexFile);
+            stagingArea.clear();
+            stagingArea.serialize(indexFile, durability);
+
+            // update the pointer of the current branch to the currently checked out commit
+            updateBranchFile(getCurrentBranch(), commitId);
         }
+    }
 
-        StagingArea stagingArea = StagingArea.deserialize();
-        if (!stagingArea.isEmpty()) {
-            exit("You have uncommitted changes.");
+    /** Makes PATTERNS the sparse-checkout patterns (none means every path)
+     *  and brings the working directory in line with them: head files that
+     *  entered the set are written, and unmodified, unstaged head files that
+     *  left it are deleted.  Modified ones are left for the user to handle. */
+    public void setSparseCheckout(List<String> patterns) {
+        try (Locked ignored = writeLocked()) {
+            sparseCheckout.set(patterns);
+            long start = Trace.begin();
+            StagingArea stagingArea = StagingArea.deserialize(indexFile);
+            HashMap<String, ObjectId> headTrackedFiles = getHeadCommit().getTrackedFiles();
+            HashMap<String, ObjectId> filesToWrite = new HashMap<>();
+            for (Map.Entry<String, ObjectId> entry: headTrackedFiles.entrySet()) {
+                String filename = entry.getKey();
+                File file = join(cwd, filename);
+                if (sparseCheckout.includes(filename)) {
+                    if (!file.exists() && !stagingArea.hasFileStaged(filename)) {
+                        filesToWrite.put(filename, entry.getValue());
+                    }
+                } else if (file.exists() && !stagingArea.hasFileStaged(filename)
+                        && entry.getValue().equals(workingFileId(filename))) {
+                    restrictedDelete(file);
+                }
+            }
+            Trace.end("sparse.clear", start);
+            writeTrackedFiles(getCurrentBranch(), filesToWrite);
         }
+    }
 
-        Commit currentBranchCommit = getCommitFromBranch(getCurrentBranch());
-        Commit givenBranchCommit = getCommitFromBranch(branchName);
+    /** Makes PATTERNS the large-file patterns.  Only files added afterwards
+     *  are affected. */
+    public void setLargeFiles(List<String> patterns) {
+        try (Locked ignored = writeLocked()) {
+            largeFiles.set(patterns);
+        }
+    }
 
-        if (hasUntrackedFileThatCanBeOverWritten(givenBranchCommit)) {
-            exit("There is an untracked file in the way; delete it, or add and commit it first.");
+    /** Prints the large-file patterns, one per line. */
+    public void printLargeFiles() {
+        try (Locked ignored = readLocked()) {
+            for (String pattern: largeFiles.patterns()) {
+                out().println(pattern);
+            }
         }
-        // find split point
-        Commit splitPointCommit = findSplitPoint(currentBranchCommit, givenBranchCommit);
-        // if the split point is the same commit as the given branch, then we do nothing; the merge is complete
-        if (splitPointCommit.getId().equals(givenBranchCommit.getId())) {
-            exit("Given branch is an ancestor of the current branch.");
+    }
+
+    /** Sets the durability mode to the one named MODENAME, or prints the
+     *  current one if MODENAME is null. */
+    public void setDurability(String modeName) {
+        try (Locked ignored = writeLocked()) {
+            if (modeName == null) {
+                out().println(durability.mode().name().toLowerCase(Locale.ROOT));
+                return;
+            }
+            Durability.Mode mode = Durability.parse(modeName);
+            if (mode == null) {
+                throw error("Durability must be none, batched or strict.");
+            }
+            durability.setMode(mode);
         }
-        if (splitPointCommit.getId().equals(currentBranchCommit.getId())) {
-            exit("Current branch fast-forwarded.");
+    }
+
+    /** Prints the sparse-checkout patterns, one per line. */
+    public void printSparseCheckout() {
+        try (Locked ignored = readLocked()) {
+            for (String pattern: sparseCheckout.patterns()) {
+                out().println(pattern);
+            }
         }
+    }
+
+    public void mergeBranchWithCurrentBranch(String branchName) {
+        mergeBranchWithCurrentBranch(branchName, RenameDetector.DEFAULT_THRESHOLD);
+    }
+
+    /** Merges the branch BRANCHNAME into the current branch, following files
+     *  renamed on one side that are at least RENAMETHRESHOLD percent similar
+     *  (1 to 100), or not following renames if it is 0. */
+    public void mergeBranchWithCurrentBranch(String branchName, int renameThreshold) {
+        try (Locked ignored = writeLocked()) {
+            File branchFile = join(branchesDir, branchName);
+            if (!branchFile.exists()) {
+                throw error("A branch with that name does not exist.");
+            }
+            if (getCurrentBranch().equals(branchFile)) {
+                throw error("Cannot merge a branch with itself.");
+            }
+
+            StagingArea stagingArea = StagingArea.deserialize(indexFile);
+            if (!stagingArea.isEmpty()) {
+                throw error("You have uncommitted changes.");
+            }
 
-        mergeContents(currentBranchCommit, givenBranchCommit, splitPointCommit, getCurrentBranch(), branchName);
+            Commit currentBranchCommit = getCommitFromBranch(getCurrentBranch());
+            Commit givenBranchCommit = getCommitFromBranch(branchName);
+
+            if (hasUntrackedFileThatCanBeOverWritten(givenBranchCommit)) {
+                throw error("There is an untracked file in the way; delete it, or add and commit it first.");
+            }
+            // find split point
+            long start = Trace.begin();
+            Commit splitPointCommit = findSplitPoint(currentBranchCommit, givenBranchCommit);
+            Trace.end("merge.splitPoint", start);
+            // if the split point is the same commit as the given branch, then we do nothing; the merge is complete
+            if (splitPointCommit.getId().equals(givenBranchCommit.getId())) {
+                out().println("Given branch is an ancestor of the current branch.");
+                return;
+            }
+            if (splitPointCommit.getId().equals(currentBranchCommit.getId())) {
+                out().println("Current branch fast-forwarded.");
+                return;
+            }
+
+            start = Trace.begin();
+            mergeContents(currentBranchCommit, givenBranchCommit, splitPointCommit, getCurrentBranch(), branchName,
+                    renameThreshold);
+            Trace.end("merge.contents", start);
+        }
     }
 
-    private static void mergeContents(Commit currentCommit, Commit otherCommit, Commit splitCommit,
-                                         String currentBranchName, String otherBranchName) {
+    private void mergeContents(Commit currentCommit, Commit otherCommit, Commit splitCommit,
+                                         String currentBranchName, String otherBranchName, int renameThreshold) {
+        GitletEvents.WorkingTreeUpdate event = GitletEvents.enabled() ? new GitletEvents.WorkingTreeUpdate() : null;
+        if (event != null) {
+            event.begin();
+        }
+        int filesWritten = 0;
         boolean hasConflict = false;
         // get tracked files from all three commits
-        HashMap<String, String> currentTrackedFiles = currentCommit.getTrackedFiles();
-        HashMap<String, String> otherTrackedFiles = otherCommit.getTrackedFiles();
-        HashMap<String, String> splitTrackedFiles = splitCommit.getTrackedFiles();
+        HashMap<String, ObjectId> currentTrackedFiles = currentCommit.getTrackedFiles();
+        HashMap<String, ObjectId> otherTrackedFiles = otherCommit.getTrackedFiles();
+        HashMap<String, ObjectId> splitTrackedFiles = splitCommit.getTrackedFiles();
 
         // group all tracked files
         HashSet<String> allTrackedFiles = new HashSet<>();
@@ -459,54 +1210,110 @@ public class Repository {
             allTrackedFiles.add(filename);
         }
 
-        // iterate through all tracked files and merge accordingly
+        // a file renamed on one side and still under its old name on the other is merged as one file, under
+        // its new name; both names are then left out of the filename-by-filename merge below
+        if (renameThreshold > 0) {
+            long start = Trace.begin();
+            RenameDetector renames = new RenameDetector(objects(), renameThreshold);
+            for (RenameDetector.Rename rename: findRenames(renames, splitTrackedFiles, otherTrackedFiles,
+                    currentTrackedFiles)) {
+                hasConflict |= mergeRename(rename, splitTrackedFiles.get(rename.from),
+                        currentTrackedFiles.get(rename.from), otherTrackedFiles.get(rename.to), false);
+                filesWritten += 1;
+                allTrackedFiles.remove(rename.from);
+                allTrackedFiles.remove(rename.to);
+            }
+            for (RenameDetector.Rename rename: findRenames(renames, splitTrackedFiles, currentTrackedFiles,
+                    otherTrackedFiles)) {
+                if (mergeRename(rename, splitTrackedFiles.get(rename.from), currentTrackedFiles.get(rename.to),
+                        otherTrackedFiles.get(rename.from), true)) {
+                    hasConflict = true;
+                    filesWritten += 1;
+                }
+                allTrackedFiles.remove(rename.from);
+                allTrackedFiles.remove(rename.to);
+            }
+            Trace.end("merge.renames", start);
+        }
+
+        // the blobs the loop below reads, in the order it reads them, so they can be read ahead
+        List<ObjectId> blobsToRead = new ArrayList<>();
         for (String filename: allTrackedFiles) {
-            String splitBlobId = splitTrackedFiles.getOrDefault(filename, "");
-            String currentBlobId = currentTrackedFiles.getOrDefault(filename, "");
-            String otherBlobId = otherTrackedFiles.getOrDefault(filename, "");
-
-            // case 2: modified in HEAD but not OTHER
-            // case 3: modified in OTHER and HEAD but in the same way
-            // case 5: not in SPLIT nor OTHER but in HEAD
-            // case 8: unmodified in OTHER but not present in HEAD
-            if (currentBlobId.equals(otherBlobId) || splitBlobId.equals(otherBlobId)) {
+            ObjectId splitBlobId = splitTrackedFiles.get(filename);
+            ObjectId currentBlobId = currentTrackedFiles.get(filename);
+            ObjectId otherBlobId = otherTrackedFiles.get(filename);
+            if (Objects.equals(currentBlobId, otherBlobId) || Objects.equals(splitBlobId, otherBlobId)) {
                 continue;
             }
-            if (splitBlobId.equals(currentBlobId)) {
-                // case 7: unmodified in HEAD but not present in OTHER
-                if (otherBlobId.equals("")) {
-                    removeFileFromTracking(filename);
+            if (Objects.equals(splitBlobId, currentBlobId)) {
+                if (otherBlobId != null && sparseCheckout.includes(filename)) {
+                    blobsToRead.add(otherBlobId);
                 }
-                // case 1: modified in OTHER but not HEAD
-                // case 6: not in SPLIT nor HEAD but in OTHER
-                else {
-                    Blob otherBlob = Blob.deserialize(otherBlobId);
-                    // overwrite file with other's contents
-                    writeContents(join(CWD, otherBlob.getFilename()), otherBlob.getContents());
-                    addFileToStagingArea(otherBlob.getFilename());
+            } else {
+                if (currentBlobId != null) {
+                    blobsToRead.add(currentBlobId);
+                }
+                if (otherBlobId != null) {
+                    blobsToRead.add(otherBlobId);
                 }
-
             }
-            // case 4: modified in OTHER and HEAD but in different ways
-            else {
-                StringBuilder newMergedContents = new StringBuilder();
-                newMergedContents.append("<<<<<<< HEAD\n");
-                if (!currentBlobId.equals("")) {
-                    Blob currentBlob = Blob.deserialize(currentBlobId);
-                    String currentBlobContents = currentBlob.getContentsAsString();
-                    newMergedContents.append(currentBlobContents);
+        }
+
+        // iterate through all tracked files and merge accordingly
+        try (BlobPrefetcher blobs = new BlobPrefetcher(objects(), blobsToRead)) {
+            for (String filename: allTrackedFiles) {
+                ObjectId splitBlobId = splitTrackedFiles.get(filename);
+                ObjectId currentBlobId = currentTrackedFiles.get(filename);
+                ObjectId otherBlobId = otherTrackedFiles.get(filename);
+                // a null blob id means the file is absent from that commit
+
+                // case 2: modified in HEAD but not OTHER
+                // case 3: modified in OTHER and HEAD but in the same way
+                // case 5: not in SPLIT nor OTHER but in HEAD
+                // case 8: unmodified in OTHER but not present in HEAD
+                if (Objects.equals(currentBlobId, otherBlobId) || Objects.equals(splitBlobId, otherBlobId)) {
+                    continue;
                 }
-                newMergedContents.append("=======\n");
-                if (!otherBlobId.equals("")) {
-                    Blob otherBlob = Blob.deserialize(otherBlobId);
-                    String otherBlobContents = otherBlob.getContentsAsString();
-                    newMergedContents.append(otherBlobContents);
+                if (Objects.equals(splitBlobId, currentBlobId)) {
+                    // case 7: unmodified in HEAD but not present in OTHER
+                    if (otherBlobId == null) {
+                        removeFileFromTracking(filename);
+                    }
+                    // case 1: modified in OTHER but not HEAD
+                    // case 6: not in SPLIT nor HEAD but in OTHER
+                    // (outside the sparse-checkout set the blob is staged without being written)
+                    else if (!sparseCheckout.includes(filename)) {
+                        StagingArea stagingArea = StagingArea.deserialize(indexFile);
+                        stagingArea.stageFileForAddition(filename, otherBlobId);
+                        stagingArea.serialize(indexFile, durability);
+                    }
+                    else {
+                        Blob otherBlob = blobs.take(otherBlobId);
+                        // overwrite file with other's contents
+                        writeBlob(join(cwd, otherBlob.getFilename()), otherBlob);
+                        filesWritten += 1;
+                        addFileToStagingArea(otherBlob.getFilename());
+                    }
+
                 }
-                newMergedContents.append(">>>>>>>");
-                // overwrite file with merged contents
-                writeContents(join(CWD, filename), newMergedContents.toString());
-                addFileToStagingArea(filename);
-                hasConflict = true;
+                // case 4: modified in OTHER and HEAD but in different ways
+                // (conflicted files are written even outside the sparse-checkout set, to be resolved)
+                else {
+                    Blob currentBlob = currentBlobId == null ? null : blobs.take(currentBlobId);
+                    Blob otherBlob = otherBlobId == null ? null : blobs.take(otherBlobId);
+                    writeConflict(filename, currentBlob, otherBlob);
+                    filesWritten += 1;
+                    hasConflict = true;
+                }
+            }
+        }
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.target = otherBranchName;
+                event.filesWritten = filesWritten;
+                event.commit();
             }
         }
 
@@ -515,121 +1322,480 @@ public class Repository {
                 List.of(currentCommit.getId(), otherCommit.getId()));
         // print if conflict was encountered
         if (hasConflict) {
-            System.out.println("Encountered a merge conflict.");
+            out().println("Encountered a merge conflict.");
+        }
+    }
+
+    /** Returns the renames, detected by RENAMES, of files tracked in SPLIT
+     *  that RENAMED no longer tracks but UNRENAMED still does, to files that
+     *  only RENAMED tracks. */
+    private static List<RenameDetector.Rename> findRenames(RenameDetector renames, HashMap<String, ObjectId> split,
+                                                           HashMap<String, ObjectId> renamed,
+                                                           HashMap<String, ObjectId> unrenamed) {
+        Map<String, ObjectId> removed = new HashMap<>();
+        for (Map.Entry<String, ObjectId> file: split.entrySet()) {
+            if (!renamed.containsKey(file.getKey()) && unrenamed.containsKey(file.getKey())) {
+                removed.put(file.getKey(), file.getValue());
+            }
+        }
+        Map<String, ObjectId> added = new HashMap<>();
+        for (Map.Entry<String, ObjectId> file: renamed.entrySet()) {
+            if (!split.containsKey(file.getKey()) && !unrenamed.containsKey(file.getKey())) {
+                added.put(file.getKey(), file.getValue());
+            }
+        }
+        return renames.detect(removed, added);
+    }
+
+    /** Merges the file RENAME renames, whose blobs are SPLITBLOBID at the
+     *  split point, CURRENTBLOBID in HEAD and OTHERBLOBID in the other
+     *  branch, into its new name.  The rename is HEAD's if INCURRENT and the
+     *  other branch's otherwise; the side that renamed the file keeps its
+     *  contents under the new name, and the file is otherwise merged as if
+     *  neither had renamed it.  Returns true iff the contents conflict. */
+    private boolean mergeRename(RenameDetector.Rename rename, ObjectId splitBlobId, ObjectId currentBlobId,
+                                ObjectId otherBlobId, boolean inCurrent) {
+        // blob ids differ between names, so contents are compared
+        byte[] split = Blob.deserialize(objects(), splitBlobId).getContents();
+        Blob currentBlob = Blob.deserialize(objects(), currentBlobId);
+        Blob otherBlob = Blob.deserialize(objects(), otherBlobId);
+        boolean currentChanged = !Arrays.equals(split, currentBlob.getContents());
+        boolean otherChanged = !Arrays.equals(split, otherBlob.getContents());
+        if (!inCurrent) {
+            removeFileFromTracking(rename.from);
+        }
+        if (currentChanged && otherChanged && !Arrays.equals(currentBlob.getContents(), otherBlob.getContents())) {
+            writeConflict(rename.to, currentBlob, otherBlob);
+            return true;
+        }
+        Blob merged = currentChanged ? currentBlob : otherBlob;
+        if (inCurrent && (merged == currentBlob || !otherChanged)) {
+            return false;
+        }
+        if (sparseCheckout.includes(rename.to)) {
+            writeBlob(join(cwd, rename.to), merged);
+            addFileToStagingArea(rename.to);
+        } else {
+            Blob renamed = new Blob(rename.to, merged.getContents());
+            renamed.serialize(objects());
+            StagingArea stagingArea = StagingArea.deserialize(indexFile);
+            stagingArea.stageFileForAddition(rename.to, renamed.getId());
+            stagingArea.serialize(indexFile, durability);
+        }
+        return false;
+    }
+
+    /** Writes FILENAME with conflict markers around the contents of
+     *  CURRENTBLOB and OTHERBLOB, either of which may be null for a deleted
+     *  file, and stages it.  Conflicted files are written even outside the
+     *  sparse-checkout set, to be resolved. */
+    private void writeConflict(String filename, Blob currentBlob, Blob otherBlob) {
+        StringBuilder newMergedContents = new StringBuilder();
+        newMergedContents.append("<<<<<<< HEAD\n");
+        if (currentBlob != null) {
+            newMergedContents.append(currentBlob.getContentsAsString());
+        }
+        newMergedContents.append("=======\n");
+        if (otherBlob != null) {
+            newMergedContents.append(otherBlob.getContentsAsString());
+        }
+        newMergedContents.append(">>>>>>>");
+        // overwrite file with merged contents
+        writeContents(join(cwd, filename), newMergedContents.toString());
+        addFileToStagingArea(filename);
+    }
+
+    /** Makes the current directory a clone of the repository whose .gitlet
+     *  directory is SOURCEPATH.  MODE is "--shared" to borrow the source's
+     *  objects through an alternate, "--hardlink" to hard-link them, or null
+     *  to copy them.  The source becomes the remote "origin", its branches are
+     *  tracked as origin/[branch], and its current branch is checked out. */
+    public void cloneRepository(String sourcePath, String mode) {
+        File source = new File(sourcePath.replace("/", File.separator));
+        if (!source.isAbsolute()) {
+            source = new File(cwd, source.getPath());
+        }
+        Repository origin = other(source.toPath().normalize().toFile());
+        try (Locked ignored = lockedWith(origin, true, false)) {
+            cloneFrom(origin, mode);
+        }
+    }
+
+    private void cloneFrom(Repository origin, String mode) {
+        if (gitletDir.exists()) {
+            throw error("A Gitlet version-control system already exists in the current directory.");
+        }
+        File source = origin.gitletDir;
+        File sourceObjects = origin.objectsDir;
+        if (!sourceObjects.isDirectory()) {
+            throw error("Remote directory not found.");
+        }
+        // the database itself, not a cache in front of it, to tell how it stores objects
+        ObjectDatabase sourceDatabase = ObjectDatabase.open(source, origin.durability);
+        if ("--shared".equals(mode) && !(sourceDatabase instanceof LooseObjectDatabase)) {
+            throw error("Only a repository with loose objects can be shared.");
+        }
+        String branchName = readContentsAsString(join(source, "HEAD"));
+        ObjectId headId = Transport.readBranch(source, branchName);
+        Commit headCommit = Transport.readCommit(sourceDatabase, headId);
+        for (String filename: headCommit.getTrackedFiles().keySet()) {
+            if (join(cwd, filename).exists()) {
+                throw error("There is an untracked file in the way; delete it, or add and commit it first.");
+            }
+        }
+
+        long start = Trace.begin();
+        setupPersistence();
+        if ("--shared".equals(mode)) {
+            Alternates.add(objectsDir, sourceObjects);
+        } else {
+            // objects the source borrows from its own alternates are brought over too
+            for (int type: List.of(Pack.BLOB, Pack.COMMIT)) {
+                for (ObjectId id: sourceDatabase.ids(type)) {
+                    if (sourceDatabase instanceof LooseObjectDatabase) {
+                        File sourceFile = ((LooseObjectDatabase) sourceDatabase).file(type, id);
+                        copyObject(sourceFile, join(objectsDir, ObjectDatabase.kind(type), id.toString()),
+                                "--hardlink".equals(mode));
+                    } else {
+                        objects().write(type, id, sourceDatabase.read(type, id));
+                    }
+                }
+            }
+        }
+        File sourceGraph = origin.graphFile;
+        if (sourceGraph.exists()) {
+            copyObject(sourceGraph, graphFile, false);
+        }
+        Trace.end("clone.objects", start);
+
+        writeContents(join(remotesDir, "origin"), source.getPath());
+        join(branchesDir, "origin").mkdir();
+        for (String sourceBranch: plainFilenamesIn(join(source, "refs", "branches"))) {
+            updateBranchFile("origin/" + sourceBranch, Transport.readBranch(source, sourceBranch));
+        }
+        updateBranchFile(branchName, headId);
+        updateHeadFile(branchName);
+        new StagingArea().serialize(indexFile, durability);
+        writeTrackedFiles(branchName, headCommit.getTrackedFiles());
+    }
+
+    /** Copies the file FROM to TO, or hard-links TO to it if HARDLINK and the
+     *  file system allows it. */
+    private static void copyObject(File from, File to, boolean hardlink) {
+        try {
+            if (hardlink) {
+                try {
+                    Files.createLink(to.toPath(), from.toPath());
+                    return;
+                } catch (UnsupportedOperationException | IOException excp) {
+                    // different file systems, or no hard links: fall back to a copy
+                }
+            }
+            Files.copy(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
-    private static Commit findSplitPoint(Commit a, Commit b) {
-        Set<String> parentCommitIdsOfA = new HashSet<>();
+    public void addRemote(String remoteName, String remoteDirectory) {
+        try (Locked ignored = writeLocked()) {
+            File remoteFile = join(remotesDir, remoteName);
+            if (remoteFile.exists()) {
+                throw error("A remote with that name already exists.");
+            }
+            remotesDir.mkdir();
+            // remote directories are given with forward slashes on every platform
+            writeContents(remoteFile, remoteDirectory.replace("/", File.separator));
+        }
+    }
+
+    public void removeRemote(String remoteName) {
+        try (Locked ignored = writeLocked()) {
+            File remoteFile = join(remotesDir, remoteName);
+            if (!remoteFile.exists()) {
+                throw error("A remote with that name does not exist.");
+            }
+            remoteFile.delete();
+        }
+    }
+
+    public void fetch(String remoteName, String remoteBranchName) {
+        Repository remote = other(getRemoteDirectory(remoteName));
+        try (Locked ignored = lockedWith(remote, true, false)) {
+            ObjectId remoteHead = Transport.readBranch(remote.gitletDir, remoteBranchName);
+            if (remoteHead == null) {
+                throw error("That remote does not have that branch.");
+            }
+            // copy over only the commits and blobs we do not have yet
+            Transport.transfer(remote, this, remoteHead, false);
+            // the remote branch is tracked locally as [remote name]/[remote branch name]
+            join(branchesDir, remoteName).mkdir();
+            updateBranchFile(remoteName + "/" + remoteBranchName, remoteHead);
+        }
+    }
+
+    public void push(String remoteName, String remoteBranchName) {
+        Repository remote = other(getRemoteDirectory(remoteName));
+        try (Locked ignored = lockedWith(remote, false, true)) {
+            ObjectId localHead = getHeadCommitId();
+            ObjectId remoteHead = Transport.readBranch(remote.gitletDir, remoteBranchName);
+            // the remote branch head must be in the history of the current local head
+            if (remoteHead != null && !isAncestor(remoteHead, localHead)) {
+                throw error("Please pull down remote changes before pushing.");
+            }
+            Transport.transfer(this, remote, localHead, true);
+            Transport.writeBranch(remote, remoteBranchName, localHead);
+        }
+    }
+
+    /** Fetches REMOTEBRANCHNAME from REMOTENAME and merges it, as two
+     *  commands: other commands may run between them. */
+    public void pull(String remoteName, String remoteBranchName) {
+        fetch(remoteName, remoteBranchName);
+        mergeBranchWithCurrentBranch(remoteName + "/" + remoteBranchName);
+    }
+
+    private File getRemoteDirectory(String remoteName) {
+        File remoteFile = join(remotesDir, remoteName);
+        if (!remoteFile.exists()) {
+            throw error("A remote with that name does not exist.");
+        }
+        File remoteDirectory = new File(readContentsAsString(remoteFile));
+        if (!remoteDirectory.isAbsolute()) {
+            remoteDirectory = new File(cwd, remoteDirectory.getPath());
+        }
+        if (!remoteDirectory.isDirectory()) {
+            throw error("Remote directory not found.");
+        }
+        return remoteDirectory;
+    }
+
+    /** Returns true iff the commit ANCESTOR is in the history of DESCENDANT,
+     *  answered by the bitmap index if it covers both, and otherwise by a walk
+     *  using the commit graph for parents where it can. */
+    private boolean isAncestor(ObjectId ancestor, ObjectId descendant) {
+        if (!Commit.exists(objects(), ancestor)) {
+            return false;
+        }
+        Boolean indexed = BitmapIndex.load(gitletDir, objects()).isAncestor(ancestor, descendant);
+        if (indexed != null) {
+            return indexed;
+        }
+        CommitGraph graph = CommitGraph.load(graphFile);
+        Deque<ObjectId> fringe = new ArrayDeque<>();
+        Set<ObjectId> visited = new HashSet<>();
+        fringe.addLast(descendant);
+        visited.add(descendant);
+        while (!fringe.isEmpty()) {
+            ObjectId commitId = fringe.removeFirst();
+            if (commitId.equals(ancestor)) {
+                return true;
+            }
+            CommitGraph.Entry entry = graph.get(commitId);
+            List<ObjectId> parents = entry != null ? Arrays.asList(entry.parents)
+                    : Commit.deserialize(objects(), commitId).getParents();
+            for (ObjectId parentId: parents) {
+                if (visited.add(parentId)) {
+                    fringe.addLast(parentId);
+                }
+            }
+        }
+        return false;
+    }
+
+    Commit findSplitPoint(Commit a, Commit b) {
+        try (Locked ignored = readLocked()) {
+            GitletEvents.MergeBase event = GitletEvents.enabled() ? new GitletEvents.MergeBase() : null;
+            if (event != null) {
+                event.begin();
+            }
+            Commit splitPoint = findSplitPoint(a, b, event);
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.ours = a.getId().toString();
+                    event.theirs = b.getId().toString();
+                    event.base = splitPoint == null ? null : splitPoint.getId().toString();
+                    event.commit();
+                }
+            }
+            return splitPoint;
+        }
+    }
+
+    private Commit findSplitPoint(Commit a, Commit b, GitletEvents.MergeBase event) {
+        Set<ObjectId> parentCommitIdsOfA = new HashSet<>();
         // perform bfs on commit a
         Deque<Commit> fringe = new ArrayDeque<>();
         // set up starting commit
         fringe.addLast(a);
+        parentCommitIdsOfA.add(a.getId());
         while (!fringe.isEmpty()) {
             Commit commit = fringe.removeFirst();
-
-            // add to commit id to set
-            parentCommitIdsOfA.add(commit.getId());
             // get parents of commit
-            List<String> commitParentIds = commit.getParents();
-            // visit both parents
-            for (String commitId: commitParentIds) {
-                fringe.addLast(Commit.deserialize(commitId));
+            List<ObjectId> commitParentIds = commit.getParents();
+            // visit both parents, skipping commits already reached through another path
+            // (without this, every merge doubles the number of paths walked)
+            for (ObjectId commitId: commitParentIds) {
+                if (parentCommitIdsOfA.add(commitId)) {
+                    fringe.addLast(Commit.deserialize(objects(), commitId));
+                    if (event != null) {
+                        event.commitsVisited += 1;
+                    }
+                }
             }
         }
 
         // perform bfs on commit b, exit if commit id is in set
+        Set<ObjectId> visitedCommitIdsOfB = new HashSet<>();
         fringe = new ArrayDeque<>();
         // set up starting commit
         fringe.addLast(b);
+        visitedCommitIdsOfB.add(b.getId());
         while (!fringe.isEmpty()) {
             Commit commit = fringe.removeFirst();
             if (parentCommitIdsOfA.contains(commit.getId())) {
                 return commit;
             }
             // get parents of commit
-            List<String> commitParentIds = commit.getParents();
+            List<ObjectId> commitParentIds = commit.getParents();
             // visit both parents
-            for (String commitId: commitParentIds) {
-                fringe.addLast(Commit.deserialize(commitId));
+            for (ObjectId commitId: commitParentIds) {
+                if (visitedCommitIdsOfB.add(commitId)) {
+                    fringe.addLast(Commit.deserialize(objects(), commitId));
+                    if (event != null) {
+                        event.commitsVisited += 1;
+                    }
+                }
             }
         }
 
         return null;
     }
 
-    private static void updateHeadFile(String branchName) {
-        writeContents(HEAD, branchName);
+    private void updateHeadFile(String branchName) {
+        writeRef(headFile, "HEAD", branchName);
+    }
+
+    private void updateBranchFile(String branchName, ObjectId commitId) {
+        File branchFile = join(branchesDir, branchName);
+        writeRef(branchFile, branchName, commitId.toString());
     }
 
-    private static void updateBranchFile(String branchName, String commitId) {
-        File branchFile = join(BRANCHES_DIR, branchName);
-        writeContents(branchFile, commitId);
+    /** Writes VALUE to the file REFFILE of the ref named REF, after every
+     *  object written so far is durable. */
+    private void writeRef(File refFile, String ref, String value) {
+        GitletEvents.RefUpdate event = GitletEvents.enabled() ? new GitletEvents.RefUpdate() : null;
+        if (event != null) {
+            event.begin();
+        }
+        durability.flush();
+        durability.write(refFile, value.getBytes(StandardCharsets.UTF_8));
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.ref = ref;
+                event.value = value;
+                event.commit();
+            }
+        }
     }
 
-    private static Commit getCommitFromBranch(String branchName) {
-        File branchFile = join(BRANCHES_DIR, branchName);
-        String commitId = readContentsAsString(branchFile);
-        return Commit.deserialize(commitId);
+    private Commit getCommitFromBranch(String branchName) {
+        File branchFile = join(branchesDir, branchName);
+        ObjectId commitId = ObjectId.fromHex(readContentsAsString(branchFile));
+        return Commit.deserialize(objects(), commitId);
     }
 
-    private static String getCurrentBranch() {
-        return readContentsAsString(HEAD);
+    private String getCurrentBranch() {
+        return readContentsAsString(headFile);
     }
 
-    private static Commit getHeadCommit() {
-        File currentBranchFile = join(BRANCHES_DIR, getCurrentBranch());
-        String latestCommitPointer = readContentsAsString(currentBranchFile);
-        return Commit.deserialize(latestCommitPointer);
+    private Commit getHeadCommit() {
+        return Commit.deserialize(objects(), getHeadCommitId());
     }
 
-    private static void createNewCommit(String message, List<String> parents) {
+    private ObjectId getHeadCommitId() {
+        File currentBranchFile = join(branchesDir, getCurrentBranch());
+        return ObjectId.fromHex(readContentsAsString(currentBranchFile));
+    }
+
+    /** Returns the id of the commit named by the hex numeral COMMITID, exiting
+     *  if there is no such commit. */
+    private ObjectId resolveCommitId(String commitId) {
+        if (!ObjectId.isId(commitId) || !Commit.exists(objects(), ObjectId.fromHex(commitId))) {
+            throw error("No commit with that id exists.");
+        }
+        return ObjectId.fromHex(commitId);
+    }
+
+    /** Returns the id of the commit NAME names: the head of the branch NAME
+     *  if there is one, and otherwise the commit with that id. */
+    private ObjectId resolveCommitName(String name) {
+        File branchFile = join(branchesDir, name);
+        if (branchFile.isFile()) {
+            return ObjectId.fromHex(readContentsAsString(branchFile));
+        }
+        return resolveCommitId(name);
+    }
+
+    private void createNewCommit(String message, List<ObjectId> parents) {
         // deserialize staging area
-        StagingArea stagingArea = StagingArea.deserialize();
+        StagingArea stagingArea = StagingArea.deserialize(indexFile);
         if (stagingArea.isEmpty()) {
-            exit("No changes added to the commit.");
+            throw error("No changes added to the commit.");
         }
 
         // get parent's tracked files
-        Commit parentCommit = Commit.deserialize(parents.get(0));
-        HashMap<String, String> currentTrackedFiles = parentCommit.getTrackedFiles();
+        Commit parentCommit = Commit.deserialize(objects(), parents.get(0));
+        HashMap<String, ObjectId> currentTrackedFiles = parentCommit.getTrackedFiles();
         // get files staged for addition
-        HashMap<String, String> filesStagedForAddition = stagingArea.getFilesStagedForAddition();
+        HashMap<String, ObjectId> filesStagedForAddition = stagingArea.getFilesStagedForAddition();
+        // paths this commit changes, for the commit graph's changed-path filter
+        Set<String> changedPaths = new HashSet<>();
         // add or update files that were tracked by the previous commit
-        for (Map.Entry<String, String> entry: filesStagedForAddition.entrySet()) {
+        for (Map.Entry<String, ObjectId> entry: filesStagedForAddition.entrySet()) {
             String filename = entry.getKey();
-            String blobId = entry.getValue();
+            ObjectId blobId = entry.getValue();
             // update or start tracking current file with contents
-            currentTrackedFiles.put(filename, blobId);
+            if (!blobId.equals(currentTrackedFiles.put(filename, blobId))) {
+                changedPaths.add(filename);
+            }
         }
 
         // get files staged for removal
         HashSet<String> filesStagedForRemoval = stagingArea.getFilesStagedForRemoval();
         // remove files that were tracked by the previous commit
         for (String filename: filesStagedForRemoval) {
-            currentTrackedFiles.remove(filename);
+            if (currentTrackedFiles.remove(filename) != null) {
+                changedPaths.add(filename);
+            }
         }
 
         // create a new commit
+        long start = Trace.begin();
         Commit newCommit = new Commit(message, parents, currentTrackedFiles);
-        newCommit.serialize();
+        newCommit.serialize(objects());
+        CommitGraph.append(graphFile, newCommit, changedPaths);
+        Trace.end("commit.write", start);
 
         // clear staging area and serialize
         stagingArea.clear();
-        stagingArea.serialize();
+        stagingArea.serialize(indexFile, durability);
 
         // update pointer of current branch
         updateBranchFile(getCurrentBranch(), newCommit.getId());
     }
 
-    private static boolean hasUntrackedFileThatCanBeOverWritten(Commit endCommit) {
+    private boolean hasUntrackedFileThatCanBeOverWritten(Commit endCommit) {
+        long start = Trace.begin();
         // get tracked files from start commit
-        HashMap<String, String> startTrackedFiles = getHeadCommit().getTrackedFiles();
+        HashMap<String, ObjectId> startTrackedFiles = getHeadCommit().getTrackedFiles();
 
-        // get files from the working directory
-        List<String> filenamesInCWD = plainFilenamesIn(CWD);
+        // get files from the working directory (a checkout never writes the others)
+        List<String> filenamesInCWD = workingFilenames();
         // deserialize the staging area
-        StagingArea stagingArea = StagingArea.deserialize();
+        StagingArea stagingArea = StagingArea.deserialize(indexFile);
 
         // find untracked files - files not found in the staging area or in the start commit
         List<String> untrackedFilenames = new ArrayList<>();
@@ -640,17 +1806,19 @@ public class Repository {
         }
 
         // get tracked files from end commit
-        HashMap<String, String> endTrackedFiles = endCommit.getTrackedFiles();
+        HashMap<String, ObjectId> endTrackedFiles = endCommit.getTrackedFiles();
 
         // abort if a working file is untracked and would be overwritten
         for (String filename: untrackedFilenames) {
-            String currentBranchBlobId = startTrackedFiles.getOrDefault(filename, "");
-            String givenBranchBlobId = endTrackedFiles.getOrDefault(filename, "");
-            if (!currentBranchBlobId.equals(givenBranchBlobId)) {
+            ObjectId currentBranchBlobId = startTrackedFiles.get(filename);
+            ObjectId givenBranchBlobId = endTrackedFiles.get(filename);
+            if (!Objects.equals(currentBranchBlobId, givenBranchBlobId)) {
+                Trace.end("untracked.check", start);
                 return true;
             }
         }
 
+        Trace.end("untracked.check", start);
         return false;
     }
 }
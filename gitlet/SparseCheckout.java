@@ -0,0 +1,46 @@
+package gitlet;
+
+import java.io.File;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** The set of paths a sparse working directory materializes.
+ *
+ *  The PatternFile .gitlet/info/sparse-checkout holds the patterns.  When it
+ *  exists, checkout, reset, merge and status only write, hash or look at
+ *  files matching one of them.  Files outside them stay tracked by commits
+ *  and the staging area exactly as before; they are just absent from the
+ *  working directory.  Without the file every path is included.
+ *  @author Rogelio Camargo
+ */
+class SparseCheckout {
+
+    private final PatternFile patternFile;
+
+    /** The sparse-checkout set of the repository GITLETDIR. */
+    SparseCheckout(File gitletDir) {
+        this.patternFile = new PatternFile(join(gitletDir, "info", "sparse-checkout"));
+    }
+
+    /** Returns true iff FILENAME belongs in the working directory. */
+    boolean includes(String filename) {
+        return patternFile.isEmpty() || patternFile.matches(filename);
+    }
+
+    /** Returns true iff some path may be left out of the working directory. */
+    boolean isEnabled() {
+        return !patternFile.isEmpty();
+    }
+
+    /** Returns the patterns in effect, in file order. */
+    List<String> patterns() {
+        return patternFile.patterns();
+    }
+
+    /** Replaces the patterns with PATTERNS, or removes them (including every
+     *  path again) if there are none. */
+    void set(List<String> patterns) {
+        patternFile.set(patterns);
+    }
+}
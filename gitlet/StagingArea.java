@@ -1,27 +1,200 @@
 package gitlet;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.zip.CRC32;
 
 import static gitlet.Utils.*;
 
 /** Represents a gitlet staging area object.
+ *
+ *  The index is kept as a checkpoint, .gitlet/index, holding the whole
+ *  staging area, plus a journal, .gitlet/index.journal, of the changes
+ *  made since.  Saving appends the changes made since loading to the
+ *  journal, so staging or unstaging one file writes one short record
+ *  whatever the size of the index.  Once the journal has more records than
+ *  the staging area has entries (and at least COMPACT_MIN), or after the
+ *  staging area is cleared, saving writes a new checkpoint instead, which
+ *  keeps the cost of each change constant on average.
+ *
+ *  The journal starts with the generation of the checkpoint it follows;
+ *  each checkpoint takes the next generation, so a journal left behind by
+ *  a crash after a new checkpoint is ignored.  Each record is
+ *  <pre>
+ *      length (4 bytes) | operation (1 byte) | UTF-8 filename
+ *      | blob id (20 bytes, staging for addition only) | CRC-32 (4 bytes)
+ *  </pre>
+ *  and loading replays records up to the first torn or corrupt one, which
+ *  the next save truncates away.
  *  @author Rogelio Camargo
  */
 public class StagingArea implements Serializable {
+    /** Fixed at the value Java computed before it was declared, so existing
+     *  indexes still read.  Declared, it also spares every command that
+     *  reads the index from hashing the class to compute it, which loads
+     *  the security providers. */
+    private static final long serialVersionUID = 1007163705346853661L;
+
+    /** The fewest journal records that make saving compact the index. */
+    static final int COMPACT_MIN = 64;
+    private static final int JOURNAL_MAGIC = 0x67696a31;
+    private static final int HEADER_LENGTH = 12;
+    private static final byte STAGE_ADDITION = 'A';
+    private static final byte UNSTAGE_ADDITION = 'a';
+    private static final byte STAGE_REMOVAL = 'R';
+    private static final byte UNSTAGE_REMOVAL = 'r';
+
     // files staged for addition
-    private HashMap<String, String> added;
+    private HashMap<String, ObjectId> added;
     // files staged for removal
     private HashSet<String> removed;
+    /** The number of checkpoints written before this one (0 in indexes
+     *  written before the journal existed). */
+    private long generation;
+
+    /** Records of the changes made since loading, not yet saved. */
+    private transient ByteArrayOutputStream unsaved;
+    /** True iff saving must write a checkpoint: the staging area is new or
+     *  was cleared. */
+    private transient boolean rewrite;
+    /** The records and bytes of the journal that follow this checkpoint. */
+    private transient int journalRecords;
+    private transient long journalLength;
 
     public StagingArea() {
         this.added = new HashMap<>();
         this.removed = new HashSet<>();
+        this.unsaved = new ByteArrayOutputStream();
+        this.rewrite = true;
+    }
+
+    /** Returns the journal of the index file INDEX. */
+    static File journalFile(File index) {
+        return new File(index.getPath() + ".journal");
+    }
+
+    /** Reads the staging area from the index file INDEX and its journal. */
+    public static StagingArea deserialize(File index) {
+        long start = Trace.begin();
+        GitletEvents.IndexLoad event = GitletEvents.enabled() ? new GitletEvents.IndexLoad() : null;
+        if (event != null) {
+            event.begin();
+        }
+        StagingArea stagingArea = readObject(index, StagingArea.class);
+        stagingArea.unsaved = new ByteArrayOutputStream();
+        stagingArea.replay(journalFile(index));
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.added = stagingArea.added.size();
+                event.removed = stagingArea.removed.size();
+                event.commit();
+            }
+        }
+        Trace.end("index.load", start);
+        return stagingArea;
     }
 
-    public static StagingArea deserialize() {
-        return readObject(join(".gitlet", "index"), StagingArea.class);
+    /** Applies the records of JOURNAL that follow this checkpoint, up to the
+     *  first torn or corrupt one. */
+    private void replay(File journal) {
+        if (!journal.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal),
+                1 << 16))) {
+            if (in.readInt() != JOURNAL_MAGIC || in.readLong() != generation) {
+                return;
+            }
+            journalLength = HEADER_LENGTH;
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length = in.readInt();
+                if (length < 2 || length > journal.length() - journalLength) {
+                    break;
+                }
+                byte[] record = new byte[length];
+                in.readFully(record);
+                crc.reset();
+                crc.update(record);
+                if (in.readInt() != (int) crc.getValue() || !apply(record)) {
+                    break;
+                }
+                journalLength += 4 + length + 4;
+                journalRecords += 1;
+            }
+        } catch (EOFException excp) {
+            // the end of the journal, or a torn last record; what precedes it stands
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.count(Trace.FILES_READ, 1);
+        Trace.count(Trace.BYTES_READ, journalLength);
+    }
+
+    /** Applies the journal record RECORD, returning false if it is not one. */
+    private boolean apply(byte[] record) {
+        byte operation = record[0];
+        int nameLength = operation == STAGE_ADDITION ? record.length - 1 - ObjectId.RAW_LENGTH : record.length - 1;
+        if (nameLength < 0) {
+            return false;
+        }
+        String filename = new String(record, 1, nameLength, StandardCharsets.UTF_8);
+        switch (operation) {
+            case STAGE_ADDITION:
+                added.put(filename, ObjectId.fromRaw(record, 1 + nameLength));
+                return true;
+            case UNSTAGE_ADDITION:
+                added.remove(filename);
+                return true;
+            case STAGE_REMOVAL:
+                removed.add(filename);
+                return true;
+            case UNSTAGE_REMOVAL:
+                removed.remove(filename);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** Adds the record of OPERATION on FILENAME (to BLOBID, if staging for
+     *  addition) to the unsaved changes. */
+    private void record(byte operation, String filename, ObjectId blobId) {
+        if (rewrite) {
+            return;
+        }
+        byte[] name = filename.getBytes(StandardCharsets.UTF_8);
+        byte[] record = new byte[1 + name.length + (blobId == null ? 0 : ObjectId.RAW_LENGTH)];
+        record[0] = operation;
+        System.arraycopy(name, 0, record, 1, name.length);
+        if (blobId != null) {
+            blobId.copyRawTo(record, 1 + name.length);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        DataOutputStream out = new DataOutputStream(unsaved);
+        try {
+            out.writeInt(record.length);
+            out.write(record);
+            out.writeInt((int) crc.getValue());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        journalRecords += 1;
     }
 
     public boolean hasFileStaged(String filename) {
@@ -42,19 +215,28 @@ public class StagingArea implements Serializable {
     public void clear() {
         added.clear();
         removed.clear();
+        rewrite = true;
     }
 
     public void unstageFileForAddition(String filename) {
-        added.remove(filename);
+        if (added.remove(filename) != null) {
+            record(UNSTAGE_ADDITION, filename, null);
+        }
     }
 
-    public void unstageFileForRemoval(String filename) { removed.remove(filename); }
+    public void unstageFileForRemoval(String filename) {
+        if (removed.remove(filename)) {
+            record(UNSTAGE_REMOVAL, filename, null);
+        }
+    }
 
-    public void stageFileForAddition(String filename, String blobId) {
-        added.put(filename, blobId);
+    public void stageFileForAddition(String filename, ObjectId blobId) {
+        if (!blobId.equals(added.put(filename, blobId))) {
+            record(STAGE_ADDITION, filename, blobId);
+        }
     }
 
-    public HashMap<String, String> getFilesStagedForAddition() {
+    public HashMap<String, ObjectId> getFilesStagedForAddition() {
         return added;
     }
 
@@ -63,10 +245,75 @@ public class StagingArea implements Serializable {
     }
 
     public void stageFileForRemoval(String filename) {
-        removed.add(filename);
+        if (removed.add(filename)) {
+            record(STAGE_REMOVAL, filename, null);
+        }
+    }
+
+    /** Saves the changes made to this staging area to the index file INDEX,
+     *  through DURABILITY: appended to its journal, or as a new checkpoint
+     *  when the journal is due for compaction. */
+    public void serialize(File index, Durability durability) {
+        long start = Trace.begin();
+        GitletEvents.IndexSave event = GitletEvents.enabled() ? new GitletEvents.IndexSave() : null;
+        if (event != null) {
+            event.begin();
+        }
+        File journal = journalFile(index);
+        if (rewrite || journalRecords > Math.max(COMPACT_MIN, added.size() + removed.size())) {
+            generation += 1;
+            durability.write(index, Utils.serialize(this));
+            Trace.count(Trace.OBJECTS_WRITTEN, 1);
+            journal.delete();
+            rewrite = false;
+            journalRecords = 0;
+            journalLength = 0;
+        } else if (unsaved.size() > 0) {
+            append(journal, durability);
+        }
+        unsaved.reset();
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.added = added.size();
+                event.removed = removed.size();
+                event.commit();
+            }
+        }
+        Trace.end("index.save", start);
     }
 
-    public void serialize() {
-        writeObject(join(".gitlet", "index"), this);
+    /** Appends the unsaved records to JOURNAL, first dropping anything after
+     *  its last good record.  A journal that does not follow this checkpoint
+     *  is replaced by one that does. */
+    private void append(File journal, Durability durability) {
+        if (journalLength == 0) {
+            ByteArrayOutputStream contents = new ByteArrayOutputStream(HEADER_LENGTH + unsaved.size());
+            DataOutputStream out = new DataOutputStream(contents);
+            try {
+                out.writeInt(JOURNAL_MAGIC);
+                out.writeLong(generation);
+                unsaved.writeTo(contents);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            durability.write(journal, contents.toByteArray());
+            journalLength = contents.size();
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(journalLength);
+            ByteBuffer buffer = ByteBuffer.wrap(unsaved.toByteArray());
+            channel.position(journalLength);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        journalLength += unsaved.size();
+        durability.appended(journal);
+        Trace.count(Trace.BYTES_WRITTEN, unsaved.size());
+        Trace.count(Trace.FILES_WRITTEN, 1);
     }
 }
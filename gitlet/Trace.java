@@ -0,0 +1,117 @@
+package gitlet;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/** Per-command I/O counters and phase timings, enabled by the --trace flag
+ *  and printed as JSON to stderr when the command finishes (including when it
+ *  ends through Utils.exit).  Every hook first checks ENABLED, so with tracing
+ *  off each one costs a single static field read.
+ *  @author Rogelio Camargo
+ */
+class Trace {
+
+    /** Counter names, in report order. */
+    static final int OBJECTS_READ = 0;
+    static final int OBJECTS_WRITTEN = 1;
+    static final int BYTES_READ = 2;
+    static final int BYTES_WRITTEN = 3;
+    static final int BYTES_HASHED = 4;
+    static final int FILES_STATED = 5;
+    static final int FILES_READ = 6;
+    static final int FILES_WRITTEN = 7;
+    static final int BLOOM_SKIPS = 8;
+    static final int FSYNCS = 9;
+    static final int CACHE_HITS = 10;
+    static final int BLAME_CACHE_HITS = 11;
+    private static final String[] COUNTER_NAMES = {
+        "objectsRead", "objectsWritten", "bytesRead", "bytesWritten",
+        "bytesHashed", "filesStated", "filesRead", "filesWritten",
+        "bloomSkips", "fsyncs", "objectCacheHits", "blameCacheHits"
+    };
+
+    /** True iff this command is being traced. */
+    static boolean enabled;
+
+    private static final long[] counters = new long[COUNTER_NAMES.length];
+    /** Phase name -> {number of times entered, total nanoseconds}. */
+    private static final Map<String, long[]> phases = new LinkedHashMap<>();
+    private static String command;
+    private static long startNanos;
+
+    /** Starts tracing COMMAND, reporting when the JVM shuts down. */
+    static void enable(String commandName) {
+        enabled = true;
+        command = commandName;
+        startNanos = System.nanoTime();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.println(toJson())));
+    }
+
+    /** Adds AMOUNT to the counter numbered COUNTER. */
+    static void count(int counter, long amount) {
+        if (enabled) {
+            // blob prefetch threads count too
+            synchronized (counters) {
+                counters[counter] += amount;
+            }
+        }
+    }
+
+    /** Returns a start time for a phase, to be passed to end. */
+    static long begin() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /** Records one pass through PHASE, begun at START. */
+    static void end(String phase, long start) {
+        if (enabled) {
+            long elapsed = System.nanoTime() - start;
+            synchronized (phases) {
+                long[] totals = phases.computeIfAbsent(phase, k -> new long[2]);
+                totals[0] += 1;
+                totals[1] += elapsed;
+            }
+        }
+    }
+
+    /** Returns the report as a JSON object.  Phases may nest (e.g. commit.read
+     *  inside merge.splitPoint) or overlap on prefetch threads, so their times
+     *  do not sum to the wall time. */
+    static String toJson() {
+        StringBuilder json = new StringBuilder("{\"command\": ");
+        quote(json, command).append(", ");
+        json.append(String.format(Locale.ROOT, "\"wallMillis\": %.3f, \"counters\": {",
+                (System.nanoTime() - startNanos) / 1e6));
+        for (int i = 0; i < COUNTER_NAMES.length; i += 1) {
+            json.append(i == 0 ? "" : ", ").append('"').append(COUNTER_NAMES[i]).append("\": ")
+                .append(counters[i]);
+        }
+        json.append("}, \"phases\": {");
+        String separator = "";
+        for (Map.Entry<String, long[]> entry: phases.entrySet()) {
+            quote(json.append(separator), entry.getKey());
+            json.append(String.format(Locale.ROOT, ": {\"count\": %d, \"millis\": %.3f}",
+                    entry.getValue()[0], entry.getValue()[1] / 1e6));
+            separator = ", ";
+        }
+        return json.append("}}").toString();
+    }
+
+    /** Appends S to JSON as a JSON string, escaping what must be: the
+     *  command name is whatever the user typed. */
+    private static StringBuilder quote(StringBuilder json, String s) {
+        json.append('"');
+        for (int i = 0; i < s.length(); i += 1) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"');
+    }
+}
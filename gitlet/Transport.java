@@ -0,0 +1,153 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/** Moves objects between two repositories on the local filesystem.  Callers
+ *  hold the sending repository's lock for reading and the receiving one's for
+ *  writing.
+ *
+ *  The receiving side never holds a commit without its ancestors and their
+ *  blobs, so any commit it has is a common commit.  Negotiation therefore
+ *  walks back from the wanted commit only until it reaches commits the
+ *  receiver has, and for each new commit only the blobs that differ from its
+ *  first parent can be missing.  The work done is proportional to the new
+ *  history, not to the size of either repository.  The missing objects are
+ *  streamed into the receiver as a single pack, which is verified before
+ *  anything is installed.
+ *  @author Rogelio Camargo
+ */
+class Transport {
+
+    /** Copies into TARGET every object reachable from the commit WANT in
+     *  SOURCE that TARGET does not have.  If SENDLARGEFILES, also copies the
+     *  large-file contents the copied pointer blobs refer to, which TARGET
+     *  would otherwise fetch from SOURCE when it needs them.  Returns the
+     *  number of objects copied. */
+    static int transfer(Repository source, Repository target, ObjectId want, boolean sendLargeFiles) {
+        ObjectDatabase sourceObjects = source.objects();
+        ObjectDatabase targetObjects = target.objects();
+        long start = Trace.begin();
+        List<ObjectId> commits = new ArrayList<>();
+        Set<ObjectId> blobs = new LinkedHashSet<>();
+        Map<ObjectId, Set<String>> changedPaths = new HashMap<>();
+
+        // have/want negotiation: walk back from WANT until reaching commits TARGET has
+        Deque<ObjectId> fringe = new ArrayDeque<>();
+        Set<ObjectId> visited = new HashSet<>();
+        fringe.addLast(want);
+        visited.add(want);
+        while (!fringe.isEmpty()) {
+            ObjectId commitId = fringe.removeFirst();
+            if (targetObjects.exists(Pack.COMMIT, commitId)) {
+                continue;
+            }
+            Commit commit = readCommit(sourceObjects, commitId);
+            Commit parent = commit.hasParents() ? readCommit(sourceObjects, commit.getParent()) : null;
+            Set<String> changed = CommitGraph.changedPaths(commit, parent);
+            for (String path: changed) {
+                ObjectId blobId = commit.getTrackedFiles().get(path);
+                if (blobId != null && !blobs.contains(blobId) && !targetObjects.exists(Pack.BLOB, blobId)) {
+                    blobs.add(blobId);
+                }
+            }
+            commits.add(commitId);
+            changedPaths.put(commitId, changed);
+            for (ObjectId parentId: commit.getParents()) {
+                if (visited.add(parentId)) {
+                    fringe.addLast(parentId);
+                }
+            }
+        }
+        Trace.end("transport.negotiate", start);
+        if (commits.isEmpty()) {
+            return 0;
+        }
+
+        // blobs go first, so an interrupted install never leaves a commit without its files
+        File packFile = join(target.objectsDir, "incoming-" + System.nanoTime() + ".pack");
+        List<ObjectId> largeFiles = new ArrayList<>();
+        start = Trace.begin();
+        try (Pack.Writer pack = new Pack.Writer(new FileOutputStream(packFile), blobs.size() + commits.size())) {
+            for (ObjectId blobId: blobs) {
+                byte[] contents = sourceObjects.read(Pack.BLOB, blobId);
+                pack.add(Pack.BLOB, blobId, contents);
+                if (sendLargeFiles) {
+                    byte[] blobContents = deserialize(contents, Blob.class).getContents();
+                    if (LargeFiles.isPointer(blobContents)) {
+                        largeFiles.add(LargeFiles.idOf(blobContents));
+                    }
+                }
+            }
+            for (ObjectId commitId: commits) {
+                pack.add(Pack.COMMIT, commitId, sourceObjects.read(Pack.COMMIT, commitId));
+            }
+        } catch (IOException excp) {
+            packFile.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.end("transport.pack", start);
+
+        // large-file contents go before any pointer to them is installed
+        start = Trace.begin();
+        for (ObjectId id: largeFiles) {
+            LargeFiles.send(source.gitletDir, target.gitletDir, id);
+        }
+        Trace.end("transport.large", start);
+
+        start = Trace.begin();
+        File graphFile = CommitGraph.graphFile(target.objectsDir);
+        try {
+            return Pack.read(packFile, (type, id, contents) -> {
+                if (!targetObjects.exists(type, id)) {
+                    targetObjects.write(type, id, contents);
+                }
+                if (type == Pack.COMMIT) {
+                    CommitGraph.append(graphFile, deserialize(contents, Commit.class), changedPaths.get(id));
+                }
+            });
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            packFile.delete();
+            Trace.end("transport.unpack", start);
+        }
+    }
+
+    /** Returns the commit BRANCHNAME points to in the repository GITLETDIR, or
+     *  null if there is no such branch. */
+    static ObjectId readBranch(File gitletDir, String branchName) {
+        File branchFile = join(gitletDir, "refs", "branches", branchName);
+        if (!branchFile.isFile()) {
+            return null;
+        }
+        return ObjectId.fromHex(readContentsAsString(branchFile));
+    }
+
+    /** Points BRANCHNAME at COMMITID in the repository TARGET, after every
+     *  object written to it so far is durable. */
+    static void writeBranch(Repository target, String branchName, ObjectId commitId) {
+        File branchFile = join(target.branchesDir, branchName);
+        branchFile.getParentFile().mkdirs();
+        target.durability.flush();
+        target.durability.write(branchFile, commitId.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Returns the commit ID in OBJECTS. */
+    static Commit readCommit(ObjectDatabase objects, ObjectId id) {
+        return deserialize(objects.read(Pack.COMMIT, id), Commit.class);
+    }
+}
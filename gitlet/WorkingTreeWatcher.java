@@ -0,0 +1,225 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Utils.*;
+
+/** Keeps the names of the plain files in a working directory, and the blob
+ *  ids of those known unchanged since they were last hashed, up to date from
+ *  file-system events rather than by listing the directory, for a process
+ *  that runs many commands on one repository.
+ *
+ *  Events arrive asynchronously, so before answering, the watcher creates a
+ *  cookie file in the .gitlet directory, which it also watches, and takes
+ *  events until the cookie's: the events of every change made before the
+ *  question are then in.  Any event on a file forgets its blob id.  An
+ *  overflow (events were lost), an invalid watch key, or a cookie that never
+ *  arrives makes the next answer come from a full scan, after restarting the
+ *  watch in the last two cases.  After MAX_FAILURES restarts in a row the
+ *  watcher gives up and every answer comes from a full scan.  So it does
+ *  from the start where changes are only polled for: a poll may see the
+ *  cookie before an earlier change, or miss a change that leaves a file's
+ *  size and modification time as they were, and a blob id would go stale.
+ *  @author Rogelio Camargo
+ */
+class WorkingTreeWatcher implements AutoCloseable {
+
+    /** How long to wait (ms) for a cookie's event. */
+    static final long COOKIE_TIMEOUT = 1000;
+    static final int MAX_FAILURES = 3;
+
+    private final File workingDir;
+    private final File gitletDir;
+    private WatchService service;
+    /** The key of the .gitlet directory, where cookies are made. */
+    private WatchKey gitletKey;
+    /** The plain files of the working directory, if VALID. */
+    private final TreeSet<String> filenames = new TreeSet<>();
+    /** Blob ids of files hashed since their last event. */
+    private final Map<String, ObjectId> knownIds = new HashMap<>();
+    private boolean valid;
+    private int failures;
+    private long cookies;
+
+    /** Starts watching the working directory WORKINGDIR of the repository
+     *  GITLETDIR. */
+    WorkingTreeWatcher(File workingDir, File gitletDir) {
+        this.workingDir = workingDir;
+        this.gitletDir = gitletDir;
+        start();
+    }
+
+    /** Returns the names of the plain files in the working directory, in
+     *  order. */
+    synchronized List<String> filenames() {
+        sync();
+        return new ArrayList<>(filenames);
+    }
+
+    /** Returns the blob id of the working file FILENAME if it was recorded
+     *  and the file has not changed since, and null otherwise. */
+    synchronized ObjectId knownId(String filename) {
+        sync();
+        return knownIds.get(filename);
+    }
+
+    /** Records that the working file FILENAME, as just read, is the blob
+     *  BLOBID. */
+    synchronized void record(String filename, ObjectId blobId) {
+        if (service != null) {
+            knownIds.put(filename, blobId);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        stop();
+        failures = MAX_FAILURES;
+    }
+
+    /** Brings the file names up to date: from the events up to a fresh
+     *  cookie's if the watch works, and by listing the directory if not. */
+    private void sync() {
+        if (service == null && failures < MAX_FAILURES) {
+            start();
+        }
+        if (service != null && !awaitCookie()) {
+            failures += 1;
+            stop();
+        }
+        if (service == null || !valid) {
+            rescan();
+        }
+    }
+
+    /** Creates a cookie and handles events until its own, returning false
+     *  if it does not come or the watch broke. */
+    private boolean awaitCookie() {
+        cookies += 1;
+        String cookie = "watch-cookie-" + ProcessHandle.current().pid() + "-" + cookies;
+        Path cookiePath = join(gitletDir, cookie).toPath();
+        long start = Trace.begin();
+        try {
+            Files.createFile(cookiePath);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(COOKIE_TIMEOUT);
+            boolean seen = false;
+            while (!seen) {
+                long remaining = deadline - System.nanoTime();
+                WatchKey key = service.poll(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+                if (key == null) {
+                    return false;
+                }
+                seen = handle(key, cookie);
+                if (!key.reset()) {
+                    return false;
+                }
+            }
+            // events read before the cookie's may sit in keys queued behind the one that carried it
+            for (WatchKey key = service.poll(); key != null; key = service.poll()) {
+                handle(key, null);
+                if (!key.reset()) {
+                    return false;
+                }
+            }
+            failures = 0;
+            return true;
+        } catch (IOException excp) {
+            return false;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            cookiePath.toFile().delete();
+            Trace.end("watch.sync", start);
+        }
+    }
+
+    /** Handles the pending events of KEY, returning true if one is the
+     *  creation of COOKIE. */
+    private boolean handle(WatchKey key, String cookie) {
+        boolean seen = false;
+        for (WatchEvent<?> event: key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                valid = false;
+                continue;
+            }
+            String name = event.context().toString();
+            if (key == gitletKey) {
+                seen |= name.equals(cookie) && event.kind() == StandardWatchEventKinds.ENTRY_CREATE;
+                continue;
+            }
+            knownIds.remove(name);
+            if (event.kind() != StandardWatchEventKinds.ENTRY_DELETE && join(workingDir, name).isFile()) {
+                filenames.add(name);
+            } else {
+                filenames.remove(name);
+            }
+        }
+        return seen;
+    }
+
+    /** Replaces what is known with a listing of the working directory. */
+    private void rescan() {
+        long start = Trace.begin();
+        filenames.clear();
+        knownIds.clear();
+        List<String> listed = plainFilenamesIn(workingDir);
+        if (listed != null) {
+            filenames.addAll(listed);
+        }
+        valid = service != null;
+        Trace.end("watch.rescan", start);
+    }
+
+    private void start() {
+        try {
+            service = FileSystems.getDefault().newWatchService();
+            if (polls(service)) {
+                stop();
+                failures = MAX_FAILURES;
+                return;
+            }
+            workingDir.toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            gitletKey = gitletDir.toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE);
+        } catch (IOException | UnsupportedOperationException excp) {
+            stop();
+            failures = MAX_FAILURES;
+        }
+        valid = false;
+    }
+
+    /** Returns true iff SERVICE learns of changes only by polling.  No API
+     *  tells; this relies on a JDK implementation detail, the name of the
+     *  class that polls where the platform has no native notification. */
+    private static boolean polls(WatchService service) {
+        return service.getClass().getSimpleName().equals("PollingWatchService");
+    }
+
+    private void stop() {
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException excp) {
+                // the watch is being dropped either way
+            }
+        }
+        service = null;
+        gitletKey = null;
+        valid = false;
+    }
+}
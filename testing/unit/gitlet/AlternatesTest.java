@@ -0,0 +1,45 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import static gitlet.Checks.*;
+import static gitlet.Utils.*;
+
+/** Checks that the alternates this process has looked up follow changes to
+ *  the alternates files, direct and inherited, as when a repository is
+ *  deleted and made again in the same place.
+ *  @author Rogelio Camargo
+ */
+public class AlternatesTest {
+
+    public static void main(String[] args) throws Exception {
+        File root = Files.createTempDirectory("gitlet-alternates").toFile();
+        try {
+            File borrower = join(root, "borrower", "objects");
+            File first = join(root, "first", "objects");
+            File second = join(root, "second-source", "objects");
+            File third = join(root, "third", "objects");
+            borrower.mkdirs();
+            check(Alternates.of(borrower).isEmpty(), "alternates of a plain directory");
+
+            Alternates.add(borrower, first);
+            check(Alternates.of(borrower).equals(List.of(first)), "after add: " + Alternates.of(borrower));
+
+            delete(join(root, "borrower"));
+            borrower.mkdirs();
+            check(Alternates.of(borrower).isEmpty(), "re-created directory kept " + Alternates.of(borrower));
+            join(borrower, "info").mkdirs();
+            writeContents(Alternates.alternatesFile(borrower), second.getPath() + "\n");
+            check(Alternates.of(borrower).equals(List.of(second)), "rewritten file read as " + Alternates.of(borrower));
+
+            join(second, "info").mkdirs();
+            writeContents(Alternates.alternatesFile(second), third.getPath() + "\n");
+            check(Alternates.of(borrower).equals(List.of(second, third)),
+                    "inherited alternate missed: " + Alternates.of(borrower));
+        } finally {
+            delete(root);
+        }
+    }
+}
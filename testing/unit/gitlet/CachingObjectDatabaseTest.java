@@ -0,0 +1,48 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+import static gitlet.Checks.*;
+import static gitlet.Utils.*;
+
+/** Checks that the object cache tells objects apart by type: a cached
+ *  blob's id must not name a commit.
+ *  @author Rogelio Camargo
+ */
+public class CachingObjectDatabaseTest {
+
+    public static void main(String[] args) throws Exception {
+        CachingObjectDatabase objects = new CachingObjectDatabase(new InMemoryObjectDatabase(false), 1 << 20);
+        ObjectId id = sha1Id("a.txt", "contents");
+        objects.write(Pack.BLOB, id, "contents".getBytes());
+        check(objects.exists(Pack.BLOB, id), "cached blob missing");
+        check(!objects.exists(Pack.COMMIT, id), "cached blob exists as a commit");
+        try {
+            objects.read(Pack.COMMIT, id);
+            check(false, "cached blob read as a commit");
+        } catch (IllegalArgumentException excp) {
+            // no such commit
+        }
+
+        File root = Files.createTempDirectory("gitlet-cache").toFile();
+        try {
+            Repository repository = new Repository(root, new PrintStream(new ByteArrayOutputStream()));
+            repository.initialize();
+            repository.setDurability("none");
+            writeContents(join(root, "a.txt"), "a\n");
+            repository.addFileToStagingArea("a.txt");
+            ObjectId blobId = StagingArea.deserialize(repository.indexFile).getFilesStagedForAddition().get("a.txt");
+            try {
+                repository.checkoutFileFromGivenCommit(blobId.toString(), "a.txt");
+                check(false, "checkout from a blob id succeeded");
+            } catch (GitletException excp) {
+                check(excp.getMessage().equals("No commit with that id exists."), excp.getMessage());
+            }
+        } finally {
+            delete(root);
+        }
+    }
+}
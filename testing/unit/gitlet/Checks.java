@@ -0,0 +1,29 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/** Helpers shared by the unit tests.
+ *  @author Rogelio Camargo
+ */
+class Checks {
+
+    /** Fails with MESSAGE unless CONDITION holds. */
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /** Deletes FILE and, if it is a directory, everything under it. */
+    static void delete(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child: children) {
+                delete(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+}
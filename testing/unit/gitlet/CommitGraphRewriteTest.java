@@ -0,0 +1,86 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.List;
+
+import static gitlet.Checks.*;
+import static gitlet.Utils.*;
+
+/** Checks that a commit appended to the commit graph while it is being
+ *  rewritten (as a background maintenance run does) keeps its record.  The
+ *  commit is made just after the rewrite has listed the commits, the moment
+ *  another process's commit would be lost.
+ *  @author Rogelio Camargo
+ */
+public class CommitGraphRewriteTest {
+
+    public static void main(String[] args) throws Exception {
+        File root = Files.createTempDirectory("gitlet-graph").toFile();
+        try {
+            Repository repository = new Repository(root, new PrintStream(new ByteArrayOutputStream()));
+            repository.initialize();
+            repository.setMaintenance("auto", "off");
+            for (int i = 0; i < 3; i += 1) {
+                commit(repository, root, i);
+            }
+
+            ObjectDatabase objects = repository.objects();
+            boolean[] committed = new boolean[1];
+            ObjectDatabase racing = new ObjectDatabase() {
+                @Override
+                public byte[] read(int type, ObjectId id) {
+                    return objects.read(type, id);
+                }
+
+                @Override
+                public void write(int type, ObjectId id, byte[] contents) {
+                    objects.write(type, id, contents);
+                }
+
+                @Override
+                public boolean exists(int type, ObjectId id) {
+                    return objects.exists(type, id);
+                }
+
+                @Override
+                public long size(int type, ObjectId id) {
+                    return objects.size(type, id);
+                }
+
+                @Override
+                public void delete(int type, ObjectId id) {
+                    objects.delete(type, id);
+                }
+
+                @Override
+                public List<ObjectId> ids(int type) {
+                    List<ObjectId> ids = objects.ids(type);
+                    if (type == Pack.COMMIT && !committed[0]) {
+                        committed[0] = true;
+                        commit(repository, root, 3);
+                    }
+                    return ids;
+                }
+            };
+            CommitGraph.writeAll(racing, repository.graphFile);
+
+            CommitGraph graph = CommitGraph.load(repository.graphFile);
+            List<ObjectId> ids = objects.ids(Pack.COMMIT);
+            check(ids.size() == 5, ids.size() + " commits instead of 5");
+            for (ObjectId id: ids) {
+                check(graph.get(id) != null, "commit " + id + " missing from the commit graph");
+            }
+        } finally {
+            delete(root);
+        }
+    }
+
+    private static void commit(Repository repository, File root, int i) {
+        writeContents(join(root, "file.txt"), "version " + i + "\n");
+        repository.addFileToStagingArea("file.txt");
+        repository.makeNewCommit("commit " + i);
+    }
+}
@@ -0,0 +1,171 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static gitlet.Checks.*;
+import static gitlet.Utils.*;
+
+/** Checks that databases on one pack file see the objects each other and
+ *  other processes append, and never write over them: through two
+ *  Repository objects, through records appended behind the database's back
+ *  (one of them torn), and after the file is replaced.
+ *  @author Rogelio Camargo
+ */
+public class PackedObjectDatabaseTest {
+
+    public static void main(String[] args) throws Exception {
+        twoRepositories();
+        appendedElsewhere();
+        replaced();
+    }
+
+    /** Commits through one Repository while another reads and commits. */
+    static void twoRepositories() throws IOException {
+        File root = Files.createTempDirectory("gitlet-pack").toFile();
+        try {
+            PrintStream quiet = new PrintStream(new ByteArrayOutputStream());
+            Repository first = new Repository(root, quiet);
+            Repository second = new Repository(root, quiet);
+            first.initialize(true);
+            first.setDurability("none");
+            first.setMaintenance("auto", "off");
+            commit(first, root, "a");
+            second.printCurrentStatus();
+            commit(first, root, "b");
+            commit(second, root, "c");
+            commit(first, root, "d");
+
+            ByteArrayOutputStream log = new ByteArrayOutputStream();
+            new Repository(root, new PrintStream(log, true)).printHeadCommitHistory();
+            for (String message: List.of("a", "b", "c", "d")) {
+                check(log.toString().contains("\n" + message + "\n"), "commit " + message + " missing from log");
+            }
+            List<ObjectId> stored = records(PackedObjectDatabase.packFile(join(root, ".gitlet", "objects")));
+            check(stored.size() == 9 && new HashSet<>(stored).size() == 9,
+                    "pack holds " + stored.size() + " records, not 9 distinct objects");
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** Writes between records another process appended, the last torn. */
+    static void appendedElsewhere() throws IOException {
+        File directory = Files.createTempDirectory("gitlet-pack").toFile();
+        try {
+            File packFile = join(directory, "objects.pack");
+            PackedObjectDatabase database = new PackedObjectDatabase(packFile, new Durability(directory));
+            database.write(Pack.BLOB, id(1), contents(1));
+            append(packFile, 2, false);
+            check(Arrays.equals(database.read(Pack.BLOB, id(2)), contents(2)), "appended object not read");
+            append(packFile, 3, false);
+            append(packFile, 4, true);
+            database.write(Pack.BLOB, id(5), contents(5));
+            check(records(packFile).equals(List.of(id(1), id(2), id(3), id(5))),
+                    "pack holds " + records(packFile));
+            PackedObjectDatabase other = new PackedObjectDatabase(packFile, new Durability(directory));
+            List<ObjectId> expected = new ArrayList<>(List.of(id(1), id(2), id(3), id(5)));
+            Collections.sort(expected);
+            check(other.ids(Pack.BLOB).equals(expected), "second database lists " + other.ids(Pack.BLOB));
+            check(Arrays.equals(other.read(Pack.BLOB, id(3)), contents(3)), "object 3 unreadable");
+        } finally {
+            delete(directory);
+        }
+    }
+
+    /** Writes after the file is deleted, then after it is replaced by a
+     *  longer one. */
+    static void replaced() throws IOException {
+        File directory = Files.createTempDirectory("gitlet-pack").toFile();
+        try {
+            File packFile = join(directory, "objects.pack");
+            PackedObjectDatabase database = new PackedObjectDatabase(packFile, new Durability(directory));
+            database.write(Pack.BLOB, id(1), contents(1));
+            database.write(Pack.BLOB, id(2), contents(2));
+            Files.delete(packFile.toPath());
+            database.write(Pack.BLOB, id(3), contents(3));
+            check(records(packFile).equals(List.of(id(3))), "recreated pack holds " + records(packFile));
+            check(!database.exists(Pack.BLOB, id(1)), "object of the deleted pack still exists");
+
+            File replacement = join(directory, "replacement.pack");
+            for (int i = 4; i < 8; i += 1) {
+                append(replacement, i, false);
+            }
+            Files.move(replacement.toPath(), packFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            database.write(Pack.BLOB, id(8), contents(8));
+            check(records(packFile).equals(List.of(id(4), id(5), id(6), id(7), id(8))),
+                    "replaced pack holds " + records(packFile));
+            check(!database.exists(Pack.BLOB, id(3)), "object of the replaced pack still exists");
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static void commit(Repository repository, File root, String message) {
+        writeContents(join(root, message + ".txt"), "file " + message + "\n");
+        repository.addFileToStagingArea(message + ".txt");
+        repository.makeNewCommit(message);
+    }
+
+    private static ObjectId id(int i) {
+        return sha1Id("object", Integer.toString(i));
+    }
+
+    private static byte[] contents(int i) {
+        return ("contents of object " + i + "\n").getBytes();
+    }
+
+    /** Appends the blob record of object I to PACKFILE, as another process
+     *  would, writing the file header first if it is new.  Only the first
+     *  half of the record if TORN. */
+    private static void append(File packFile, int i, boolean torn) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(packFile, "rw")) {
+            out.seek(out.length());
+            if (out.length() == 0) {
+                out.write(new byte[] {'G', 'O', 'B', 'J'});
+                out.writeInt(1);
+            }
+            byte[] raw = new byte[ObjectId.RAW_LENGTH];
+            id(i).copyRawTo(raw, 0);
+            byte[] contents = contents(i);
+            out.writeByte(Pack.BLOB);
+            out.write(raw);
+            out.writeInt(contents.length);
+            out.write(contents, 0, torn ? contents.length / 2 : contents.length);
+        }
+    }
+
+    /** Returns the ids of the records of PACKFILE, in order, failing unless
+     *  they fill it exactly. */
+    private static List<ObjectId> records(File packFile) throws IOException {
+        List<ObjectId> ids = new ArrayList<>();
+        long length = packFile.length();
+        try (DataInputStream in = new DataInputStream(new FileInputStream(packFile))) {
+            in.skipNBytes(8);
+            long offset = 8;
+            byte[] raw = new byte[ObjectId.RAW_LENGTH];
+            while (offset < length) {
+                in.readUnsignedByte();
+                in.readFully(raw);
+                int contentsLength = in.readInt();
+                in.skipNBytes(contentsLength);
+                ids.add(ObjectId.fromRaw(raw));
+                offset += 1 + ObjectId.RAW_LENGTH + 4 + contentsLength;
+            }
+            check(offset == length, "pack ends inside a record");
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,72 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Checks.*;
+import static gitlet.Utils.*;
+
+/** Checks that Repository objects bound to the same directory share its
+ *  lock: adds made concurrently through two of them must all be staged.
+ *  @author Rogelio Camargo
+ */
+public class RepositoryLockTest {
+
+    static final int THREADS = 8;
+    static final int FILES_PER_THREAD = 25;
+
+    public static void main(String[] args) throws Exception {
+        File root = Files.createTempDirectory("gitlet-lock").toFile();
+        try {
+            PrintStream quiet = new PrintStream(new ByteArrayOutputStream());
+            Repository first = new Repository(root, quiet);
+            Repository second = new Repository(root, quiet);
+            first.initialize();
+            for (int i = 0; i < THREADS * FILES_PER_THREAD; i += 1) {
+                writeContents(join(root, name(i)), "file " + i + "\n");
+            }
+
+            List<Thread> threads = new ArrayList<>();
+            List<Throwable> failures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t += 1) {
+                Repository repository = t % 2 == 0 ? first : second;
+                int base = t * FILES_PER_THREAD;
+                Thread thread = new Thread(() -> {
+                    for (int i = base; i < base + FILES_PER_THREAD; i += 1) {
+                        repository.addFileToStagingArea(name(i));
+                    }
+                });
+                thread.setUncaughtExceptionHandler((x, excp) -> {
+                    synchronized (failures) {
+                        failures.add(excp);
+                    }
+                });
+                threads.add(thread);
+            }
+            for (Thread thread: threads) {
+                thread.start();
+            }
+            for (Thread thread: threads) {
+                thread.join();
+            }
+            check(failures.isEmpty(), "adds failed: " + failures);
+
+            ByteArrayOutputStream status = new ByteArrayOutputStream();
+            new Repository(root, new PrintStream(status, true)).printCurrentStatus();
+            String staged = status.toString().split("=== Staged Files ===\n")[1].split("\n\n")[0];
+            int count = staged.isEmpty() ? 0 : staged.split("\n").length;
+            check(count == THREADS * FILES_PER_THREAD,
+                    "staged " + count + " of " + THREADS * FILES_PER_THREAD + " files");
+        } finally {
+            delete(root);
+        }
+    }
+
+    private static String name(int i) {
+        return String.format("f%04d.txt", i);
+    }
+}
@@ -0,0 +1,131 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
+
+import static gitlet.Checks.*;
+import static gitlet.Utils.*;
+
+/** Checks the index journal's recovery and compaction: a torn last record
+ *  is dropped on loading and truncated before the next append, a journal
+ *  left behind by an older checkpoint is ignored, and saving writes a
+ *  checkpoint once the journal has more than max(COMPACT_MIN, entries)
+ *  records.
+ *  @author Rogelio Camargo
+ */
+public class StagingAreaJournalTest {
+
+    public static void main(String[] args) throws Exception {
+        File gitletDir = Files.createTempDirectory("gitlet-index").toFile();
+        try {
+            Durability durability = new Durability(gitletDir);
+            tornRecord(gitletDir, durability);
+            olderGeneration(gitletDir, durability);
+            compaction(gitletDir, durability, 1);
+            compaction(gitletDir, durability, 2 * StagingArea.COMPACT_MIN);
+        } finally {
+            delete(gitletDir);
+        }
+    }
+
+    /** Loads after the last record is torn, then saves another change. */
+    static void tornRecord(File gitletDir, Durability durability) throws IOException {
+        File index = join(gitletDir, "torn-index");
+        File journal = StagingArea.journalFile(index);
+        StagingArea stagingArea = new StagingArea();
+        stagingArea.stageFileForAddition("a", id("a"));
+        stagingArea.serialize(index, durability);
+        change(index, durability, "b");
+        long beforeC = journal.length();
+        change(index, durability, "c, whose torn record is longer than the next");
+        truncate(journal, journal.length() - 3);
+
+        StagingArea loaded = StagingArea.deserialize(index);
+        check(loaded.getFilesStagedForAddition().equals(Map.of("a", id("a"), "b", id("b"))),
+                "after a torn record: " + loaded.getFilesStagedForAddition());
+        loaded.stageFileForAddition("d", id("d"));
+        loaded.serialize(index, durability);
+        check(journal.length() == beforeC + recordLength("d"), "torn record not truncated before appending");
+        check(StagingArea.deserialize(index).getFilesStagedForAddition()
+                        .equals(Map.of("a", id("a"), "b", id("b"), "d", id("d"))),
+                "after appending past a torn record: " + StagingArea.deserialize(index).getFilesStagedForAddition());
+    }
+
+    /** Puts back the journal of the previous checkpoint, as a crash between
+     *  writing a checkpoint and deleting the journal would leave it. */
+    static void olderGeneration(File gitletDir, Durability durability) throws IOException {
+        File index = join(gitletDir, "generation-index");
+        File journal = StagingArea.journalFile(index);
+        StagingArea stagingArea = new StagingArea();
+        stagingArea.stageFileForAddition("a", id("a"));
+        stagingArea.serialize(index, durability);
+        change(index, durability, "b");
+        File stale = join(gitletDir, "stale-journal");
+        Files.copy(journal.toPath(), stale.toPath());
+
+        StagingArea cleared = StagingArea.deserialize(index);
+        cleared.clear();
+        cleared.stageFileForRemoval("c");
+        cleared.serialize(index, durability);
+        check(!journal.exists(), "checkpoint left its journal");
+        Files.move(stale.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        StagingArea loaded = StagingArea.deserialize(index);
+        check(loaded.getFilesStagedForAddition().isEmpty() && loaded.getFilesStagedForRemoval().equals(Set.of("c")),
+                "older journal replayed: " + loaded.getFilesStagedForAddition() + " "
+                        + loaded.getFilesStagedForRemoval());
+    }
+
+    /** Saves one change at a time to an index of ENTRIES entries, restaging
+     *  one of them so their number stays the same, checking that a
+     *  checkpoint replaces the journal exactly when it passes
+     *  max(COMPACT_MIN, ENTRIES) records. */
+    static void compaction(File gitletDir, Durability durability, int entries) {
+        File index = join(gitletDir, "compaction-index-" + entries);
+        File journal = StagingArea.journalFile(index);
+        StagingArea stagingArea = new StagingArea();
+        for (int i = 0; i < entries; i += 1) {
+            stagingArea.stageFileForAddition("f" + i, id("f" + i));
+        }
+        stagingArea.serialize(index, durability);
+        int limit = Math.max(StagingArea.COMPACT_MIN, entries);
+        for (int records = 1; records <= limit + 1; records += 1) {
+            stagingArea.stageFileForAddition("f0", id("version " + records));
+            stagingArea.serialize(index, durability);
+            check(journal.exists() == (records <= limit),
+                    "with " + entries + " entries, journal " + (journal.exists() ? "kept" : "compacted")
+                            + " after " + records + " records");
+        }
+        StagingArea loaded = StagingArea.deserialize(index);
+        check(loaded.getFilesStagedForAddition().size() == entries
+                        && loaded.getFilesStagedForAddition().get("f0").equals(id("version " + (limit + 1))),
+                "compacted index lost changes");
+    }
+
+    /** Stages NAME for addition in the saved staging area INDEX. */
+    private static void change(File index, Durability durability, String name) {
+        StagingArea stagingArea = StagingArea.deserialize(index);
+        stagingArea.stageFileForAddition(name, id(name));
+        stagingArea.serialize(index, durability);
+    }
+
+    private static ObjectId id(String name) {
+        return sha1Id(name, "contents of " + name);
+    }
+
+    /** The bytes the journal record staging NAME for addition takes. */
+    private static long recordLength(String name) {
+        return 4 + 1 + name.length() + ObjectId.RAW_LENGTH + 4;
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(length);
+        }
+    }
+}
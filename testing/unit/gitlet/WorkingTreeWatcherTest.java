@@ -0,0 +1,199 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+import static gitlet.Checks.*;
+import static gitlet.Utils.*;
+
+/** Checks watch mode.  The same random commands run on a watched and an
+ *  unwatched repository, with no pause between changing a file and the
+ *  next command, and must print and stage the same things; then the
+ *  watcher itself must answer as a directory listing would after lost
+ *  events, a broken watch and a watch that cannot start.
+ *  @author Rogelio Camargo
+ */
+public class WorkingTreeWatcherTest {
+
+    static final int STEPS = 200;
+    static final String[] NAMES = {"a.txt", "b.txt", "c.txt", "d.txt", "e.txt"};
+
+    public static void main(String[] args) throws Exception {
+        sameAsUnwatched();
+        rescanAfterOverflow();
+        restartAfterInvalidKey();
+        fullScansWithoutWatch();
+    }
+
+    /** One of two repositories run side by side. */
+    private static class Run {
+        final File root;
+        final ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        final Repository repository;
+
+        Run(File root) {
+            this.root = root;
+            this.repository = new Repository(root, new PrintStream(printed, true));
+        }
+
+        /** Runs COMMAND, returning what it printed or the error it threw. */
+        String run(Runnable command) {
+            printed.reset();
+            try {
+                command.run();
+                return printed.toString();
+            } catch (GitletException excp) {
+                return "error: " + excp.getMessage();
+            }
+        }
+
+        String staged() {
+            StagingArea stagingArea = StagingArea.deserialize(repository.indexFile);
+            return stagingArea.getFilesStagedForAddition() + " " + stagingArea.getFilesStagedForRemoval();
+        }
+    }
+
+    private static void sameAsUnwatched() throws Exception {
+        File watchedRoot = Files.createTempDirectory("gitlet-watched").toFile();
+        File plainRoot = Files.createTempDirectory("gitlet-unwatched").toFile();
+        try {
+            List<Run> runs = List.of(new Run(watchedRoot), new Run(plainRoot));
+            for (Run run: runs) {
+                run.repository.initialize();
+                run.repository.setMaintenance("auto", "off");
+                run.repository.setDurability("none");
+                run.repository.createNewBranch("other");
+            }
+            runs.get(0).repository.watch();
+
+            Random random = new Random(61);
+            for (int step = 0; step < STEPS; step += 1) {
+                String name = NAMES[random.nextInt(NAMES.length)];
+                // every version is new: add deletes the blob it unstages, which an older commit
+                // holding the same version would still need
+                String contents = "version " + step + "\n";
+                int operation = random.nextInt(10);
+                String message = "step " + step;
+                String branch = random.nextBoolean() ? "other" : "master";
+                String newBranch = "b" + step;
+                List<String> results = new ArrayList<>();
+                for (Run run: runs) {
+                    Repository repository = run.repository;
+                    File file = join(run.root, name);
+                    String result;
+                    switch (operation) {
+                        case 0: case 1: case 2:
+                            writeContents(file, contents);
+                            result = run.run(() -> repository.addFileToStagingArea(name));
+                            break;
+                        case 3:
+                            if (file.isFile()) {
+                                writeContents(file, readContents(file));
+                            }
+                            result = run.run(() -> repository.addFileToStagingArea(name));
+                            break;
+                        case 4:
+                            file.delete();
+                            result = "";
+                            break;
+                        case 5:
+                            result = run.run(() -> repository.addFileToStagingArea(name));
+                            break;
+                        case 6:
+                            result = run.run(() -> repository.removeFileFromTracking(name));
+                            break;
+                        case 7:
+                            result = run.run(() -> repository.makeNewCommit(message));
+                            break;
+                        case 8:
+                            result = run.run(() -> repository.checkoutBranch(branch));
+                            break;
+                        default:
+                            result = run.run(() -> repository.createNewBranch(newBranch));
+                            break;
+                    }
+                    results.add(result + "\n" + run.run(repository::printCurrentStatus) + run.staged());
+                }
+                check(results.get(0).equals(results.get(1)), "step " + step + " (operation " + operation
+                        + " on " + name + "): watched\n" + results.get(0) + "\nunwatched\n" + results.get(1));
+            }
+            runs.get(0).repository.unwatch();
+        } finally {
+            delete(watchedRoot);
+            delete(plainRoot);
+        }
+    }
+
+    /** More events than a watch key holds are lost, which must empty the
+     *  known blob ids and make the next answer a full listing. */
+    private static void rescanAfterOverflow() throws Exception {
+        File root = Files.createTempDirectory("gitlet-overflow").toFile();
+        File cookies = join(root, ".gitlet");
+        cookies.mkdir();
+        try (WorkingTreeWatcher watcher = new WorkingTreeWatcher(root, cookies)) {
+            writeContents(join(root, "kept.txt"), "kept\n");
+            check(watcher.filenames().equals(List.of("kept.txt")), "kept.txt not seen");
+            ObjectId id = Blob.getIdFromNameAndContents("kept.txt", "kept\n".getBytes());
+            watcher.record("kept.txt", id);
+            check(id.equals(watcher.knownId("kept.txt")), "recorded id not known");
+
+            for (int i = 0; i < 2000; i += 1) {
+                writeContents(join(root, String.format("flood%04d.txt", i)), "x");
+            }
+            for (int i = 0; i < 2000; i += 2) {
+                join(root, String.format("flood%04d.txt", i)).delete();
+            }
+            check(watcher.filenames().equals(plainFilenamesIn(root)), "names differ from a listing after overflow");
+            check(watcher.knownId("kept.txt") == null, "recorded id survived lost events");
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** Deleting the watched cookie directory invalidates its key; the
+     *  watcher must restart and keep answering correctly. */
+    private static void restartAfterInvalidKey() throws Exception {
+        File root = Files.createTempDirectory("gitlet-restart").toFile();
+        File cookies = join(root, ".gitlet");
+        cookies.mkdir();
+        try (WorkingTreeWatcher watcher = new WorkingTreeWatcher(root, cookies)) {
+            writeContents(join(root, "first.txt"), "1\n");
+            check(watcher.filenames().equals(List.of("first.txt")), "first.txt not seen");
+            delete(cookies);
+            cookies.mkdir();
+            writeContents(join(root, "second.txt"), "2\n");
+            check(watcher.filenames().equals(List.of("first.txt", "second.txt")), "names wrong after restart");
+            join(root, "first.txt").delete();
+            check(watcher.filenames().equals(List.of("second.txt")), "deletion missed after restart");
+            ObjectId id = Blob.getIdFromNameAndContents("second.txt", "2\n".getBytes());
+            watcher.record("second.txt", id);
+            writeContents(join(root, "second.txt"), "two\n");
+            check(watcher.knownId("second.txt") == null, "modification missed after restart");
+        } finally {
+            delete(root);
+        }
+    }
+
+    /** A watch that cannot start answers every question by listing, and
+     *  never vouches for a blob id. */
+    private static void fullScansWithoutWatch() throws Exception {
+        File root = Files.createTempDirectory("gitlet-nowatch").toFile();
+        try (WorkingTreeWatcher watcher = new WorkingTreeWatcher(root, join(root, "missing"))) {
+            for (int i = 0; i < 3; i += 1) {
+                writeContents(join(root, "file" + i + ".txt"), "x");
+                check(watcher.filenames().equals(plainFilenamesIn(root)), "names differ from a listing");
+            }
+            ObjectId id = Blob.getIdFromNameAndContents("file0.txt", "x".getBytes());
+            watcher.record("file0.txt", id);
+            check(!Objects.equals(watcher.knownId("file0.txt"), id), "unwatched id was kept");
+        } finally {
+            delete(root);
+        }
+    }
+}